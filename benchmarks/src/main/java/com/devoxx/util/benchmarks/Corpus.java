@@ -0,0 +1,150 @@
+package com.devoxx.util.benchmarks;
+
+import com.devoxx.util.stopwords.StopWords;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic synthetic corpus whose word frequencies follow Zipf's law, like natural language.
+ * <p>
+ * The most frequent words are the English stop words, followed by generated words made of syllables and common
+ * English suffixes, so that stemming and stop word filtering do realistic work. Every document is generated from
+ * its own seed, so a document can be produced on its own and corpora of millions of documents can be streamed
+ * without being held in memory.
+ */
+public final class Corpus {
+
+    private static final double ZIPF_EXPONENT = 1.07;
+    private static final String[] SYLLABLES = {"ba", "co", "de", "fi", "ga", "ho", "ja", "ke", "li", "mo",
+        "nu", "pa", "qui", "ro", "sa", "te", "va", "wi", "xo", "zu"};
+    private static final String[] SUFFIXES = {"", "", "", "s", "ing", "ed", "er", "ly", "ness", "ation", "ment", "able"};
+
+    private final long seed;
+    private final int averageLength;
+    private final String[] words;
+    private final double[] cumulativeFrequencies;
+
+    /**
+     * Create a corpus
+     * @param seed seed of the generated words and documents
+     * @param vocabularySize number of distinct words
+     * @param averageLength average number of words of a document
+     */
+    public Corpus(long seed, int vocabularySize, int averageLength) {
+        if (vocabularySize <= 0 || averageLength <= 0) {
+            throw new IllegalArgumentException("vocabularySize and averageLength must be positive.");
+        }
+        this.seed = seed;
+        this.averageLength = averageLength;
+        this.words = new String[vocabularySize];
+        this.cumulativeFrequencies = new double[vocabularySize];
+        List<String> stopWords = StopWords.ENGLISH.stream().filter(word -> !word.isBlank()).sorted().toList();
+        SplittableRandom random = new SplittableRandom(seed);
+        double total = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            words[rank] = rank < stopWords.size()
+                ? stopWords.get(rank)
+                : word(rank) + SUFFIXES[random.nextInt(SUFFIXES.length)];
+            total += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulativeFrequencies[rank] = total;
+        }
+    }
+
+    /**
+     * @param docId document id
+     * @return the document, always the same for a given id
+     */
+    public String document(int docId) {
+        SplittableRandom random = new SplittableRandom(seed * 31 + docId);
+        return text(random, averageLength / 2 + random.nextInt(averageLength + 1));
+    }
+
+    /**
+     * @param docCount number of documents
+     * @return the documents with ids from 0 to docCount - 1
+     */
+    public List<String> documents(int docCount) {
+        List<String> documents = new ArrayList<>(docCount);
+        for (int docId = 0; docId < docCount; docId++) {
+            documents.add(document(docId));
+        }
+        return documents;
+    }
+
+    /**
+     * @param docCount number of documents
+     * @return a lazily generated stream of the documents with ids from 0 to docCount - 1
+     */
+    public Stream<String> stream(int docCount) {
+        return IntStream.range(0, docCount).mapToObj(this::document);
+    }
+
+    /**
+     * @param queryId query id
+     * @param length number of words
+     * @return a query drawn from the word distribution of the corpus, always the same for a given id
+     */
+    public String query(int queryId, int length) {
+        return text(new SplittableRandom(~seed * 31 + queryId), length);
+    }
+
+    /**
+     * @param count number of words
+     * @return words drawn from the word distribution of the corpus, stop words included
+     */
+    public String[] sample(int count) {
+        SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        String[] sample = new String[count];
+        for (int i = 0; i < count; i++) {
+            sample[i] = words[nextRank(random)];
+        }
+        return sample;
+    }
+
+    private String text(SplittableRandom random, int length) {
+        StringBuilder text = new StringBuilder(length * 8);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(words[nextRank(random)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return rank of a word drawn from the Zipf distribution
+     */
+    private int nextRank(SplittableRandom random) {
+        double target = random.nextDouble() * cumulativeFrequencies[cumulativeFrequencies.length - 1];
+        int low = 0;
+        int high = cumulativeFrequencies.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativeFrequencies[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param rank rank of the word
+     * @return a distinct pronounceable word for every rank, the digits of the rank in base 20 as syllables
+     */
+    private static String word(int rank) {
+        StringBuilder word = new StringBuilder();
+        int value = rank;
+        do {
+            word.append(SYLLABLES[value % SYLLABLES.length]);
+            value /= SYLLABLES.length;
+        } while (value > 0);
+        return word.length() < 4 ? word.append("ne").toString() : word.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.devoxx.util.benchmarks;
+
+import com.devoxx.util.BM25;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build an index, from a list of documents held in memory or from a stream of generated documents.
+ * Larger corpora are benchmarked with {@code -p docCount=1000000,10000000}; streaming is the only build that does
+ * not need the whole corpus in memory.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class IndexingBenchmark {
+
+    @Param({"10000", "100000"})
+    public int docCount;
+
+    @Param("50000")
+    public int vocabularySize;
+
+    private Corpus corpus;
+
+    @Setup
+    public void setUp() {
+        corpus = new Corpus(42, vocabularySize, 60);
+    }
+
+    /**
+     * Documents generated once and held in memory, only created by the benchmarks that use them
+     */
+    @State(Scope.Benchmark)
+    public static class Documents {
+        private List<String> documents;
+
+        @Setup
+        public void setUp(IndexingBenchmark benchmark) {
+            documents = benchmark.corpus.documents(benchmark.docCount);
+        }
+    }
+
+    @Benchmark
+    public BM25 build(Documents documents) {
+        return BM25.builder().build(documents.documents);
+    }
+
+    @Benchmark
+    public BM25 buildParallel(Documents documents) {
+        return BM25.builder()
+            .parallelism(Runtime.getRuntime().availableProcessors())
+            .build(documents.documents);
+    }
+
+    @Benchmark
+    public BM25 buildStreaming() {
+        return BM25.builder()
+            .memoryBudget(256L * 1024 * 1024)
+            .build(corpus.stream(docCount));
+    }
+}
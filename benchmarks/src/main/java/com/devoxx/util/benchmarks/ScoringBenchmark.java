@@ -0,0 +1,64 @@
+package com.devoxx.util.benchmarks;
+
+import com.devoxx.util.search.BM25TermScorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to score a posting list with the scalar and the vectorized BM25 kernels. The kernel is chosen when the
+ * JVM starts, so every kernel runs in a fork of its own, with or without the Vector API module.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class ScoringBenchmark {
+
+    @Param({"128", "1000000"})
+    public int postingCount;
+
+    private BM25TermScorer scorer;
+    private int[] termFrequencies;
+    private int[] docLengths;
+    private double[] scores;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        scorer = new BM25TermScorer(2.3, 1.5, 0.75, 60);
+        termFrequencies = new int[postingCount];
+        docLengths = new int[postingCount];
+        scores = new double[postingCount];
+        for (int i = 0; i < postingCount; i++) {
+            termFrequencies[i] = 1 + (random.nextInt(8) == 0 ? random.nextInt(10) : 0);
+            docLengths[i] = 30 + random.nextInt(61);
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+    public double[] scalar() {
+        scorer.score(termFrequencies, docLengths, postingCount, scores);
+        return scores;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules=jdk.incubator.vector"})
+    public double[] vector() {
+        scorer.score(termFrequencies, docLengths, postingCount, scores);
+        return scores;
+    }
+}
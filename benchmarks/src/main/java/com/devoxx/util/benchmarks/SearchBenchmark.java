@@ -0,0 +1,107 @@
+package com.devoxx.util.benchmarks;
+
+import com.devoxx.util.BM25;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency distribution of searches with short (2 words) and long (10 words) queries.
+ * Every invocation runs the next query of a fixed set drawn from the word distribution of the corpus, except the
+ * loop and batch benchmarks which run the whole set and report the time per query.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({"10000", "100000"})
+    public int docCount;
+
+    @Param("10")
+    public int k;
+
+    private BM25 bm25;
+    private String[] shortQueries;
+    private String[] longQueries;
+
+    @Setup
+    public void setUp() {
+        Corpus corpus = new Corpus(42, 50_000, 60);
+        bm25 = BM25.builder().build(corpus.stream(docCount));
+        shortQueries = new String[QUERY_COUNT];
+        longQueries = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            shortQueries[i] = corpus.query(i, 2);
+            longQueries[i] = corpus.query(i, 10);
+        }
+    }
+
+    /**
+     * Position in the query set, per benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            return next++ & (QUERY_COUNT - 1);
+        }
+    }
+
+    @Benchmark
+    public List<Map.Entry<Integer, Double>> topKShortQuery(Cursor cursor) {
+        return bm25.search(shortQueries[cursor.next()], k);
+    }
+
+    @Benchmark
+    public List<Map.Entry<Integer, Double>> topKLongQuery(Cursor cursor) {
+        return bm25.search(longQueries[cursor.next()], k);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public List<List<Map.Entry<Integer, Double>>> loopShortQueries() {
+        List<List<Map.Entry<Integer, Double>>> results = new ArrayList<>(QUERY_COUNT);
+        for (String query : shortQueries) {
+            results.add(bm25.search(query, k));
+        }
+        return results;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public List<List<Map.Entry<Integer, Double>>> batchShortQueries() {
+        return bm25.searchBatch(Arrays.asList(shortQueries), k);
+    }
+
+    @Benchmark
+    public List<Map.Entry<Integer, Double>> rankAllShortQuery(Cursor cursor) {
+        return bm25.search(shortQueries[cursor.next()]);
+    }
+
+    @Benchmark
+    public List<Map.Entry<Integer, Double>> rankAllLongQuery(Cursor cursor) {
+        return bm25.search(longQueries[cursor.next()]);
+    }
+}
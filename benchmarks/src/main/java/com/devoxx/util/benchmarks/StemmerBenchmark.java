@@ -0,0 +1,66 @@
+package com.devoxx.util.benchmarks;
+
+import com.devoxx.util.stemmer.Stemmer;
+import com.devoxx.util.stemmer.snowball.DutchStemmer;
+import com.devoxx.util.stemmer.snowball.EnglishStemmer;
+import com.devoxx.util.stemmer.snowball.FrenchStemmer;
+import com.devoxx.util.stemmer.snowball.GermanStemmer;
+import com.devoxx.util.stemmer.snowball.ItalianStemmer;
+import com.devoxx.util.stemmer.snowball.SpanishStemmer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Average time to stem a word with every Snowball stemmer, over words drawn from the synthetic corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StemmerBenchmark {
+
+    private static final int WORD_COUNT = 1024;
+
+    @Param({"ENGLISH", "FRENCH", "GERMAN", "ITALIAN", "SPANISH", "DUTCH"})
+    public String language;
+
+    private Stemmer stemmer;
+    private String[] words;
+
+    @Setup
+    public void setUp() {
+        stemmer = switch (language) {
+            case "ENGLISH" -> new EnglishStemmer();
+            case "FRENCH" -> new FrenchStemmer();
+            case "GERMAN" -> new GermanStemmer();
+            case "ITALIAN" -> new ItalianStemmer();
+            case "SPANISH" -> new SpanishStemmer();
+            case "DUTCH" -> new DutchStemmer();
+            default -> throw new IllegalArgumentException("Unknown language: " + language);
+        };
+        words = new Corpus(42, 50_000, 60).sample(WORD_COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WORD_COUNT)
+    public void stem(Blackhole blackhole) {
+        for (String word : words) {
+            blackhole.consume(stemmer.stem(word));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.devoxx.util.benchmarks;
+
+import com.devoxx.util.stopwords.StopWords;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Average time to look up a word in the English stop words, over words drawn from the synthetic corpus,
+ * about half of which are stop words.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StopWordsBenchmark {
+
+    private static final int WORD_COUNT = 1024;
+
+    private Set<String> stopWords;
+    private String[] words;
+
+    @Setup
+    public void setUp() {
+        stopWords = StopWords.ENGLISH;
+        words = new Corpus(42, 50_000, 60).sample(WORD_COUNT);
+        // Copy the words so that lookups hash and compare them instead of finding the same instances
+        for (int i = 0; i < words.length; i++) {
+            words[i] = new String(words[i].toCharArray());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WORD_COUNT)
+    public int contains() {
+        int count = 0;
+        for (String word : words) {
+            if (stopWords.contains(word)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
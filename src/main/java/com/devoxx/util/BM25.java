@@ -17,39 +17,111 @@
  */
 package com.devoxx.util;
 
+import com.devoxx.util.analysis.Analyzer;
+import com.devoxx.util.concurrent.SlotPool;
+import com.devoxx.util.index.ImpactIndex;
+import com.devoxx.util.index.IndexFile;
+import com.devoxx.util.index.IndexSnapshot;
+import com.devoxx.util.index.InvertedIndex;
+import com.devoxx.util.index.PostingList;
+import com.devoxx.util.index.PostingsCursor;
+import com.devoxx.util.index.Segment;
+import com.devoxx.util.index.SegmentMerger;
+import com.devoxx.util.monitoring.IndexEvent;
+import com.devoxx.util.monitoring.IndexStatistics;
+import com.devoxx.util.monitoring.SearchEvent;
+import com.devoxx.util.monitoring.SearchListener;
+import com.devoxx.util.monitoring.SearchStatistics;
+import com.devoxx.util.search.AnytimeScorer;
+import com.devoxx.util.search.BM25TermScorer;
+import com.devoxx.util.search.BatchScorer;
+import com.devoxx.util.search.BlockMaxWand;
+import com.devoxx.util.search.CollectionStatistics;
+import com.devoxx.util.search.ParallelSearch;
+import com.devoxx.util.search.PhraseScorer;
+import com.devoxx.util.search.ProximityScorer;
+import com.devoxx.util.search.ResultCache;
+import com.devoxx.util.search.SearchBudget;
+import com.devoxx.util.search.SearchCursor;
+import com.devoxx.util.search.SearchPage;
+import com.devoxx.util.search.SearchResults;
+import com.devoxx.util.search.TermScorer;
+import com.devoxx.util.search.TopKCollector;
+import com.devoxx.util.search.WildcardQuery;
+import com.devoxx.util.stemmer.CachingStemmer;
+import com.devoxx.util.stemmer.PooledStemmer;
 import com.devoxx.util.stemmer.snowball.EnglishStemmer;
 import com.devoxx.util.stemmer.Stemmer;
 import com.devoxx.util.stopwords.StopWords;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * BM25 (Best Matching 25) is a ranking function used by search engines to rank matching documents
  * according to their relevance to a given search query.
+ * <p>
+ * The index is made of immutable segments. Adding, updating or deleting a document only analyzes that document,
+ * creating a small segment or marking the previous version as deleted, and the collection statistics are
+ * updated incrementally. Small segments are merged in the background.
+ * <p>
+ * An instance can be shared between threads, including virtual threads, when its stemmer is thread-safe, which is
+ * the case of instances created by the {@link Builder} or by the constructors without a stemmer argument.
+ * A search works on the snapshot of the index published when it starts and never blocks; writes are serialized
+ * and publish a new snapshot. Wrap a stemmer that is not thread-safe in a {@link PooledStemmer} to share the index.
  * @link <a href="https://en.wikipedia.org/wiki/Okapi_BM25">Wikipedia</a>
  */
 public class BM25 {
 
-    private static final Pattern SPACE_PATTERN = Pattern.compile("\\s+");
-    private final Set<String> stopWords;
-    private final Stemmer stemmer;
-    private final List<String> corpus; // List of documents
-    private final double avgDocLength;
-    private Map<Integer, Map<String, Integer>> tf; // Term Frequency
-    private Map<String, Double> idf; // Inverse Document Frequency
+    private static final int MERGE_FACTOR = 10; // Number of segments merged at once
+    private static final int BATCH_SIZE = 256; // Maximum number of queries scored together
+    private static final long BATCH_POSTINGS = 1 << 20; // Postings scored at once by a batch, 12 bytes each
+    private static final int PROXIMITY_WINDOW = 100; // Minimum number of BM25 results reranked by proximity
+    private static final int MAX_EXPANSIONS = 64; // Maximum number of terms a wildcard word expands to
+    private static final ExecutorService MERGE_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "bm25-merge");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Analyzer analyzer;
+    private final ResultCache resultCache;
+    private final ParallelSearch parallelSearch;
     private final double termFrequencyScalingFactor;
     private final double documentLengthNormalizationFactor;
+    private final boolean positions;
+    private final AtomicInteger nextDocId;
+    private final ReentrantLock writeLock = new ReentrantLock(); // Not a monitor, so virtual threads are not pinned
+    private final ReentrantLock mergeLock = new ReentrantLock();
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+    // Idle score accumulators of searches within a budget, reused across searches
+    private final SlotPool<AnytimeScorer.Accumulator> budgetAccumulators = new SlotPool<>();
+    private volatile IndexSnapshot snapshot; // Segments and collection statistics
+    private volatile SearchListener searchListener;
 
     /**
      * Constructor to initialize BM25
      * @param corpus list of documents
      */
     public BM25(final List<String> corpus) {
-        this(corpus, 1.5, 0.75, StopWords.ENGLISH, new EnglishStemmer());
+        this(corpus, 1.5, 0.75, StopWords.ENGLISH, new PooledStemmer(EnglishStemmer::new));
     }
 
     /**
@@ -58,7 +130,7 @@ public class BM25 {
      * @param stopWords set of stop words
      */
     public BM25(final List<String> corpus, Set<String> stopWords) {
-        this(corpus, 1.5, 0.75, stopWords, new EnglishStemmer());
+        this(corpus, 1.5, 0.75, stopWords, new PooledStemmer(EnglishStemmer::new));
     }
 
     /**
@@ -84,7 +156,7 @@ public class BM25 {
             termFrequencyScalingFactor,
             documentLengthNormalizationFactor,
             StopWords.ENGLISH,
-            new EnglishStemmer());
+            new PooledStemmer(EnglishStemmer::new));
     }
 
     /**
@@ -100,93 +172,464 @@ public class BM25 {
                 final double documentLengthNormalizationFactor,
                 final Set<String> stopWords,
                 final Stemmer stemmer) {
+        this(corpus, termFrequencyScalingFactor, documentLengthNormalizationFactor, new Analyzer(stopWords, stemmer), null, null,
+            false, null, 1);
+    }
+
+    /**
+     * Constructor to initialize BM25, see {@link Builder}
+     * @param corpus list of documents
+     * @param termFrequencyScalingFactor scaling factor for term frequency
+     * @param documentLengthNormalizationFactor normalization factor for document length
+     * @param analyzer analyzer of documents and queries, must be thread-safe to share the index between threads
+     * @param resultCache cache of top-k results, null to disable it
+     * @param parallelSearch splitting of heavy queries between threads, null to evaluate every query on the calling
+     *                       thread
+     * @param positions true to index the positions of the terms in the documents
+     * @param executor executor of the indexing tasks, null to use the common fork-join pool
+     * @param parallelism number of indexing tasks running at the same time
+     */
+    private BM25(final List<String> corpus,
+                 final double termFrequencyScalingFactor,
+                 final double documentLengthNormalizationFactor,
+                 final Analyzer analyzer,
+                 final ResultCache resultCache,
+                 final ParallelSearch parallelSearch,
+                 final boolean positions,
+                 final Executor executor,
+                 final int parallelism) {
         if (corpus == null || corpus.isEmpty()) {
             throw new IllegalArgumentException("Corpus must not be null and must contain at least one document.");
         }
         if (termFrequencyScalingFactor <= 0 || documentLengthNormalizationFactor < 0) {
             throw new IllegalArgumentException("termFrequencyScalingFactor and documentLengthNormalizationFactor must be positive.");
         }
-        this.corpus = corpus;
-        this.stopWords = stopWords;
-        this.stemmer = stemmer;
-        this.avgDocLength = calculateAverageDocumentLength(corpus);
-        this.tf = new HashMap<>();
-        this.idf = new HashMap<>();
+        this.analyzer = analyzer;
+        this.resultCache = resultCache;
+        this.parallelSearch = parallelSearch;
+        this.termFrequencyScalingFactor = termFrequencyScalingFactor;
+        this.documentLengthNormalizationFactor = documentLengthNormalizationFactor;
+        this.positions = positions;
+        this.nextDocId = new AtomicInteger(corpus.size());
+        if (parallelism > 1) {
+            initialize(corpus, executor == null ? ForkJoinPool.commonPool() : executor, parallelism);
+        } else {
+            initialize(corpus);
+        }
+    }
+
+    /**
+     * Constructor to index a stream of documents, see {@link Builder#build(Iterator)}
+     * @param documents documents, analyzed one at a time and not retained
+     * @param termFrequencyScalingFactor scaling factor for term frequency
+     * @param documentLengthNormalizationFactor normalization factor for document length
+     * @param analyzer analyzer of documents and queries
+     * @param resultCache cache of top-k results, null to disable it
+     * @param parallelSearch splitting of heavy queries between threads, null to evaluate every query on the calling
+     *                       thread
+     * @param positions true to index the positions of the terms in the documents
+     * @param memoryBudget heap size of a partial index above which it is flushed to disk, 0 to never flush
+     * @param temporaryDirectory directory of the flushed partial indexes
+     */
+    private BM25(final Iterator<String> documents,
+                 final double termFrequencyScalingFactor,
+                 final double documentLengthNormalizationFactor,
+                 final Analyzer analyzer,
+                 final ResultCache resultCache,
+                 final ParallelSearch parallelSearch,
+                 final boolean positions,
+                 final long memoryBudget,
+                 final Path temporaryDirectory) {
+        if (termFrequencyScalingFactor <= 0 || documentLengthNormalizationFactor < 0) {
+            throw new IllegalArgumentException("termFrequencyScalingFactor and documentLengthNormalizationFactor must be positive.");
+        }
+        this.analyzer = analyzer;
+        this.resultCache = resultCache;
+        this.parallelSearch = parallelSearch;
+        this.termFrequencyScalingFactor = termFrequencyScalingFactor;
+        this.documentLengthNormalizationFactor = documentLengthNormalizationFactor;
+        this.positions = positions;
+        this.nextDocId = new AtomicInteger();
+        initialize(documents, memoryBudget, temporaryDirectory);
+    }
+
+    /**
+     * Constructor to reopen a stored index, see {@link Builder#open(Path)}. Documents added later are indexed with
+     * positions when the stored index has them.
+     * @param indexFile stored index
+     * @param termFrequencyScalingFactor scaling factor for term frequency
+     * @param documentLengthNormalizationFactor normalization factor for document length
+     * @param analyzer analyzer the index was built with, of queries and of documents added later
+     * @param resultCache cache of top-k results, null to disable it
+     * @param parallelSearch splitting of heavy queries between threads, null to evaluate every query on the calling
+     *                       thread
+     */
+    private BM25(final IndexFile indexFile,
+                 final double termFrequencyScalingFactor,
+                 final double documentLengthNormalizationFactor,
+                 final Analyzer analyzer,
+                 final ResultCache resultCache,
+                 final ParallelSearch parallelSearch) {
+        if (termFrequencyScalingFactor <= 0 || documentLengthNormalizationFactor < 0) {
+            throw new IllegalArgumentException("termFrequencyScalingFactor and documentLengthNormalizationFactor must be positive.");
+        }
+        if (indexFile.language() != analyzer.getSupportedLanguage()) {
+            throw new IllegalArgumentException("The index was built with a " + indexFile.language()
+                + " stemmer, not " + analyzer.getSupportedLanguage() + ".");
+        }
+        this.analyzer = analyzer;
+        this.resultCache = resultCache;
+        this.parallelSearch = parallelSearch;
         this.termFrequencyScalingFactor = termFrequencyScalingFactor;
         this.documentLengthNormalizationFactor = documentLengthNormalizationFactor;
-        initialize();
+        this.positions = indexFile.snapshot().segments().stream().allMatch(segment -> segment.index().hasPositions());
+        this.nextDocId = new AtomicInteger(indexFile.nextDocId());
+        this.snapshot = indexFile.snapshot();
+    }
+
+    /**
+     * @return a builder to configure and build a BM25 index
+     */
+    public static Builder builder() {
+        return new Builder();
     }
 
     /**
-     * Calculate the average length of documents in the corpus
+     * Build the first segment of the index in a single pass over the corpus
      * @param corpus list of documents
-     * @return average length of documents
      */
-    private double calculateAverageDocumentLength(List<String> corpus) {
-        long totalLength = corpus.stream()
-            .mapToInt(doc -> SPACE_PATTERN.split(doc).length)
-            .sum();
-        return corpus.isEmpty() ? 0 : (double) totalLength / corpus.size();
+    private void initialize(List<String> corpus) {
+        IndexEvent event = new IndexEvent();
+        event.begin();
+        InvertedIndex.Builder builder = new InvertedIndex.Builder(positions);
+        for (int docId = 0; docId < corpus.size(); docId++) {
+            addToBuilder(builder, docId, corpus.get(docId));
+        }
+        snapshot = new IndexSnapshot(List.of(new Segment(builder.build())));
+        commit(event, "build", 1, List.of(snapshot.segments().getFirst().index()));
     }
 
     /**
-     * Initialize term frequency and inverse document frequency
+     * Build the first segment of the index in parallel. The corpus is split in ranges of consecutive documents,
+     * each range is analyzed once into a partial index by one of exactly parallelism workers, which take the next
+     * range left until there is none, and the partial indexes are concatenated in range order, giving the same index
+     * as the sequential build.
+     * @param corpus list of documents
+     * @param executor executor of the workers
+     * @param parallelism number of workers, the maximum number of ranges indexed at the same time
      */
-    private void initialize() {
-        Map<String, Set<Integer>> docFreq = docFrequencyCalculation();
-        termFrequencyCalculation();
-        idfCalculation(docFreq);
+    private void initialize(List<String> corpus, Executor executor, int parallelism) {
+        IndexEvent event = new IndexEvent();
+        event.begin();
+        // Use more ranges than workers so that a slow range does not leave the other workers idle
+        int rangeCount = Math.min(corpus.size(), parallelism * 4);
+        int rangeSize = (corpus.size() + rangeCount - 1) / rangeCount;
+        InvertedIndex[] parts = new InvertedIndex[(corpus.size() + rangeSize - 1) / rangeSize];
+        AtomicInteger nextRange = new AtomicInteger();
+        List<CompletableFuture<Void>> workers = new ArrayList<>(parallelism);
+        for (int worker = 0; worker < Math.min(parallelism, parts.length); worker++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                int range;
+                while ((range = nextRange.getAndIncrement()) < parts.length) {
+                    InvertedIndex.Builder builder = new InvertedIndex.Builder(positions);
+                    int to = Math.min((range + 1) * rangeSize, corpus.size());
+                    for (int docId = range * rangeSize; docId < to; docId++) {
+                        addToBuilder(builder, docId, corpus.get(docId));
+                    }
+                    parts[range] = builder.build();
+                }
+            }, executor));
+        }
+        workers.forEach(CompletableFuture::join);
+        snapshot = new IndexSnapshot(List.of(new Segment(InvertedIndex.concatenate(List.of(parts)))));
+        commit(event, "build", 1, List.of(snapshot.segments().getFirst().index()));
     }
 
     /**
-     * Calculate inverse document frequency (idf)
-     * @param docFreq document frequency
-     */
-    private void idfCalculation(Map<String, Set<Integer>> docFreq) {
-        int corpusSize = corpus.size();
-        idf = docFreq.entrySet().stream()
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                entry -> Math.log((corpusSize - entry.getValue().size() + 0.5) / (entry.getValue().size() + 0.5) + 1)
-            ));
-    }
-
-    /**
-     * The term frequency (tf) calculation.
-     */
-    private void termFrequencyCalculation() {
-        tf = IntStream.range(0, corpus.size())
-            .boxed()
-            .collect(Collectors.toMap(
-                Function.identity(),
-                docIndex -> {
-                    String[] terms = SPACE_PATTERN.split(corpus.get(docIndex).toLowerCase());
-                    return Arrays.stream(terms)
-                        .filter(term -> !stopWords.contains(term))
-                        .map(stemmer::stem)
-                        .collect(Collectors.groupingBy(Function.identity(), Collectors.summingInt(term -> 1)));
+     * Build the index from a stream of documents. Whenever the partial index in memory exceeds the memory budget,
+     * it is written to a temporary file and memory-mapped, becoming a segment of the index whose postings are
+     * off the heap. The mapped segments and the last partial index are then searched together, with statistics
+     * computed over all of them.
+     * @param documents documents, analyzed one at a time and not retained
+     * @param memoryBudget heap size of a partial index above which it is flushed to disk, 0 to never flush
+     * @param temporaryDirectory directory of the flushed partial indexes
+     */
+    private void initialize(Iterator<String> documents, long memoryBudget, Path temporaryDirectory) {
+        IndexEvent event = new IndexEvent();
+        event.begin();
+        List<Segment> segments = new ArrayList<>();
+        InvertedIndex.Builder builder = new InvertedIndex.Builder(positions);
+        int docId = 0;
+        while (documents.hasNext()) {
+            String document = documents.next();
+            if (document == null) {
+                throw new IllegalArgumentException("Document must not be null.");
+            }
+            addToBuilder(builder, docId++, document);
+            if (memoryBudget > 0 && builder.estimatedBytes() >= memoryBudget) {
+                segments.add(flush(builder.build(), temporaryDirectory));
+                builder = new InvertedIndex.Builder(positions);
+            }
+        }
+        if (docId == 0) {
+            throw new IllegalArgumentException("Corpus must not be null and must contain at least one document.");
+        }
+        if (builder.docCount() > 0) {
+            segments.add(new Segment(builder.build()));
+        }
+        nextDocId.set(docId);
+        snapshot = new IndexSnapshot(segments);
+        commit(event, "build", segments.size(), segments.stream().map(Segment::index).toList());
+    }
+
+    /**
+     * Write a partial index to a temporary file and map it
+     * @param index partial index
+     * @param temporaryDirectory directory of the file
+     * @return segment backed by the mapped file
+     */
+    private Segment flush(InvertedIndex index, Path temporaryDirectory) {
+        IndexEvent event = new IndexEvent();
+        event.begin();
+        try {
+            Path file = Files.createTempFile(temporaryDirectory, "bm25-", ".segment");
+            try {
+                IndexFile.write(file, new IndexSnapshot(List.of(new Segment(index))), 0, analyzer.getSupportedLanguage());
+                Segment segment = IndexFile.open(file).snapshot().segments().getFirst();
+                commit(event, "flush", 1, List.of(index));
+                return segment;
+            } finally {
+                try {
+                    // The mapping outlives the file on POSIX systems, other systems delete it on exit
+                    Files.delete(file);
+                } catch (IOException e) {
+                    file.toFile().deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot flush a partial index to " + temporaryDirectory, e);
+        }
+    }
+
+    /**
+     * Commit a Flight Recorder event of an indexing operation, when enabled
+     * @param event event begun when the operation started
+     * @param operation build, flush or merge
+     * @param segmentCount number of segments built or merged
+     * @param indexes index data produced by the operation
+     */
+    private static void commit(IndexEvent event, String operation, int segmentCount, List<InvertedIndex> indexes) {
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.segmentCount = segmentCount;
+            for (InvertedIndex index : indexes) {
+                event.documentCount += index.docCount();
+                event.termCount += index.terms().size();
+                event.postingCount += index.postingCount();
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * Analyze a document and add it to an index builder
+     * @param builder index builder
+     * @param docId id of the document
+     * @param document document text
+     */
+    private void addToBuilder(InvertedIndex.Builder builder, int docId, String document) {
+        builder.startDocument(docId);
+        analyzer.analyze(document, builder::addTerm);
+        builder.endDocument();
+    }
+
+    /**
+     * Add a document to the index. Only the new document is analyzed, the inverse document frequencies
+     * and the average document length reflect it as soon as this method returns.
+     * @param document document text
+     * @return id of the new document
+     */
+    public int addDocument(String document) {
+        if (document == null) {
+            throw new IllegalArgumentException("Document must not be null.");
+        }
+        int docId = nextDocId.getAndIncrement();
+        Segment segment = newSegment(docId, document);
+        writeLock.lock();
+        try {
+            snapshot = snapshot.withSegment(segment);
+        } finally {
+            writeLock.unlock();
+        }
+        maybeMerge();
+        return docId;
+    }
+
+    /**
+     * Replace the text of a document, keeping its id
+     * @param docId id of the document
+     * @param document new document text
+     */
+    public void updateDocument(int docId, String document) {
+        if (document == null) {
+            throw new IllegalArgumentException("Document must not be null.");
+        }
+        Segment segment = newSegment(docId, document);
+        writeLock.lock();
+        try {
+            IndexSnapshot updated = snapshot.delete(docId);
+            if (updated == null) {
+                throw new IllegalArgumentException("Unknown document id: " + docId);
+            }
+            snapshot = updated.withSegment(segment);
+        } finally {
+            writeLock.unlock();
+        }
+        maybeMerge();
+    }
+
+    /**
+     * Delete a document from the index
+     * @param docId id of the document
+     * @return true when the document was deleted, false when there is no document with this id
+     */
+    public boolean deleteDocument(int docId) {
+        writeLock.lock();
+        try {
+            IndexSnapshot updated = snapshot.delete(docId);
+            if (updated == null) {
+                return false;
+            }
+            snapshot = updated;
+        } finally {
+            writeLock.unlock();
+        }
+        maybeMerge();
+        return true;
+    }
+
+    /**
+     * Merge all segments into one, reclaiming the space of deleted documents
+     */
+    public void forceMerge() {
+        merge(segments -> segments.size() > 1 || (segments.size() == 1 && segments.getFirst().deletedCount() > 0)
+            ? segments
+            : List.of());
+    }
+
+    /**
+     * Report the statistics of every search to a listener. Searches are also reported to Flight Recorder as
+     * {@link SearchEvent}s when the event is enabled; without listener and recording, searches measure nothing.
+     * @param searchListener listener called after every search, null to remove the current one
+     */
+    public void setSearchListener(SearchListener searchListener) {
+        this.searchListener = searchListener;
+    }
+
+    /**
+     * @return cache of top-k results, with its hit and miss counts, null when the builder did not enable it
+     */
+    public ResultCache resultCache() {
+        return resultCache;
+    }
+
+    /**
+     * @return size of the index as of now
+     */
+    public IndexStatistics indexStatistics() {
+        IndexSnapshot snapshot = this.snapshot;
+        long deletedDocs = 0;
+        long termCount = 0;
+        long postingCount = 0;
+        long sizeInBytes = 0;
+        for (Segment segment : snapshot.segments()) {
+            deletedDocs += segment.deletedCount();
+            termCount += segment.index().terms().size();
+            postingCount += segment.index().postingCount();
+            sizeInBytes += segment.index().sizeInBytes();
+        }
+        return new IndexStatistics(snapshot.docCount(), deletedDocs, snapshot.segments().size(),
+            termCount, postingCount, sizeInBytes);
+    }
+
+    /**
+     * Store the index in a file that can be reopened with {@link Builder#open(Path)} without analyzing the corpus
+     * again. Searches and writes can go on while the index is being stored; the file holds the index as it was
+     * when this method was called.
+     * @param file file to write, replaced if it exists
+     * @throws IOException when the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        IndexFile.write(file, snapshot, nextDocId.get(), analyzer.getSupportedLanguage());
+    }
+
+    /**
+     * @param docId id of the document
+     * @param document document text
+     * @return segment holding the single document
+     */
+    private Segment newSegment(int docId, String document) {
+        InvertedIndex.Builder builder = new InvertedIndex.Builder(positions);
+        addToBuilder(builder, docId, document);
+        return new Segment(builder.build());
+    }
+
+    /**
+     * Schedule a background merge of the smallest segments once there are too many of them
+     */
+    private void maybeMerge() {
+        if (snapshot.segments().size() >= 2 * MERGE_FACTOR && mergeScheduled.compareAndSet(false, true)) {
+            MERGE_EXECUTOR.execute(() -> {
+                try {
+                    merge(segments -> segments.size() < 2 * MERGE_FACTOR ? List.of() : segments.stream()
+                        .sorted(Comparator.comparingInt(Segment::liveDocCount))
+                        .limit(MERGE_FACTOR)
+                        .toList());
+                } finally {
+                    mergeScheduled.set(false);
                 }
-            ));
+                maybeMerge();
+            });
+        }
+    }
+
+    /**
+     * Merge segments and publish the result. Writes are only blocked while the merged segment is swapped in.
+     * @param policy selects the segments to merge from the current ones, an empty list to skip merging
+     */
+    private void merge(Function<List<Segment>, List<Segment>> policy) {
+        mergeLock.lock();
+        try {
+            List<Segment> toMerge = policy.apply(snapshot.segments());
+            if (toMerge.isEmpty()) {
+                return;
+            }
+            IndexEvent event = new IndexEvent();
+            event.begin();
+            InvertedIndex merged = SegmentMerger.merge(toMerge);
+            writeLock.lock();
+            try {
+                snapshot = snapshot.replace(toMerge, merged);
+            } finally {
+                writeLock.unlock();
+            }
+            commit(event, "merge", toMerge.size(), List.of(merged));
+        } finally {
+            mergeLock.unlock();
+        }
     }
 
     /**
-     * Calculate document frequency (docFreq)
-     * @return document frequency
+     * Calculate inverse document frequency (idf)
+     * @param corpusSize number of live documents
+     * @param docFreq number of live documents containing the term
+     * @return inverse document frequency, 0 when no document contains the term
      */
-    private Map<String, Set<Integer>> docFrequencyCalculation() {
-        // Document Frequency (docFreq) calculation
-        return IntStream.range(0, corpus.size())
-            .boxed()
-            .flatMap(docIndex -> {
-                String[] terms = SPACE_PATTERN.split(corpus.get(docIndex).toLowerCase());
-                return Arrays.stream(terms)
-                    .distinct()
-                    .map(term -> new AbstractMap.SimpleEntry<>(stemmer.stem(term), docIndex));
-            })
-            .collect(Collectors.groupingBy(
-                Map.Entry::getKey,
-                Collectors.mapping(Map.Entry::getValue, Collectors.toSet())
-            ));
+    private static double idf(long corpusSize, int docFreq) {
+        if (docFreq == 0) {
+            return 0.0;
+        }
+        return Math.log((corpusSize - docFreq + 0.5) / (docFreq + 0.5) + 1);
     }
 
     /**
@@ -196,54 +639,1015 @@ public class BM25 {
      * @return BM25 score for the document
      */
     public double calculateDocumentScore(Integer docIndex, List<String> query) {
-        String document = corpus.get(docIndex);
-        double docLength = SPACE_PATTERN.split(document).length;
-        return query.stream()
-            .distinct()
-            .mapToDouble(term -> calculateTermScore(docIndex, term, docLength))
-            .sum();
+        IndexSnapshot snapshot = this.snapshot;
+        for (Segment segment : snapshot.segments()) {
+            int localDoc = segment.liveLocalDoc(docIndex);
+            if (localDoc < 0) {
+                continue;
+            }
+            InvertedIndex index = segment.index();
+            int docLength = index.docLength(localDoc);
+            return query.stream()
+                .distinct()
+                .mapToDouble(term -> {
+                    TermScorer scorer = termScorer(snapshot, term);
+                    PostingList postings = index.postings(term);
+                    int termFrequency = postings == null ? 0 : postings.frequencyOf(localDoc);
+                    return scorer == null ? 0.0 : scorer.score(termFrequency, docLength);
+                })
+                .sum();
+        }
+        throw new IllegalArgumentException("Unknown document id: " + docIndex);
     }
 
     /**
-     * Calculate BM25 score for a term in a document
-     * @param docIndex index of the document
-     * @param term term to calculate score for
-     * @param docLength length of the document
-     * @return BM25 score for the term in the document
+     * @param snapshot index snapshot
+     * @param term analyzed term
+     * @return scorer of the term with the statistics of the snapshot, null when no document contains the term
      */
-    private double calculateTermScore(Integer docIndex, String term, double docLength) {
-        double termFrequency = tf.get(docIndex).getOrDefault(term, 0);
-        double idfValue = idf.getOrDefault(term, 0.0);
+    private TermScorer termScorer(IndexSnapshot snapshot, String term) {
+        return termScorer(snapshot.docCount(), snapshot.docFrequency(term), snapshot.avgDocLength());
+    }
+
+    /**
+     * @param docCount number of live documents
+     * @param docFrequency number of live documents containing the term
+     * @param avgDocLength average length of the live documents
+     * @return scorer of the term with these statistics, null when no document contains the term
+     */
+    private TermScorer termScorer(long docCount, int docFrequency, double avgDocLength) {
+        double idfValue = idf(docCount, docFrequency);
         if (idfValue == 0.0) {
-            return 0.0; // Skipping term or handle differently
+            return null;
         }
-        double numerator = idfValue * (termFrequency * (termFrequencyScalingFactor + 1));
-        double denominator = termFrequency +
-            termFrequencyScalingFactor *
-            (1 - documentLengthNormalizationFactor + documentLengthNormalizationFactor * (docLength / avgDocLength));
-        return numerator / denominator;
+        return new BM25TermScorer(idfValue, termFrequencyScalingFactor, documentLengthNormalizationFactor, avgDocLength);
     }
 
     /**
-     * Search for documents that match the query
+     * Search for documents that match the query.
+     * Only the documents found in the posting lists of the query terms are scored,
+     * all other documents are returned with a score of 0 in ascending id order.
      * @param query list of query terms
      * @return list of documents with their BM25 scores
      */
     public List<Map.Entry<Integer, Double>> search(String query) {
+        SearchListener listener = searchListener;
+        SearchEvent event = new SearchEvent();
+        boolean instrumented = listener != null || event.isEnabled();
+        long start = instrumented ? System.nanoTime() : 0;
+        event.begin();
+        List<String> queryTerms = analyzeQuery(query);
+        IndexSnapshot snapshot = this.snapshot;
+        long analyzed = instrumented ? System.nanoTime() : 0;
+
+        int maxDoc = snapshot.maxDocId() + 1;
+        double[] scores = new double[maxDoc];
+        BitSet matched = new BitSet(maxDoc);
+        long postingsVisited = accumulateScores(snapshot, queryTerms, scores, matched);
+        long scored = instrumented ? System.nanoTime() : 0;
+
+        List<Map.Entry<Integer, Double>> results = new ArrayList<>((int) snapshot.docCount());
+        matched.stream()
+            .mapToObj(docId -> Map.entry(docId, scores[docId]))
+            .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
+            .forEach(results::add);
+        BitSet unmatched = snapshot.liveDocs();
+        unmatched.andNot(matched);
+        unmatched.stream().forEach(docId -> results.add(Map.entry(docId, 0.0)));
+        if (instrumented) {
+            publish(listener, event, new SearchStatistics(query, 0, queryTerms.size(), postingsVisited,
+                matched.cardinality(), results.size(), false, analyzed - start, scored - analyzed, System.nanoTime() - scored));
+        }
+        return results;
+    }
+
+    /**
+     * Search for the k best documents that match the query.
+     * Only documents containing at least one query term are returned. The query is evaluated with
+     * Block-Max WAND, which skips the documents that cannot enter the top k.
+     * @param query query text
+     * @param k maximum number of documents to return
+     * @return at most k documents with their BM25 scores, best first
+     */
+    public List<Map.Entry<Integer, Double>> search(String query, int k) {
+        return search(snapshot, query, null, null, null, null, k);
+    }
+
+    /**
+     * Search for the k best documents that match the query among some documents, for instance the documents a
+     * user is allowed to see. The filter is applied while traversing the posting lists: documents outside of it
+     * are skipped without being scored, and the top k is filled with documents of the filter only. The result
+     * cache is not used.
+     * @param query query text
+     * @param k maximum number of documents to return
+     * @param filter ids of the documents to search
+     * @return at most k documents of the filter with their BM25 scores, best first
+     */
+    public List<Map.Entry<Integer, Double>> search(String query, int k, BitSet filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter must not be null.");
+        }
+        return search(snapshot, query, null, null, filter, null, k);
+    }
+
+    /**
+     * Search for the k best documents that match the query within a budget of time and postings visited, for
+     * instance to keep long pasted paragraphs from starving other searches. When the budget runs out, the search
+     * stops and returns the best documents found so far, flagged as partial.
+     * <p>
+     * The evaluation is an {@link AnytimeScorer}: the terms are scored one after the other from the rarest, whose
+     * inverse document frequency is the highest, so a partial ranking already includes the terms that weigh most.
+     * Results that are not partial are the same as the ones of {@link #search(String, int)}, and are shared with it
+     * through the result cache.
+     * @param query query text
+     * @param k maximum number of documents to return
+     * @param budget limits on the work of the search
+     * @return at most k documents with their BM25 scores, best first, and whether the budget ran out
+     */
+    public SearchResults searchWithBudget(String query, int k, SearchBudget budget) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive.");
+        }
+        if (budget == null) {
+            throw new IllegalArgumentException("budget must not be null.");
+        }
+        SearchListener listener = searchListener;
+        SearchEvent event = new SearchEvent();
+        boolean instrumented = listener != null || event.isEnabled();
+        long start = instrumented ? System.nanoTime() : 0;
+        event.begin();
+        IndexSnapshot snapshot = this.snapshot;
+        List<String> queryTerms = analyzeQuery(query);
+        long analyzed = instrumented ? System.nanoTime() : 0;
+        if (resultCache != null) {
+            List<Map.Entry<Integer, Double>> cached = resultCache.get(snapshot, queryTerms, k);
+            if (cached != null) {
+                if (instrumented) {
+                    publish(listener, event, new SearchStatistics(query, k, queryTerms.size(), 0, 0, cached.size(),
+                        true, analyzed - start, System.nanoTime() - analyzed, 0));
+                }
+                return new SearchResults(cached, false, 0);
+            }
+        }
+
+        List<TermScorer> termScorers = new ArrayList<>(queryTerms.size());
+        int[] docFrequencies = new int[queryTerms.size()];
+        for (int i = 0; i < queryTerms.size(); i++) {
+            termScorers.add(termScorer(snapshot, queryTerms.get(i)));
+            docFrequencies[i] = snapshot.docFrequency(queryTerms.get(i));
+        }
+        TopKCollector collector = new TopKCollector((int) Math.max(1, Math.min(k, snapshot.docCount())));
+        AnytimeScorer.Accumulator accumulator = budgetAccumulators.acquire(AnytimeScorer.Accumulator::new);
+        AnytimeScorer anytimeScorer = new AnytimeScorer(snapshot.segments(), queryTerms, termScorers, docFrequencies,
+            budget, accumulator);
+        try {
+            anytimeScorer.search(collector);
+        } finally {
+            budgetAccumulators.release(accumulator);
+        }
+        long scored = instrumented ? System.nanoTime() : 0;
+
+        List<Map.Entry<Integer, Double>> results = collector.toEntries();
+        if (resultCache != null && !anytimeScorer.isPartial()) {
+            resultCache.put(snapshot, queryTerms, k, results);
+        }
+        if (instrumented) {
+            publish(listener, event, new SearchStatistics(query, k, queryTerms.size(), anytimeScorer.postingsVisited(),
+                anytimeScorer.documentsScored(), results.size(), false, analyzed - start, scored - analyzed, System.nanoTime() - scored));
+        }
+        return new SearchResults(results, anytimeScorer.isPartial(), anytimeScorer.postingsVisited());
+    }
+
+    /**
+     * Search for a page of the documents that match the query: the k best documents ranking after a cursor, by
+     * descending score then ascending document id. The cursor of the last document of a page starts the next one:
+     * the documents of the previous pages are still scored, but the collector drops the ones ranking before the
+     * cursor, so it keeps a heap of k documents instead of the page number times k. A page still costs more the
+     * deeper it is, as its k-th best score is lower and Block-Max WAND skips fewer documents.
+     * Pages are searched on the index when they are requested, a document added or deleted in between may
+     * move results from a page to another. The result cache is only used for the first page.
+     * @param query query text
+     * @param k maximum number of documents of the page
+     * @param after cursor of the previous page, see {@link SearchPage#next()}, null for the first page
+     * @return at most k documents with their BM25 scores, best first, and the cursor of the next page
+     */
+    public SearchPage searchAfter(String query, int k, SearchCursor after) {
+        List<Map.Entry<Integer, Double>> results = search(snapshot, query, null, null, null, after, k);
+        if (results.size() < k) {
+            return new SearchPage(results, null);
+        }
+        Map.Entry<Integer, Double> last = results.getLast();
+        return new SearchPage(results, new SearchCursor(last.getKey(), last.getValue()));
+    }
+
+    /**
+     * Search for the k best documents of analyzed query terms, scored with collection statistics given by the
+     * caller instead of the statistics of this index. A {@link ShardedBM25} searches its shards with the statistics
+     * of all of them, so that scores do not depend on how documents are spread over the shards; a {@link Shard}
+     * living in another JVM calls this method on the index it serves. The result cache is not used.
+     * @param queryTerms distinct analyzed query terms
+     * @param statistics collection statistics of the query terms
+     * @param k maximum number of documents to return
+     * @return at most k documents with their BM25 scores, best first
+     */
+    public List<Map.Entry<Integer, Double>> search(List<String> queryTerms, CollectionStatistics statistics, int k) {
+        if (!statistics.terms().equals(queryTerms)) {
+            throw new IllegalArgumentException("The statistics must be those of the query terms.");
+        }
+        return search(snapshot, String.join(" ", queryTerms), queryTerms, statistics, null, null, k);
+    }
+
+    /**
+     * Collection statistics of analyzed query terms, which a {@link ShardedBM25} adds up over its shards before
+     * searching them, see {@link #search(List, CollectionStatistics, int)}
+     * @param queryTerms distinct analyzed query terms
+     * @return collection statistics of the query terms in the current snapshot of this index
+     */
+    public CollectionStatistics collectionStatistics(List<String> queryTerms) {
+        IndexSnapshot snapshot = this.snapshot;
+        int[] docFrequencies = new int[queryTerms.size()];
+        for (int i = 0; i < docFrequencies.length; i++) {
+            docFrequencies[i] = snapshot.docFrequency(queryTerms.get(i));
+        }
+        return new CollectionStatistics(queryTerms, snapshot.docCount(), snapshot.totalLength(), docFrequencies);
+    }
+
+    /**
+     * Search for the k best documents with Block-Max WAND
+     * @param snapshot index snapshot to search
+     * @param query query text
+     * @param analyzedTerms distinct analyzed query terms, null to analyze the query
+     * @param statistics collection statistics of the query terms, null to use the statistics of the index
+     * @param filter ids of the documents to search, null to search every document
+     * @param after cursor of the last document of the previous page, null to search from the best document
+     * @param k maximum number of documents to return
+     * @return at most k documents with their BM25 scores, best first
+     */
+    private List<Map.Entry<Integer, Double>> search(IndexSnapshot snapshot, String query, List<String> analyzedTerms,
+                                                    CollectionStatistics statistics, BitSet filter, SearchCursor after,
+                                                    int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive.");
+        }
+        SearchListener listener = searchListener;
+        SearchEvent event = new SearchEvent();
+        boolean instrumented = listener != null || event.isEnabled();
+        long start = instrumented ? System.nanoTime() : 0;
+        event.begin();
+        List<String> queryTerms = analyzedTerms == null ? analyzeQuery(query) : analyzedTerms;
+        long analyzed = instrumented ? System.nanoTime() : 0;
+        ResultCache resultCache = statistics == null && filter == null && after == null ? this.resultCache : null;
+        if (resultCache != null) {
+            List<Map.Entry<Integer, Double>> cached = resultCache.get(snapshot, queryTerms, k);
+            if (cached != null) {
+                if (instrumented) {
+                    publish(listener, event, new SearchStatistics(query, k, queryTerms.size(), 0, 0, cached.size(),
+                        true, analyzed - start, System.nanoTime() - analyzed, 0));
+                }
+                return cached;
+            }
+        }
+
+        List<TermScorer> termScorers = new ArrayList<>(queryTerms.size());
+        for (int i = 0; i < queryTerms.size(); i++) {
+            termScorers.add(statistics == null
+                ? termScorer(snapshot, queryTerms.get(i))
+                : termScorer(statistics.docCount(), statistics.docFrequency(i), statistics.avgDocLength()));
+        }
+
+        List<List<PostingList>> segmentPostings = new ArrayList<>();
+        List<List<TermScorer>> segmentScorers = new ArrayList<>();
+        long queryPostings = 0;
+        for (Segment segment : snapshot.segments()) {
+            List<PostingList> postings = new ArrayList<>(queryTerms.size());
+            List<TermScorer> scorers = new ArrayList<>(queryTerms.size());
+            for (int i = 0; i < queryTerms.size(); i++) {
+                PostingList postingList = segment.index().postings(queryTerms.get(i));
+                if (postingList != null && termScorers.get(i) != null) {
+                    postings.add(postingList);
+                    scorers.add(termScorers.get(i));
+                    queryPostings += postingList.size();
+                }
+            }
+            segmentPostings.add(postings);
+            segmentScorers.add(scorers);
+        }
+
+        TopKCollector collector = new TopKCollector((int) Math.max(1, Math.min(k, snapshot.docCount())), after);
+        List<BlockMaxWand> evaluators = new ArrayList<>();
+        boolean parallel = parallelSearch != null && parallelSearch.isWorthSplitting(queryPostings);
+        long totalDocCount = snapshot.segments().stream().mapToLong(segment -> segment.index().docCount()).sum();
+        for (int i = 0; i < snapshot.segments().size(); i++) {
+            Segment segment = snapshot.segments().get(i);
+            if (parallel) {
+                int[] bounds = parallelSearch.split(segment.index().docCount(), totalDocCount);
+                for (int range = 0; range + 1 < bounds.length; range++) {
+                    evaluators.add(new BlockMaxWand(segment, segmentPostings.get(i), segmentScorers.get(i), filter,
+                        bounds[range], bounds[range + 1]));
+                }
+            } else {
+                evaluators.add(new BlockMaxWand(segment, segmentPostings.get(i), segmentScorers.get(i), filter));
+            }
+        }
+        if (parallel) {
+            parallelSearch.search(evaluators, collector);
+        } else {
+            for (BlockMaxWand evaluator : evaluators) {
+                evaluator.search(collector);
+            }
+        }
+        long postingsVisited = 0;
+        long documentsScored = 0;
+        for (BlockMaxWand evaluator : evaluators) {
+            postingsVisited += evaluator.postingsVisited();
+            documentsScored += evaluator.documentsScored();
+        }
+        long scored = instrumented ? System.nanoTime() : 0;
+
+        List<Map.Entry<Integer, Double>> results = collector.toEntries();
+        if (resultCache != null) {
+            resultCache.put(snapshot, queryTerms, k, results);
+        }
+        if (instrumented) {
+            publish(listener, event, new SearchStatistics(query, k, queryTerms.size(), postingsVisited,
+                documentsScored, results.size(), false, analyzed - start, scored - analyzed, System.nanoTime() - scored));
+        }
+        return results;
+    }
+
+    /**
+     * Search for the k best documents of many queries, each with the same results as {@link #search(String, int)}.
+     * <p>
+     * The queries are analyzed up front and sorted by their most frequent term, so that queries sharing terms are
+     * scored together. Batches of queries are scored term-at-a-time on the common fork-join pool by a
+     * {@link BatchScorer}: the posting list of every distinct term of a batch is decoded and scored once, then
+     * shared by the queries using it. Batches are limited in number of queries and of postings to keep memory
+     * bounded. The result cache is used, searches are not reported to the search listener.
+     * @param queries query texts
+     * @param k maximum number of documents to return per query
+     * @return at most k documents with their BM25 scores for every query, best first, in the order of the queries
+     */
+    public List<List<Map.Entry<Integer, Double>>> searchBatch(List<String> queries, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive.");
+        }
+        IndexSnapshot snapshot = this.snapshot;
+        List<List<String>> queryTerms = queries.parallelStream().map(this::analyzeQuery).toList();
+        List<List<Map.Entry<Integer, Double>>> results = new ArrayList<>(Collections.nCopies(queries.size(), null));
+        if (resultCache != null) {
+            for (int query = 0; query < queries.size(); query++) {
+                results.set(query, resultCache.get(snapshot, queryTerms.get(query), k));
+            }
+        }
+
+        Map<String, TermScorer> termScorers = new HashMap<>();
+        Map<String, Integer> docFrequencies = new HashMap<>();
+        for (List<String> terms : queryTerms) {
+            for (String term : terms) {
+                if (!docFrequencies.containsKey(term)) {
+                    docFrequencies.put(term, snapshot.docFrequency(term));
+                    TermScorer scorer = termScorer(snapshot, term);
+                    if (scorer != null) {
+                        termScorers.put(term, scorer);
+                    }
+                }
+            }
+        }
+        // The most frequent term of a query is the most expensive one to score, share it between queries
+        String[] mostFrequentTerms = new String[queries.size()];
+        List<Integer> order = new ArrayList<>();
+        for (int query = 0; query < queries.size(); query++) {
+            if (results.get(query) == null) {
+                mostFrequentTerms[query] = "";
+                for (String term : queryTerms.get(query)) {
+                    if (docFrequencies.get(term) > docFrequencies.getOrDefault(mostFrequentTerms[query], -1)) {
+                        mostFrequentTerms[query] = term;
+                    }
+                }
+                order.add(query);
+            }
+        }
+        order.sort(Comparator.comparing(query -> mostFrequentTerms[query]));
+
+        // Keep batches small enough for every thread to get several of them, run them inline without parallelism
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        Executor executor = parallelism > 1 ? ForkJoinPool.commonPool() : Runnable::run;
+        int batchSize = Math.clamp(order.size() / (4L * parallelism), 1, BATCH_SIZE);
+        int collectorSize = (int) Math.max(1, Math.min(k, snapshot.docCount()));
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        // Accumulators of the batches done, for the next ones, at most one per thread running batches
+        Queue<BatchScorer.Accumulator> accumulators = new ConcurrentLinkedQueue<>();
+        int start = 0;
+        while (start < order.size()) {
+            Set<String> batchTerms = new HashSet<>();
+            long postings = 0;
+            int end = start;
+            while (end < order.size() && end - start < batchSize && postings < BATCH_POSTINGS) {
+                for (String term : queryTerms.get(order.get(end))) {
+                    if (batchTerms.add(term)) {
+                        postings += docFrequencies.get(term);
+                    }
+                }
+                end++;
+            }
+            List<Integer> batch = order.subList(start, end);
+            batches.add(CompletableFuture.runAsync(() -> {
+                BatchScorer.Accumulator accumulator = Objects.requireNonNullElseGet(accumulators.poll(),
+                    BatchScorer.Accumulator::new);
+                BatchScorer scorer = new BatchScorer(batch.stream().map(queryTerms::get).toList(), termScorers,
+                    collectorSize, accumulator);
+                for (Segment segment : snapshot.segments()) {
+                    scorer.score(segment);
+                }
+                accumulators.offer(accumulator);
+                for (int i = 0; i < batch.size(); i++) {
+                    results.set(batch.get(i), scorer.results(i));
+                }
+            }, executor));
+            start = end;
+        }
+        CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).join();
+        if (resultCache != null) {
+            for (int query : order) {
+                resultCache.put(snapshot, queryTerms.get(query), k, results.get(query));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Search for the k best documents containing the terms of a phrase next to each other and in order, for
+     * instance "spring boot". The phrase is analyzed like the documents, so stop words are ignored: "state of the
+     * art" matches documents where "state" is followed by "art" once stop words are removed.
+     * <p>
+     * Documents are scored with the BM25 score of the distinct phrase terms, like {@link #search(String, int)}.
+     * The evaluation is a {@link PhraseScorer}: it intersects the posting lists of the terms and only decodes the
+     * positions of the documents whose score can enter the top k. The result cache is not used.
+     * @param phrase phrase text
+     * @param k maximum number of documents to return
+     * @return at most k documents with their BM25 scores, best first
+     * @throws IllegalStateException when the index was built without positions, see {@link Builder#positions(boolean)}
+     */
+    public List<Map.Entry<Integer, Double>> searchPhrase(String phrase, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive.");
+        }
+        if (!positions) {
+            throw new IllegalStateException("The index has no positions, build it with positions(true).");
+        }
+        if (phrase == null || phrase.isEmpty()) {
+            throw new IllegalArgumentException("Phrase must not be null and must contain at least one term.");
+        }
+        SearchListener listener = searchListener;
+        SearchEvent event = new SearchEvent();
+        boolean instrumented = listener != null || event.isEnabled();
+        long start = instrumented ? System.nanoTime() : 0;
+        event.begin();
+        List<String> phraseTerms = analyzer.analyze(phrase);
+        List<String> queryTerms = phraseTerms.stream().distinct().toList();
+        int[] phraseTermIndexes = phraseTerms.stream().mapToInt(queryTerms::indexOf).toArray();
+        IndexSnapshot snapshot = this.snapshot;
+        long analyzed = instrumented ? System.nanoTime() : 0;
+
+        List<TermScorer> termScorers = new ArrayList<>(queryTerms.size());
+        for (String term : queryTerms) {
+            termScorers.add(termScorer(snapshot, term));
+        }
+        TopKCollector collector = new TopKCollector((int) Math.max(1, Math.min(k, snapshot.docCount())));
+        long postingsVisited = 0;
+        long documentsScored = 0;
+        if (!queryTerms.isEmpty() && !termScorers.contains(null)) {
+            for (Segment segment : snapshot.segments()) {
+                List<PostingList> postings = queryTerms.stream().map(segment.index()::postings).toList();
+                if (!postings.contains(null)) {
+                    PhraseScorer phraseScorer = new PhraseScorer(segment, postings, termScorers, phraseTermIndexes);
+                    phraseScorer.search(collector);
+                    postingsVisited += phraseScorer.postingsVisited();
+                    documentsScored += phraseScorer.documentsScored();
+                }
+            }
+        }
+        long scored = instrumented ? System.nanoTime() : 0;
+
+        List<Map.Entry<Integer, Double>> results = collector.toEntries();
+        if (instrumented) {
+            publish(listener, event, new SearchStatistics(phrase, k, queryTerms.size(), postingsVisited,
+                documentsScored, results.size(), false, analyzed - start, scored - analyzed, System.nanoTime() - scored));
+        }
+        return results;
+    }
+
+    /**
+     * Search for the k best documents that match a query whose words may contain wildcards: {@code *} matches any
+     * sequence of characters and {@code ?} any single character. Words without wildcards are analyzed as usual;
+     * a word with wildcards is lowercased and expanded into the 64 terms of the index matching it that are found in
+     * the most documents, through the sorted term dictionaries. At most 16,384 terms are visited in every segment,
+     * so a pattern matching more terms is expanded among the first of them in term order, see {@link WildcardQuery}.
+     * All the terms are then scored with BM25 like the terms of {@link #search(String, int)}.
+     * <p>
+     * Patterns match the analyzed terms, which are stemmed. A prefix query like {@code kubernetes*} therefore also
+     * expands the stem of its prefix, {@code kubernet*}, so that typing a whole word keeps matching it. For
+     * search-as-you-type, add {@code *} to the last word typed.
+     * @param query query text
+     * @param k maximum number of documents to return
+     * @return at most k documents with their BM25 scores, best first
+     */
+    public List<Map.Entry<Integer, Double>> searchWildcard(String query, int k) {
         if (query == null || query.isEmpty()) {
             throw new IllegalArgumentException("Query must not be null and must contain at least one term.");
         }
+        IndexSnapshot snapshot = this.snapshot;
+        Set<String> queryTerms = new LinkedHashSet<>();
+        StringBuilder words = new StringBuilder();
+        for (String word : query.split("\\s+")) {
+            if (WildcardQuery.isWildcard(word)) {
+                queryTerms.addAll(analyzer.analyze(words));
+                words.setLength(0);
+                queryTerms.addAll(expand(snapshot, analyzer.normalize(word)));
+            } else {
+                words.append(word).append(' ');
+            }
+        }
+        queryTerms.addAll(analyzer.analyze(words));
+        return search(snapshot, query, List.copyOf(queryTerms), null, null, null, k);
+    }
 
-        List<String> queryTerms = Arrays.stream(SPACE_PATTERN.split(query.toLowerCase()))
-            .filter(term -> !stopWords.contains(term))  // Filter out stop words
-            .map(stemmer::stem)                         // Stem the query terms
-            .toList();
+    /**
+     * @param snapshot index snapshot
+     * @param pattern lowercase pattern
+     * @return the most frequent terms of the snapshot matching the pattern, or its stemmed prefix for a prefix query
+     */
+    private List<String> expand(IndexSnapshot snapshot, String pattern) {
+        WildcardQuery wildcardQuery = new WildcardQuery(pattern);
+        List<String> terms = wildcardQuery.expand(snapshot, MAX_EXPANSIONS);
+        if (wildcardQuery.isPrefix()) {
+            List<String> stems = analyzer.analyze(wildcardQuery.prefix());
+            if (stems.size() == 1 && !stems.getFirst().equals(wildcardQuery.prefix())) {
+                Set<String> union = new LinkedHashSet<>(terms);
+                union.addAll(new WildcardQuery(stems.getFirst() + "*").expand(snapshot, MAX_EXPANSIONS));
+                terms = union.stream()
+                    .sorted(Comparator.comparingInt(snapshot::docFrequency).reversed().thenComparing(Comparator.naturalOrder()))
+                    .limit(MAX_EXPANSIONS)
+                    .toList();
+            }
+        }
+        return terms;
+    }
 
-        return IntStream.range(0, corpus.size())
-            .boxed()
-            .map(docIndex -> Map.entry(docIndex, calculateDocumentScore(docIndex, queryTerms)))
-            .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
-            .toList();
+    /**
+     * Search for the k best documents that match the query, rewarding the documents in which the query terms are
+     * close to each other. For every pair of consecutive query terms found in a document, the document gets a bonus
+     * of {@code proximityWeight / d} where {@code d} is the smallest distance between the two terms, so a document
+     * where they are adjacent gets the full weight.
+     * <p>
+     * The bonus is added to the BM25 scores of the best {@code max(k, 100)} documents of
+     * {@link #search(String, int)}, which are then ranked again; the positions are read from the postings of the
+     * candidates only, with a {@link ProximityScorer} per segment.
+     * @param query query text
+     * @param k maximum number of documents to return
+     * @param proximityWeight bonus of a pair of adjacent query terms, 0 for the BM25 ranking
+     * @return at most k documents with their scores including the bonus, best first
+     * @throws IllegalStateException when the index was built without positions, see {@link Builder#positions(boolean)}
+     */
+    public List<Map.Entry<Integer, Double>> searchWithProximity(String query, int k, double proximityWeight) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive.");
+        }
+        if (proximityWeight < 0 || Double.isNaN(proximityWeight)) {
+            throw new IllegalArgumentException("proximityWeight must not be negative.");
+        }
+        if (!positions) {
+            throw new IllegalStateException("The index has no positions, build it with positions(true).");
+        }
+        IndexSnapshot snapshot = this.snapshot;
+        List<String> queryTerms = analyzeQuery(query);
+        List<Map.Entry<Integer, Double>> candidates = search(snapshot, query, queryTerms, null, null, null,
+            Math.max(k, PROXIMITY_WINDOW));
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        int[] docIds = candidates.stream().mapToInt(Map.Entry::getKey).sorted().toArray();
+        Map<Integer, Double> bonuses = new HashMap<>();
+        for (Segment segment : snapshot.segments()) {
+            InvertedIndex index = segment.index();
+            ProximityScorer proximityScorer = null;
+            for (int docId : docIds) {
+                int localDoc = index.localDoc(docId);
+                if (localDoc >= 0 && !segment.isDeleted(localDoc)) {
+                    if (proximityScorer == null) {
+                        proximityScorer = new ProximityScorer(queryTerms.stream().map(index::postings).toList());
+                    }
+                    bonuses.put(docId, proximityWeight * proximityScorer.bonus(localDoc));
+                }
+            }
+        }
+        TopKCollector collector = new TopKCollector(Math.min(k, candidates.size()));
+        for (Map.Entry<Integer, Double> candidate : candidates) {
+            collector.collect(candidate.getKey(), candidate.getValue() + bonuses.getOrDefault(candidate.getKey(), 0.0));
+        }
+        return collector.toEntries();
+    }
+
+    /**
+     * Report the statistics of a search to the listener and to Flight Recorder
+     * @param listener search listener, may be null
+     * @param event search event, begun when the search started
+     * @param statistics statistics of the search
+     */
+    private static void publish(SearchListener listener, SearchEvent event, SearchStatistics statistics) {
+        if (event.shouldCommit()) {
+            event.query = statistics.query();
+            event.k = statistics.k();
+            event.termCount = statistics.termCount();
+            event.postingsVisited = statistics.postingsVisited();
+            event.documentsScored = statistics.documentsScored();
+            event.resultCount = statistics.resultCount();
+            event.cacheHit = statistics.cacheHit();
+            event.analysisDuration = statistics.analysisNanos();
+            event.scoringDuration = statistics.scoringNanos();
+            event.sortingDuration = statistics.sortingNanos();
+            event.commit();
+        }
+        if (listener != null) {
+            listener.searchCompleted(statistics);
+        }
+    }
+
+    /**
+     * Precompute the BM25 contribution of every posting, quantized to 8 or 16 bits, so that queries are
+     * evaluated by integer accumulation over impact-ordered postings.
+     * The scores are computed with the current inverse document frequencies and average document length,
+     * later changes to the index are not reflected.
+     * @param bits number of bits of an impact, 8 or 16
+     * @return score-at-a-time searcher over the quantized impacts
+     */
+    public QuantizedBM25 quantize(int bits) {
+        IndexSnapshot snapshot = this.snapshot;
+        ImpactIndex impactIndex = ImpactIndex.build(snapshot, term -> termScorer(snapshot, term), bits);
+        return new QuantizedBM25(this, impactIndex);
+    }
+
+    /**
+     * Analyze the query like the documents
+     * @param query query text
+     * @return distinct query terms
+     */
+    List<String> analyzeQuery(String query) {
+        return analyzeQuery(analyzer, query);
+    }
+
+    /**
+     * Analyze a query like the documents
+     * @param analyzer analyzer of the documents
+     * @param query query text
+     * @return distinct query terms
+     */
+    static List<String> analyzeQuery(Analyzer analyzer, String query) {
+        if (query == null || query.isEmpty()) {
+            throw new IllegalArgumentException("Query must not be null and must contain at least one term.");
+        }
+        return analyzer.analyze(query).stream().distinct().toList();
+    }
+
+    /**
+     * Add the BM25 score of every query term to the live documents of its posting lists
+     * @param snapshot index snapshot
+     * @param queryTerms distinct query terms
+     * @param scores score accumulator indexed by document id
+     * @param matched receives the ids of the documents containing at least one query term
+     * @return number of postings visited
+     */
+    private long accumulateScores(IndexSnapshot snapshot, List<String> queryTerms, double[] scores, BitSet matched) {
+        long postingsVisited = 0;
+        int[] localDocs = new int[PostingList.BLOCK_SIZE];
+        int[] frequencies = new int[PostingList.BLOCK_SIZE];
+        int[] docLengths = new int[PostingList.BLOCK_SIZE];
+        double[] blockScores = new double[PostingList.BLOCK_SIZE];
+        for (String term : queryTerms) {
+            TermScorer scorer = termScorer(snapshot, term);
+            if (scorer == null) {
+                continue;
+            }
+            for (Segment segment : snapshot.segments()) {
+                InvertedIndex index = segment.index();
+                PostingList postings = index.postings(term);
+                if (postings == null) {
+                    continue;
+                }
+                postingsVisited += postings.size();
+                // Score a block of postings at once, vectorized when the Vector API is available
+                PostingsCursor cursor = postings.cursor();
+                for (int count = cursor.nextBlock(localDocs, frequencies); count > 0; count = cursor.nextBlock(localDocs, frequencies)) {
+                    for (int i = 0; i < count; i++) {
+                        docLengths[i] = index.docLength(localDocs[i]);
+                    }
+                    scorer.score(frequencies, docLengths, count, blockScores);
+                    for (int i = 0; i < count; i++) {
+                        if (!segment.isDeleted(localDocs[i])) {
+                            int docId = index.docId(localDocs[i]);
+                            scores[docId] += blockScores[i];
+                            matched.set(docId);
+                        }
+                    }
+                }
+            }
+        }
+        return postingsVisited;
+    }
+
+    /**
+     * Builder of a BM25 index, allowing to index the corpus with several threads or to open a stored index:
+     * <pre>{@code
+     * BM25 bm25 = BM25.builder()
+     *     .stopWords(StopWords.ENGLISH)
+     *     .stemmer(EnglishStemmer::new)
+     *     .parallelism(Runtime.getRuntime().availableProcessors())
+     *     .build(corpus);
+     * }</pre>
+     */
+    public static final class Builder {
+        private double termFrequencyScalingFactor = 1.5;
+        private double documentLengthNormalizationFactor = 0.75;
+        private Set<String> stopWords = StopWords.ENGLISH;
+        private Supplier<? extends Stemmer> stemmerFactory = EnglishStemmer::new;
+        private Executor executor;
+        private int parallelism = 1;
+        private int searchParallelism = 1;
+        private long minParallelPostings;
+        private int stemmerCacheSize;
+        private int resultCacheSize;
+        private Duration resultCacheTimeToLive = Duration.ZERO;
+        private long memoryBudget;
+        private boolean positions;
+        private boolean verifyChecksums;
+        private Path temporaryDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+
+        private Builder() {
+        }
+
+        /**
+         * @param termFrequencyScalingFactor scaling factor for term frequency (k1), 1.5 by default
+         * @return this builder
+         */
+        public Builder termFrequencyScalingFactor(double termFrequencyScalingFactor) {
+            this.termFrequencyScalingFactor = termFrequencyScalingFactor;
+            return this;
+        }
+
+        /**
+         * @param documentLengthNormalizationFactor normalization factor for document length (b), 0.75 by default
+         * @return this builder
+         */
+        public Builder documentLengthNormalizationFactor(double documentLengthNormalizationFactor) {
+            this.documentLengthNormalizationFactor = documentLengthNormalizationFactor;
+            return this;
+        }
+
+        /**
+         * @param stopWords set of stop words, English by default
+         * @return this builder
+         */
+        public Builder stopWords(Set<String> stopWords) {
+            this.stopWords = stopWords;
+            return this;
+        }
+
+        /**
+         * Stemmers are usually not thread-safe, indexing tasks and queries borrow stemmers from a
+         * {@link PooledStemmer} fed by the factory.
+         * @param stemmerFactory creates a new stemmer, English by default
+         * @return this builder
+         */
+        public Builder stemmer(Supplier<? extends Stemmer> stemmerFactory) {
+            this.stemmerFactory = stemmerFactory;
+            return this;
+        }
+
+        /**
+         * Cache the stems of the most frequent words, shared by the indexing tasks, the queries
+         * and the documents added later. Most tokens of a natural-language corpus are repeated words,
+         * so a cache of a few hundred thousand words avoids most of the stemming work.
+         * @param stemmerCacheSize maximum number of cached words, 0 by default to disable the cache
+         * @return this builder
+         */
+        public Builder stemmerCacheSize(int stemmerCacheSize) {
+            if (stemmerCacheSize < 0) {
+                throw new IllegalArgumentException("stemmerCacheSize must not be negative.");
+            }
+            this.stemmerCacheSize = stemmerCacheSize;
+            return this;
+        }
+
+        /**
+         * Cache the results of the most frequent top-k searches. Queries are cached by their analyzed terms, so
+         * queries differing only by stop words, case or inflections share an entry, and cached results are dropped
+         * whenever the index changes.
+         * @param maximumSize maximum number of cached queries, 0 by default to disable the cache
+         * @param timeToLive time after which a cached result expires, zero for results that only expire when the
+         *                   index changes
+         * @return this builder
+         */
+        public Builder resultCache(int maximumSize, Duration timeToLive) {
+            if (maximumSize < 0) {
+                throw new IllegalArgumentException("maximumSize must not be negative.");
+            }
+            if (timeToLive == null || timeToLive.isNegative()) {
+                throw new IllegalArgumentException("timeToLive must not be null or negative.");
+            }
+            this.resultCacheSize = maximumSize;
+            this.resultCacheTimeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * Index the positions of the terms in every document, needed by {@link BM25#searchPhrase(String, int)} and
+         * {@link BM25#searchWithProximity(String, int, double)}. Positions are bit-packed as gaps like the postings,
+         * about a byte per token of the corpus.
+         * @param positions true to index positions, false by default
+         * @return this builder
+         */
+        public Builder positions(boolean positions) {
+            this.positions = positions;
+            return this;
+        }
+
+        /**
+         * Verify the checksum of every segment when opening an index file, reading the whole file. Otherwise only
+         * the header and the segment table are verified and the segments are paged in when searched.
+         * @param verifyChecksums true to verify the segments in {@link #open(Path)}, false by default
+         * @return this builder
+         */
+        public Builder verifyChecksums(boolean verifyChecksums) {
+            this.verifyChecksums = verifyChecksums;
+            return this;
+        }
+
+        /**
+         * @param parallelism number of tasks indexing the corpus at the same time, 1 by default to index on the
+         *                    calling thread
+         * @return this builder
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism must be positive.");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Split the evaluation of heavy queries of {@link BM25#search(String, int)} between threads: the documents are
+         * split in ranges, every range is searched by a task of the executor, and the top k of the ranges are merged.
+         * Queries whose terms have fewer postings stay on the calling thread, where they are faster.
+         * @param parallelism number of ranges a heavy query is split in, 1 by default to search on the calling thread
+         * @param minPostings number of postings of the query terms from which a query is split
+         * @return this builder
+         */
+        public Builder searchParallelism(int parallelism, long minPostings) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism must be positive.");
+            }
+            if (minPostings < 0) {
+                throw new IllegalArgumentException("minPostings must not be negative.");
+            }
+            this.searchParallelism = parallelism;
+            this.minParallelPostings = minPostings;
+            return this;
+        }
+
+        /**
+         * Limit the heap used while indexing a stream of documents: once the partial index in memory reaches the
+         * budget, it is written to a temporary file and memory-mapped. Only used by the builds from an iterator,
+         * a stream or a file.
+         * @param memoryBudget estimated heap size of a partial index in bytes, 0 by default for no limit
+         * @return this builder
+         */
+        public Builder memoryBudget(long memoryBudget) {
+            if (memoryBudget < 0) {
+                throw new IllegalArgumentException("memoryBudget must not be negative.");
+            }
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * @param temporaryDirectory directory of the partial indexes written when the memory budget is reached,
+         *                           the system temporary directory by default
+         * @return this builder
+         */
+        public Builder temporaryDirectory(Path temporaryDirectory) {
+            this.temporaryDirectory = temporaryDirectory;
+            return this;
+        }
+
+        /**
+         * @param executor executor running the indexing tasks when parallelism is greater than 1 and the searches of
+         *                 ranges when search parallelism is greater than 1, for instance a virtual-thread-per-task
+         *                 executor, the common fork-join pool by default
+         * @return this builder
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param corpus list of documents
+         * @return BM25 index of the corpus
+         */
+        public BM25 build(List<String> corpus) {
+            return new BM25(corpus,
+                termFrequencyScalingFactor,
+                documentLengthNormalizationFactor,
+                analyzer(),
+                resultCache(),
+                parallelSearch(),
+                positions,
+                executor,
+                parallelism);
+        }
+
+        /**
+         * Index documents one at a time on the calling thread, without keeping them in memory.
+         * Document ids are assigned from 0 in iteration order.
+         * @param documents documents to index
+         * @return BM25 index of the documents
+         * @throws UncheckedIOException when a partial index cannot be written to the temporary directory
+         */
+        public BM25 build(Iterator<String> documents) {
+            return new BM25(documents,
+                termFrequencyScalingFactor,
+                documentLengthNormalizationFactor,
+                analyzer(),
+                resultCache(),
+                parallelSearch(),
+                positions,
+                memoryBudget,
+                temporaryDirectory);
+        }
+
+        /**
+         * Index a stream of documents, see {@link #build(Iterator)}
+         * @param documents documents to index, consumed but not closed
+         * @return BM25 index of the documents
+         */
+        public BM25 build(Stream<String> documents) {
+            return build(documents.iterator());
+        }
+
+        /**
+         * Index a UTF-8 file holding one document per line, see {@link #build(Iterator)}
+         * @param file file of line-delimited documents
+         * @return BM25 index of the documents
+         * @throws IOException when the file cannot be read or a partial index cannot be written
+         */
+        public BM25 build(Path file) throws IOException {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                return build(reader.lines());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * Open an index stored with {@link BM25#save(Path)}. The encoded postings are memory-mapped rather than
+         * loaded onto the heap, so opening is fast and the file is shared with other processes through the page
+         * cache. The builder must be configured with the stop words and the stemmer the index was built with,
+         * the scoring parameters may differ. Whether the index has positions is read from the file.
+         * @param file index file
+         * @return BM25 index stored in the file
+         * @throws IOException when the file cannot be read, is not an index file or is corrupted
+         */
+        public BM25 open(Path file) throws IOException {
+            IndexFile indexFile = IndexFile.open(file);
+            if (verifyChecksums) {
+                indexFile.verify();
+            }
+            return new BM25(indexFile,
+                termFrequencyScalingFactor,
+                documentLengthNormalizationFactor,
+                analyzer(),
+                resultCache(),
+                parallelSearch());
+        }
+
+        /**
+         * @return thread-safe analyzer of documents and queries
+         */
+        Analyzer analyzer() {
+            Stemmer stemmer = new PooledStemmer(stemmerFactory);
+            return new Analyzer(stopWords, stemmerCacheSize > 0 ? new CachingStemmer(stemmer, stemmerCacheSize) : stemmer);
+        }
+
+        private ResultCache resultCache() {
+            return resultCacheSize > 0 ? new ResultCache(resultCacheSize, resultCacheTimeToLive) : null;
+        }
+
+        private ParallelSearch parallelSearch() {
+            return searchParallelism > 1
+                ? new ParallelSearch(executor == null ? ForkJoinPool.commonPool() : executor, searchParallelism, minParallelPostings)
+                : null;
+        }
     }
 
     /**
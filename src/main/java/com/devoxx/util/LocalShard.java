@@ -0,0 +1,62 @@
+package com.devoxx.util;
+
+import com.devoxx.util.search.CollectionStatistics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Shard held in the same JVM, a {@link BM25} index whose operations run on an executor of its own. A process
+ * serving a shard to other JVMs can answer their calls with a local shard.
+ */
+public final class LocalShard implements Shard {
+
+    private final BM25 bm25;
+    private final ExecutorService executor;
+
+    /**
+     * Create a shard
+     * @param bm25 index of the documents of the shard
+     * @param executor executor of the operations of the shard, shut down when the shard is closed
+     */
+    public LocalShard(BM25 bm25, ExecutorService executor) {
+        this.bm25 = bm25;
+        this.executor = executor;
+    }
+
+    /**
+     * @return index of the documents of the shard
+     */
+    BM25 bm25() {
+        return bm25;
+    }
+
+    @Override
+    public CompletableFuture<CollectionStatistics> statistics(List<String> queryTerms) {
+        return CompletableFuture.supplyAsync(() -> bm25.collectionStatistics(queryTerms), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<Map.Entry<Integer, Double>>> search(List<String> queryTerms,
+                                                                       CollectionStatistics statistics,
+                                                                       int k) {
+        return CompletableFuture.supplyAsync(() -> bm25.search(queryTerms, statistics, k), executor);
+    }
+
+    @Override
+    public CompletableFuture<Integer> addDocument(String document) {
+        return CompletableFuture.supplyAsync(() -> bm25.addDocument(document), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteDocument(int docId) {
+        return CompletableFuture.supplyAsync(() -> bm25.deleteDocument(docId), executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
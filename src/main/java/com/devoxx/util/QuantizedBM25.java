@@ -0,0 +1,49 @@
+package com.devoxx.util;
+
+import com.devoxx.util.index.ImpactIndex;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Score-at-a-time search over the quantized BM25 impacts of a {@link BM25} index, see {@link BM25#quantize(int)}.
+ * Scores are approximations of the BM25 scores, within the precision of the quantization.
+ */
+public final class QuantizedBM25 {
+
+    private final BM25 bm25;
+    private final ImpactIndex impactIndex;
+
+    QuantizedBM25(BM25 bm25, ImpactIndex impactIndex) {
+        this.bm25 = bm25;
+        this.impactIndex = impactIndex;
+    }
+
+    /**
+     * Search for the k best documents that match the query
+     * @param query query text
+     * @param k maximum number of documents to return
+     * @return at most k documents with their approximate BM25 scores, best first
+     */
+    public List<Map.Entry<Integer, Double>> search(String query, int k) {
+        return search(query, k, Long.MAX_VALUE);
+    }
+
+    /**
+     * Search for the k best documents that match the query, stopping once a number of postings has been visited.
+     * The postings with the highest impacts are visited first, so the result degrades gracefully.
+     * @param query query text
+     * @param k maximum number of documents to return
+     * @param maxPostings maximum number of postings to visit
+     * @return at most k documents with their approximate BM25 scores, best first
+     */
+    public List<Map.Entry<Integer, Double>> search(String query, int k, long maxPostings) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive.");
+        }
+        if (maxPostings <= 0) {
+            throw new IllegalArgumentException("maxPostings must be positive.");
+        }
+        return impactIndex.search(bm25.analyzeQuery(query), k, maxPostings);
+    }
+}
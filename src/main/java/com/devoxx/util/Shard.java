@@ -0,0 +1,54 @@
+package com.devoxx.util;
+
+import com.devoxx.util.search.CollectionStatistics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A shard of a {@link ShardedBM25}, holding part of the documents.
+ * <p>
+ * Every operation is asynchronous and only exchanges analyzed terms, serializable {@link CollectionStatistics} and
+ * results, so that a shard may live in another JVM: a stub implementing this interface forwards the calls to a
+ * process answering them with {@link BM25#collectionStatistics(List)} and
+ * {@link BM25#search(List, CollectionStatistics, int)}, or with a {@link LocalShard}. Document ids are local to the
+ * shard.
+ */
+public interface Shard extends AutoCloseable {
+
+    /**
+     * @param queryTerms distinct analyzed query terms
+     * @return collection statistics of the query terms over the documents of the shard
+     */
+    CompletableFuture<CollectionStatistics> statistics(List<String> queryTerms);
+
+    /**
+     * Search for the k best documents of the shard, scored with the statistics of the whole collection
+     * @param queryTerms distinct analyzed query terms
+     * @param statistics collection statistics of the query terms over all shards
+     * @param k maximum number of documents to return
+     * @return at most k documents of the shard with their BM25 scores, best first
+     */
+    CompletableFuture<List<Map.Entry<Integer, Double>>> search(List<String> queryTerms,
+                                                                CollectionStatistics statistics,
+                                                                int k);
+
+    /**
+     * @param document document text
+     * @return local id of the new document
+     */
+    CompletableFuture<Integer> addDocument(String document);
+
+    /**
+     * @param docId local id of the document
+     * @return true when the document was deleted, false when the shard has no document with this id
+     */
+    CompletableFuture<Boolean> deleteDocument(int docId);
+
+    /**
+     * Release the resources of the shard
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,179 @@
+package com.devoxx.util;
+
+import com.devoxx.util.analysis.Analyzer;
+import com.devoxx.util.search.CollectionStatistics;
+import com.devoxx.util.search.TopKCollector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BM25 index partitioned into shards, searched by scatter-gather.
+ * <p>
+ * A search first gathers the collection statistics of the query terms from every shard and adds them up, then
+ * searches every shard with the statistics of the whole collection and merges their top k. The inverse document
+ * frequencies and the average document length are those of all the documents, so scores and results are the
+ * same as those of a single index of the same documents, whatever the number of shards.
+ * <p>
+ * Documents are spread over the shards in turn. The document with id {@code docId} is the document with local id
+ * {@code docId / shardCount} of shard {@code docId % shardCount}, so the documents of the corpus keep their
+ * position as id. Shards are updated independently: a search running while documents are added or deleted may
+ * see the statistics of some of the changes only.
+ */
+public final class ShardedBM25 implements AutoCloseable {
+
+    private final List<Shard> shards;
+    private final Analyzer analyzer;
+    private final AtomicInteger nextShard;
+
+    /**
+     * Create a sharded index over existing shards, for instance shards living in other JVMs
+     * @param shards shards, in the order their documents were spread over
+     * @param analyzer analyzer the shards were built with
+     */
+    public ShardedBM25(List<? extends Shard> shards, Analyzer analyzer) {
+        this(shards, analyzer, 0);
+    }
+
+    private ShardedBM25(List<? extends Shard> shards, Analyzer analyzer, int nextShard) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one shard.");
+        }
+        this.shards = List.copyOf(shards);
+        this.analyzer = analyzer;
+        this.nextShard = new AtomicInteger(nextShard);
+    }
+
+    /**
+     * Index a corpus in shards held in this JVM, each built and searched on threads of its own
+     * @param corpus list of documents, at least one per shard
+     * @param shardCount number of shards
+     * @param builder configuration of the index of every shard
+     * @return sharded index of the corpus
+     */
+    public static ShardedBM25 build(List<String> corpus, int shardCount, BM25.Builder builder) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount must be positive.");
+        }
+        if (corpus == null || corpus.size() < shardCount) {
+            throw new IllegalArgumentException("Corpus must contain at least one document per shard.");
+        }
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / shardCount);
+        List<CompletableFuture<LocalShard>> shards = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            List<String> documents = new ArrayList<>(corpus.size() / shardCount + 1);
+            for (int docId = shard; docId < corpus.size(); docId += shardCount) {
+                documents.add(corpus.get(docId));
+            }
+            String name = "bm25-shard-" + shard;
+            ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            shards.add(CompletableFuture.supplyAsync(() -> new LocalShard(builder.build(documents), executor), executor));
+        }
+        return new ShardedBM25(shards.stream().map(ShardedBM25::join).toList(), builder.analyzer(), corpus.size());
+    }
+
+    /**
+     * Search for the k best documents that match the query in all shards
+     * @param query query text
+     * @param k maximum number of documents to return
+     * @return at most k documents with their BM25 scores, best first
+     */
+    public List<Map.Entry<Integer, Double>> search(String query, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive.");
+        }
+        List<String> queryTerms = BM25.analyzeQuery(analyzer, query);
+        List<CompletableFuture<CollectionStatistics>> shardStatistics = shards.stream()
+            .map(shard -> shard.statistics(queryTerms))
+            .toList();
+        CollectionStatistics statistics = shardStatistics.stream()
+            .map(ShardedBM25::join)
+            .reduce(CollectionStatistics::add)
+            .orElseThrow();
+
+        List<CompletableFuture<List<Map.Entry<Integer, Double>>>> shardResults = shards.stream()
+            .map(shard -> shard.search(queryTerms, statistics, k))
+            .toList();
+        TopKCollector collector = new TopKCollector((int) Math.max(1, Math.min(k, statistics.docCount())));
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (Map.Entry<Integer, Double> result : join(shardResults.get(shard))) {
+                collector.collect(docId(shard, result.getKey()), result.getValue());
+            }
+        }
+        return collector.toEntries();
+    }
+
+    /**
+     * Add a document to the next shard in turn
+     * @param document document text
+     * @return id of the new document
+     */
+    public int addDocument(String document) {
+        if (document == null) {
+            throw new IllegalArgumentException("Document must not be null.");
+        }
+        int shard = Math.floorMod(nextShard.getAndIncrement(), shards.size());
+        return docId(shard, join(shards.get(shard).addDocument(document)));
+    }
+
+    /**
+     * Delete a document from its shard
+     * @param docId id of the document
+     * @return true when the document was deleted, false when there is no document with this id
+     */
+    public boolean deleteDocument(int docId) {
+        if (docId < 0) {
+            return false;
+        }
+        return join(shards.get(docId % shards.size()).deleteDocument(docId / shards.size()));
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int shardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Close every shard
+     */
+    @Override
+    public void close() {
+        shards.forEach(Shard::close);
+    }
+
+    /**
+     * @param shard index of the shard
+     * @param localDoc local id of the document in the shard
+     * @return id of the document
+     */
+    private int docId(int shard, int localDoc) {
+        return localDoc * shards.size() + shard;
+    }
+
+    /**
+     * @param future result of a shard operation
+     * @return the result, rethrowing the exception of a failed operation as is
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.devoxx.util.analysis;
+
+import com.devoxx.util.Language;
+import com.devoxx.util.stemmer.Stemmer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Turns a text into the terms of an index or a query: the text is split on whitespace, every token is lowercased,
+ * stop words are dropped and the remaining tokens are stemmed. Documents and queries go through the same analyzer,
+ * so a query term always matches the terms it was indexed as.
+ * <p>
+ * The text is scanned character by character, lowercasing on the fly, and tokens are looked up in a bounded cache
+ * of analyzed tokens by their characters in the text. A token that has been seen before costs no allocation and no
+ * stemming, only a {@link String} for a new token is created. The cache is a direct-mapped table: a token evicts
+ * the one in its slot, so a rare token may evict a frequent one, which is then analyzed again on its next
+ * occurrence. Entries are immutable, so racing threads may overwrite each other's entries but never read a
+ * partial one.
+ * <p>
+ * An analyzer is thread-safe when its stemmer is.
+ */
+public final class Analyzer {
+
+    private static final int DEFAULT_CACHE_SIZE = 1 << 14;
+
+    private final Set<String> stopWords;
+    private final Stemmer stemmer;
+    private final Entry[] cache;
+
+    /**
+     * Create an analyzer caching 16384 tokens
+     * @param stopWords set of lowercase stop words
+     * @param stemmer stemmer
+     */
+    public Analyzer(Set<String> stopWords, Stemmer stemmer) {
+        this(stopWords, stemmer, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Create an analyzer
+     * @param stopWords set of lowercase stop words
+     * @param stemmer stemmer
+     * @param cacheSize number of cached tokens, rounded up to a power of two
+     */
+    public Analyzer(Set<String> stopWords, Stemmer stemmer, int cacheSize) {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("cacheSize must be positive.");
+        }
+        this.stopWords = stopWords;
+        this.stemmer = stemmer;
+        this.cache = new Entry[Math.min(1 << 30, Integer.highestOneBit(Math.max(1, cacheSize - 1)) << 1)];
+    }
+
+    /**
+     * Analyze a text
+     * @param text text to analyze
+     * @param terms receives the analyzed terms in order of appearance, repeated terms included
+     * @return number of analyzed terms
+     */
+    public int analyze(CharSequence text, Consumer<String> terms) {
+        int count = 0;
+        int length = text.length();
+        int position = 0;
+        while (true) {
+            while (position < length && isSeparator(text.charAt(position))) {
+                position++;
+            }
+            if (position == length) {
+                return count;
+            }
+            int start = position;
+            int hash = 0;
+            for (char c; position < length && !isSeparator(c = text.charAt(position)); position++) {
+                hash = 31 * hash + toLowerCase(c);
+            }
+            String term = term(text, start, position, hash);
+            if (term != null) {
+                terms.accept(term);
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Analyze a text
+     * @param text text to analyze
+     * @return analyzed terms in order of appearance, repeated terms included
+     */
+    public List<String> analyze(CharSequence text) {
+        List<String> terms = new ArrayList<>();
+        analyze(text, terms::add);
+        return terms;
+    }
+
+    /**
+     * Lowercase a token like the tokens of analyzed texts, without removing stop words or stemming, for instance
+     * to match the beginning of a word against analyzed terms
+     * @param token token
+     * @return lowercased token
+     */
+    public String normalize(CharSequence token) {
+        char[] chars = new char[token.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = toLowerCase(token.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return language of the stemmer
+     */
+    public Language getSupportedLanguage() {
+        return stemmer.getSupportedLanguage();
+    }
+
+    /**
+     * @param text text
+     * @param start start of the token in the text
+     * @param end end of the token in the text
+     * @param hash hash code of the lowercased token
+     * @return the analyzed token, null for a stop word
+     */
+    private String term(CharSequence text, int start, int end, int hash) {
+        int slot = (hash ^ (hash >>> 16)) & (cache.length - 1);
+        Entry entry = cache[slot];
+        if (entry != null && entry.hash == hash && entry.matches(text, start, end)) {
+            return entry.term;
+        }
+        char[] token = new char[end - start];
+        for (int i = 0; i < token.length; i++) {
+            token[i] = toLowerCase(text.charAt(start + i));
+        }
+        String word = new String(token);
+        String term = stopWords.contains(word) ? null : stemmer.stem(word);
+        cache[slot] = new Entry(token, hash, term);
+        return term;
+    }
+
+    /**
+     * @param c character
+     * @return true for the whitespace characters of the regular expression {@code \s}
+     */
+    private static boolean isSeparator(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    private static char toLowerCase(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    private static final class Entry {
+        private final char[] token;
+        private final int hash;
+        private final String term;
+
+        private Entry(char[] token, int hash, String term) {
+            this.token = token;
+            this.hash = hash;
+            this.term = term;
+        }
+
+        /**
+         * @return true when the token is the lowercased characters of the text between start and end
+         */
+        private boolean matches(CharSequence text, int start, int end) {
+            if (token.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < token.length; i++) {
+                if (token[i] != toLowerCase(text.charAt(start + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
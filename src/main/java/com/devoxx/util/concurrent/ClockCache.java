@@ -0,0 +1,172 @@
+package com.devoxx.util.concurrent;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Thread-safe cache holding a bounded number of entries, evicted with the CLOCK algorithm.
+ * <p>
+ * Every cached entry has a reference bit set when it is read, and when an entry is added to a full cache a hand
+ * sweeps the entries in insertion order, clearing reference bits until it finds an entry that has not been read
+ * since the previous sweep. A hit is a lock-free map lookup plus a reference bit write; only insertions take a lock.
+ * An entry replacing another one of the same key takes its place in the clock.
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+public final class ClockCache<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<K, V>> cache;
+    private final Entry<K, V>[] clock;
+    private final ReentrantLock clockLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private int hand;
+
+    /**
+     * Create a cache
+     * @param maximumSize maximum number of cached entries
+     */
+    @SuppressWarnings("unchecked")
+    public ClockCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive.");
+        }
+        this.cache = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+        this.clock = (Entry<K, V>[]) new Entry<?, ?>[maximumSize];
+    }
+
+    /**
+     * @param key key of the value
+     * @return the cached value, or null when the key is not cached
+     */
+    public V get(K key) {
+        return get(key, value -> true);
+    }
+
+    /**
+     * Read a cached value, counting a miss when the value is not usable
+     * @param key key of the value
+     * @param usable tells whether the cached value can be used
+     * @return the cached value, or null when the key is not cached or its value is not usable
+     */
+    public V get(K key, Predicate<? super V> usable) {
+        Entry<K, V> entry = cache.get(key);
+        if (entry == null || !usable.test(entry.value)) {
+            misses.increment();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Cache a value unless its key is already cached
+     * @param key key of the value
+     * @param value value to cache
+     */
+    public void putIfAbsent(K key, V value) {
+        put(key, value, previous -> false);
+    }
+
+    /**
+     * Cache a value, evicting the first entry of the clock that has not been referenced when the cache is full
+     * @param key key of the value
+     * @param value value to cache
+     * @param replaces tells whether the value cached for the same key, if any, is replaced
+     */
+    public void put(K key, V value, Predicate<? super V> replaces) {
+        Entry<K, V> entry = new Entry<>(key, value);
+        clockLock.lock();
+        try {
+            Entry<K, V> previous = cache.get(key);
+            if (previous != null) {
+                if (replaces.test(previous.value)) {
+                    entry.slot = previous.slot;
+                    clock[entry.slot] = entry;
+                    cache.put(key, entry);
+                }
+                return;
+            }
+            cache.put(key, entry);
+            // Readers may set reference bits again while the hand sweeps, evict anyway after two full turns
+            for (int steps = 0; ; steps++) {
+                Entry<K, V> current = clock[hand];
+                if (current == null || !current.referenced || steps >= 2 * clock.length) {
+                    if (current != null) {
+                        cache.remove(current.key, current);
+                    }
+                    entry.slot = hand;
+                    clock[hand] = entry;
+                    hand = (hand + 1) % clock.length;
+                    return;
+                }
+                current.referenced = false;
+                hand = (hand + 1) % clock.length;
+            }
+        } finally {
+            clockLock.unlock();
+        }
+    }
+
+    /**
+     * Remove every cached entry, the hit and miss counts are kept
+     */
+    public void clear() {
+        clockLock.lock();
+        try {
+            cache.clear();
+            Arrays.fill(clock, null);
+            hand = 0;
+        } finally {
+            clockLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of reads that found a usable value
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of reads that found no usable value
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return ratio of the reads that found a usable value, 0 when nothing has been read
+     */
+    public double hitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return number of cached entries
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private static final class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private volatile boolean referenced;
+        private int slot; // Position in the clock, guarded by the clock lock
+
+        private Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
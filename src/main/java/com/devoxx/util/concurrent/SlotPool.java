@@ -0,0 +1,77 @@
+package com.devoxx.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of reusable objects that are not thread-safe, such as stemmers or score accumulators.
+ * <p>
+ * Objects are kept in a fixed array of slots. A thread borrows an object from the first occupied slot and puts it
+ * back in the first free one, starting from a slot derived from the thread to limit contention. When every slot is
+ * empty, a new object is created, and when every slot is occupied, the object put back is dropped. No
+ * {@link ThreadLocal} is involved, so the number of idle objects is bounded by the number of slots rather than the
+ * number of threads, which suits virtual threads.
+ * @param <T> type of the pooled objects
+ */
+public final class SlotPool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+
+    /**
+     * Create a pool of two slots per available processor
+     */
+    public SlotPool() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Create a pool
+     * @param size maximum number of idle objects kept in the pool
+     */
+    public SlotPool(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive.");
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * Borrow an object, to be put back with {@link #release(Object)} once the caller is done with it
+     * @param factory creates a new object when none is idle
+     * @return an idle object from the pool, or a new one when none is idle
+     */
+    public T acquire(Supplier<? extends T> factory) {
+        int length = slots.length();
+        int start = start();
+        for (int i = 0; i < length; i++) {
+            int slot = (start + i) % length;
+            T value = slots.get(slot);
+            if (value != null && slots.compareAndSet(slot, value, null)) {
+                return value;
+            }
+        }
+        return factory.get();
+    }
+
+    /**
+     * Put an object back in a free slot, the object is dropped when the pool is full
+     * @param value object no longer used by the caller
+     */
+    public void release(T value) {
+        int length = slots.length();
+        int start = start();
+        for (int i = 0; i < length; i++) {
+            int slot = (start + i) % length;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, value)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return first slot to look at for the calling thread
+     */
+    private int start() {
+        return (int) (Thread.currentThread().threadId() % slots.length());
+    }
+}
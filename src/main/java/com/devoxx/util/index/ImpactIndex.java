@@ -0,0 +1,348 @@
+package com.devoxx.util.index;
+
+import com.devoxx.util.concurrent.SlotPool;
+import com.devoxx.util.search.TermScorer;
+import com.devoxx.util.search.TopKCollector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Inverted index of precomputed, quantized score contributions ("impacts").
+ * <p>
+ * The BM25 contribution of every posting is computed once, scaled against the highest contribution of the index
+ * and rounded up to an integer of 8 or 16 bits. Postings of a term are then ordered by decreasing impact and
+ * grouped by equal impact, so that only document ids are stored per posting, as variable-byte gaps from the
+ * previous document of the group. Terms are numbered by a {@link TermDictionary} and their postings are kept in
+ * arrays indexed by term id.
+ * Queries are evaluated score-at-a-time: the groups of all query terms are visited from the highest impact down
+ * and their impact is added to integer accumulators, which allows stopping early once a budget of postings has
+ * been spent while the most significant contributions have already been accumulated. The accumulators are kept
+ * in a small pool and reused across queries, only the documents reached by a query are reset after it.
+ */
+public final class ImpactIndex {
+
+    // Layout of the groups of a term: impact, index of the first posting and offset of its first byte per group
+    private static final int IMPACT = 0;
+    private static final int START = 1;
+    private static final int OFFSET = 2;
+    private static final int GROUP_STRIDE = 3;
+
+    private final TermDictionary terms;
+    // Groups of every term, followed by the number of postings and of bytes of the term, indexed by term id
+    private final int[][] groups;
+    // Document id gaps of every term, indexed by term id
+    private final byte[][] docIds;
+    private final int docCount;
+    private final double scale;
+    // Idle accumulators, reused across queries
+    private final SlotPool<Accumulators> pool = new SlotPool<>();
+
+    private ImpactIndex(TermDictionary terms, int[][] groups, byte[][] docIds, int docCount, double scale) {
+        this.terms = terms;
+        this.groups = groups;
+        this.docIds = docIds;
+        this.docCount = docCount;
+        this.scale = scale;
+    }
+
+    /**
+     * Quantize the contributions of every live posting of an index
+     * @param snapshot index snapshot
+     * @param scorers provides the scorer of a term, or null for a term that must not be scored
+     * @param bits number of bits of an impact, 8 or 16
+     * @return impact index
+     */
+    public static ImpactIndex build(IndexSnapshot snapshot, Function<String, TermScorer> scorers, int bits) {
+        if (bits != 8 && bits != 16) {
+            throw new IllegalArgumentException("bits must be 8 or 16.");
+        }
+        int levels = (1 << bits) - 1;
+        int docCount = snapshot.maxDocId() + 1;
+        List<Segment> segments = snapshot.segments();
+
+        // Number the terms of all the segments, every term is decoded once per segment
+        TermDictionary.Builder dictionary = new TermDictionary.Builder();
+        int[][] segmentTermIds = new int[segments.size()][];
+        TermScorer[] termScorers = new TermScorer[16];
+        int[] postingCounts = new int[16];
+        double maxScore = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            InvertedIndex index = segment.index();
+            int[] termIds = new int[index.terms().size()];
+            Arrays.fill(termIds, -1);
+            for (int localTermId = 0; localTermId < termIds.length; localTermId++) {
+                PostingList postingList = index.postings(localTermId);
+                if (postingList == null) {
+                    continue;
+                }
+                int size = dictionary.size();
+                String term = index.terms().term(localTermId);
+                int termId = dictionary.add(term);
+                if (termId == size) {
+                    if (termId == termScorers.length) {
+                        termScorers = Arrays.copyOf(termScorers, termId * 2);
+                        postingCounts = Arrays.copyOf(postingCounts, termId * 2);
+                    }
+                    termScorers[termId] = scorers.apply(term);
+                }
+                TermScorer scorer = termScorers[termId];
+                if (scorer == null) {
+                    continue;
+                }
+                termIds[localTermId] = termId;
+                PostingsCursor cursor = postingList.cursor();
+                for (int localDoc = cursor.docId(); localDoc != PostingsCursor.NO_MORE_DOCS; localDoc = cursor.next()) {
+                    if (!segment.isDeleted(localDoc)) {
+                        maxScore = Math.max(maxScore, scorer.score(cursor.frequency(), index.docLength(localDoc)));
+                        postingCounts[termId]++;
+                    }
+                }
+            }
+            segmentTermIds[s] = termIds;
+        }
+        int termCount = dictionary.size();
+        if (maxScore == 0) {
+            return new ImpactIndex(dictionary.build(), new int[termCount][], new byte[termCount][], docCount, 0);
+        }
+
+        // Sort on (descending impact, ascending doc id) packed in a single long
+        long[][] sortKeys = new long[termCount][];
+        for (int termId = 0; termId < termCount; termId++) {
+            sortKeys[termId] = termScorers[termId] == null ? null : new long[postingCounts[termId]];
+        }
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            InvertedIndex index = segment.index();
+            int[] termIds = segmentTermIds[s];
+            for (int localTermId = 0; localTermId < termIds.length; localTermId++) {
+                int termId = termIds[localTermId];
+                if (termId < 0) {
+                    continue;
+                }
+                TermScorer scorer = termScorers[termId];
+                long[] keys = sortKeys[termId];
+                PostingsCursor cursor = index.postings(localTermId).cursor();
+                for (int localDoc = cursor.docId(); localDoc != PostingsCursor.NO_MORE_DOCS; localDoc = cursor.next()) {
+                    if (!segment.isDeleted(localDoc)) {
+                        double score = scorer.score(cursor.frequency(), index.docLength(localDoc));
+                        int impact = Math.max(1, Math.min(levels, (int) Math.ceil(score * levels / maxScore)));
+                        keys[--postingCounts[termId]] = ((long) (levels - impact) << 32) | index.docId(localDoc);
+                    }
+                }
+            }
+        }
+
+        int[][] groups = new int[termCount][];
+        byte[][] docIds = new byte[termCount][];
+        for (int termId = 0; termId < termCount; termId++) {
+            long[] keys = sortKeys[termId];
+            if (keys != null && keys.length > 0) {
+                sortKeys[termId] = null;
+                Arrays.sort(keys);
+                encode(keys, levels, groups, docIds, termId);
+            }
+        }
+        return new ImpactIndex(dictionary.build(), groups, docIds, docCount, maxScore / levels);
+    }
+
+    /**
+     * Group the postings of a term by impact and encode their document ids
+     * @param sortKeys sorted postings packed as (levels - impact) in the high and doc id in the low 32 bits
+     * @param levels highest impact
+     * @param groups receives the groups of the term
+     * @param docIds receives the document id gaps of the term
+     * @param termId term id
+     */
+    private static void encode(long[] sortKeys, int levels, int[][] groups, byte[][] docIds, int termId) {
+        int[] termGroups = new int[GROUP_STRIDE * 4];
+        byte[] bytes = new byte[sortKeys.length + 16];
+        int groupCount = 0;
+        int offset = 0;
+        int previous = 0;
+        for (int i = 0; i < sortKeys.length; i++) {
+            int impact = levels - (int) (sortKeys[i] >>> 32);
+            int docId = (int) sortKeys[i];
+            if (groupCount == 0 || termGroups[(groupCount - 1) * GROUP_STRIDE + IMPACT] != impact) {
+                if ((groupCount + 2) * GROUP_STRIDE > termGroups.length) {
+                    termGroups = Arrays.copyOf(termGroups, termGroups.length * 2);
+                }
+                termGroups[groupCount * GROUP_STRIDE + IMPACT] = impact;
+                termGroups[groupCount * GROUP_STRIDE + START] = i;
+                termGroups[groupCount * GROUP_STRIDE + OFFSET] = offset;
+                groupCount++;
+                previous = 0;
+            }
+            if (offset + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            for (int gap = docId - previous; ; gap >>>= 7) {
+                if (gap < 0x80) {
+                    bytes[offset++] = (byte) gap;
+                    break;
+                }
+                bytes[offset++] = (byte) (gap | 0x80);
+            }
+            previous = docId;
+        }
+        termGroups[groupCount * GROUP_STRIDE + START] = sortKeys.length;
+        termGroups[groupCount * GROUP_STRIDE + OFFSET] = offset;
+        groups[termId] = Arrays.copyOf(termGroups, (groupCount + 1) * GROUP_STRIDE);
+        docIds[termId] = Arrays.copyOf(bytes, offset);
+    }
+
+    /**
+     * Evaluate a query score-at-a-time
+     * @param queryTerms distinct analyzed query terms
+     * @param k maximum number of documents to return
+     * @param maxPostings number of postings after which evaluation stops
+     * @return at most k documents with their approximate BM25 scores, best first
+     */
+    public List<Map.Entry<Integer, Double>> search(List<String> queryTerms, int k, long maxPostings) {
+        int[] termIds = new int[queryTerms.size()];
+        int termCount = 0;
+        int groupCount = 0;
+        for (String term : queryTerms) {
+            int termId = terms.id(term);
+            if (termId >= 0 && groups[termId] != null) {
+                int[] termGroups = groups[termId];
+                termIds[termCount++] = termId;
+                groupCount += termGroups.length / GROUP_STRIDE - 1;
+            }
+        }
+        if (termCount == 0) {
+            return List.of();
+        }
+
+        // Visit the groups of all terms by decreasing impact, the low 32 bits of a key index the group
+        long[] groupOrder = new long[groupCount];
+        int[] groupTerms = new int[groupCount];
+        int[] groupIndexes = new int[groupCount];
+        int position = 0;
+        for (int term = 0; term < termCount; term++) {
+            int[] termGroups = groups[termIds[term]];
+            for (int group = 0; group < termGroups.length / GROUP_STRIDE - 1; group++) {
+                groupTerms[position] = termIds[term];
+                groupIndexes[position] = group;
+                groupOrder[position] = ((long) -termGroups[group * GROUP_STRIDE + IMPACT] << 32) | position;
+                position++;
+            }
+        }
+        Arrays.sort(groupOrder);
+
+        Accumulators accumulators = pool.acquire(() -> new Accumulators(docCount));
+        try {
+            return search(groupOrder, groupTerms, groupIndexes, k, maxPostings, accumulators);
+        } finally {
+            accumulators.clear();
+            pool.release(accumulators);
+        }
+    }
+
+    /**
+     * Accumulate the impacts of the groups of the query terms
+     * @param groupOrder groups by decreasing impact, the low 32 bits index the two following arrays
+     * @param groupTerms term id of every group
+     * @param groupIndexes index of every group among the groups of its term
+     * @param k maximum number of documents to return
+     * @param maxPostings number of postings after which evaluation stops
+     * @param accumulators cleared accumulators
+     * @return at most k documents with their approximate BM25 scores, best first
+     */
+    private List<Map.Entry<Integer, Double>> search(long[] groupOrder, int[] groupTerms, int[] groupIndexes, int k,
+                                                    long maxPostings, Accumulators accumulators) {
+        long visited = 0;
+        for (long entry : groupOrder) {
+            if (visited >= maxPostings) {
+                break;
+            }
+            int termId = groupTerms[(int) entry];
+            int group = groupIndexes[(int) entry] * GROUP_STRIDE;
+            int[] termGroups = groups[termId];
+            byte[] bytes = docIds[termId];
+            int impact = termGroups[group + IMPACT];
+            int count = (int) Math.min(termGroups[group + GROUP_STRIDE + START] - termGroups[group + START],
+                maxPostings - visited);
+            int offset = termGroups[group + OFFSET];
+            int docId = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[offset++];
+                    gap |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                docId += gap;
+                accumulators.add(docId, impact);
+            }
+            visited += count;
+        }
+
+        TopKCollector collector = new TopKCollector(Math.min(k, Math.max(1, accumulators.size())));
+        accumulators.collect(collector, scale);
+        return collector.toEntries();
+    }
+
+    /**
+     * Integer scores of the documents of the index, with the list of the documents reached by a query so that
+     * clearing them costs as much as the query did.
+     */
+    private static final class Accumulators {
+        private final int[] scores;
+        private int[] touched = new int[16];
+        private int size;
+
+        /**
+         * @param docCount number of document ids
+         */
+        Accumulators(int docCount) {
+            scores = new int[docCount];
+        }
+
+        /**
+         * @return number of documents reached
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * @param docId document id
+         * @param impact impact to add to the score of the document
+         */
+        void add(int docId, int impact) {
+            if (scores[docId] == 0) {
+                if (size == touched.length) {
+                    touched = Arrays.copyOf(touched, size * 2);
+                }
+                touched[size++] = docId;
+            }
+            scores[docId] += impact;
+        }
+
+        /**
+         * @param collector receives every document reached with its score
+         * @param scale score of an impact of 1
+         */
+        void collect(TopKCollector collector, double scale) {
+            for (int i = 0; i < size; i++) {
+                collector.collect(touched[i], scores[touched[i]] * scale);
+            }
+        }
+
+        /**
+         * Reset the scores of the documents reached
+         */
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                scores[touched[i]] = 0;
+            }
+            size = 0;
+        }
+    }
+}
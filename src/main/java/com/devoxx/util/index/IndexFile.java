@@ -0,0 +1,451 @@
+package com.devoxx.util.index;
+
+import com.devoxx.util.Language;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Versioned binary file holding an index snapshot, opened through memory-mapped buffers.
+ * <p>
+ * The file starts with a header (magic number, format version, next document id, stemmer language) followed
+ * by a table locating every segment with the CRC32C checksum of its bytes, the segments themselves, and a footer
+ * holding a CRC32C checksum of the header and the table. All values are little-endian and every array starts on an
+ * 8 byte boundary.
+ * <p>
+ * Opening a file only verifies the checksum of the header and the table, so it does not read the whole file.
+ * The checksums of the segments are verified on demand by {@link #verify()}.
+ * <p>
+ * When the file is opened, only the deleted documents of every segment are read onto the heap. The term
+ * dictionary, the per-document and per-term arrays, the encoded postings and the forward index stay in the mapped
+ * file: they are paged in by the operating system on demand and the page cache is shared between processes
+ * opening the same file, so an opened index needs little heap whatever its size. Every segment is mapped
+ * separately and must be smaller than 2 GB.
+ */
+public final class IndexFile {
+
+    private static final int MAGIC = 0x424D3235; // "BM25"
+    private static final int VERSION = 6;
+    private static final int FOOTER_LENGTH = 16;
+    // Start, length and checksum of every segment
+    private static final int SEGMENT_ENTRY_LONGS = 3;
+
+    private final IndexSnapshot snapshot;
+    private final int nextDocId;
+    private final Language language;
+    // Mapped bytes and expected checksum of every segment, for verify()
+    private final List<ByteBuffer> segmentBuffers;
+    private final long[] segmentChecksums;
+
+    private IndexFile(IndexSnapshot snapshot,
+                      int nextDocId,
+                      Language language,
+                      List<ByteBuffer> segmentBuffers,
+                      long[] segmentChecksums) {
+        this.snapshot = snapshot;
+        this.nextDocId = nextDocId;
+        this.language = language;
+        this.segmentBuffers = segmentBuffers;
+        this.segmentChecksums = segmentChecksums;
+    }
+
+    /**
+     * @return the stored index snapshot
+     */
+    public IndexSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return id to assign to the next added document
+     */
+    public int nextDocId() {
+        return nextDocId;
+    }
+
+    /**
+     * @return language of the stemmer the index was built with
+     */
+    public Language language() {
+        return language;
+    }
+
+    /**
+     * Verify the checksum of every segment, reading the whole file
+     * @throws IOException when a segment is corrupted
+     */
+    public void verify() throws IOException {
+        for (int i = 0; i < segmentBuffers.size(); i++) {
+            CRC32C crc = new CRC32C();
+            crc.update(segmentBuffers.get(i).duplicate());
+            if (crc.getValue() != segmentChecksums[i]) {
+                throw new IOException("Checksum mismatch, segment " + i + " of the index file is corrupted.");
+            }
+        }
+    }
+
+    /**
+     * Write an index snapshot. The file is written next to the target and moved in place once complete,
+     * so that a crash never leaves a partial file behind.
+     * @param file file to write, replaced if it exists
+     * @param snapshot index snapshot
+     * @param nextDocId id to assign to the next added document
+     * @param language language of the stemmer the index was built with
+     * @throws IOException when the file cannot be written
+     */
+    public static void write(Path file, IndexSnapshot snapshot, int nextDocId, Language language) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+                List<Segment> segments = snapshot.segments();
+                Output output = new Output(channel);
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(nextDocId);
+                output.writeInt(segments.size());
+                output.writeBytes(language.name().getBytes(StandardCharsets.UTF_8));
+                output.align();
+                long segmentTable = output.position();
+                for (int i = 0; i < segments.size() * SEGMENT_ENTRY_LONGS; i++) {
+                    output.writeLong(0);
+                }
+                long segmentTableEnd = output.position();
+
+                long[] segmentEntries = new long[segments.size() * SEGMENT_ENTRY_LONGS];
+                for (int i = 0; i < segments.size(); i++) {
+                    long segmentStart = output.position();
+                    writeSegment(output, segments.get(i));
+                    segmentEntries[SEGMENT_ENTRY_LONGS * i] = segmentStart;
+                    segmentEntries[SEGMENT_ENTRY_LONGS * i + 1] = output.position() - segmentStart;
+                }
+                output.flush();
+                for (int i = 0; i < segments.size(); i++) {
+                    segmentEntries[SEGMENT_ENTRY_LONGS * i + 2] = checksum(channel,
+                        segmentEntries[SEGMENT_ENTRY_LONGS * i], segmentEntries[SEGMENT_ENTRY_LONGS * i + 1]);
+                }
+
+                ByteBuffer table = ByteBuffer.allocate(segmentEntries.length * Long.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                table.asLongBuffer().put(segmentEntries);
+                channel.write(table, segmentTable);
+
+                long length = output.position();
+                ByteBuffer footer = ByteBuffer.allocate(FOOTER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+                footer.putLong(checksum(channel, 0, segmentTableEnd)).putInt(MAGIC).putInt(VERSION).flip();
+                channel.write(footer, length);
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Open an index file, verifying the checksum of its header and segment table. The segments are mapped
+     * without being read, see {@link #verify()} to verify them as well.
+     * @param file file written by {@link #write(Path, IndexSnapshot, int, Language)}
+     * @return the content of the file
+     * @throws IOException when the file cannot be read, is not an index file or is corrupted
+     */
+    public static IndexFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size() - FOOTER_LENGTH;
+            if (length < 16) {
+                throw new IOException("Not a BM25 index file: " + file);
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(footer, length);
+            footer.flip();
+            long expectedChecksum = footer.getLong();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Not a BM25 index file: " + file);
+            }
+
+            ByteBuffer header = map(channel, 0, Math.min(length, 1 << 20));
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a BM25 index file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported index format version " + version + ", expected " + VERSION);
+            }
+            int nextDocId = header.getInt();
+            int segmentCount = header.getInt();
+            int languageLength = header.getInt();
+            if (languageLength < 0 || languageLength > header.remaining()) {
+                throw new IOException("Checksum mismatch, the index file is corrupted: " + file);
+            }
+            byte[] languageName = new byte[languageLength];
+            header.get(languageName);
+            align(header);
+            long segmentTableLength = (long) segmentCount * SEGMENT_ENTRY_LONGS * Long.BYTES;
+            if (segmentCount < 0 || header.position() + segmentTableLength > length) {
+                throw new IOException("Checksum mismatch, the index file is corrupted: " + file);
+            }
+            if (checksum(channel, 0, header.position() + segmentTableLength) != expectedChecksum) {
+                throw new IOException("Checksum mismatch, the index file is corrupted: " + file);
+            }
+            Language language = Language.valueOf(new String(languageName, StandardCharsets.UTF_8));
+
+            List<Segment> segments = new ArrayList<>(segmentCount);
+            List<ByteBuffer> segmentBuffers = new ArrayList<>(segmentCount);
+            long[] segmentChecksums = new long[segmentCount];
+            LongBuffer segmentTable = map(channel, header.position(), segmentTableLength).asLongBuffer();
+            for (int i = 0; i < segmentCount; i++) {
+                long segmentStart = segmentTable.get(SEGMENT_ENTRY_LONGS * i);
+                long segmentLength = segmentTable.get(SEGMENT_ENTRY_LONGS * i + 1);
+                segmentChecksums[i] = segmentTable.get(SEGMENT_ENTRY_LONGS * i + 2);
+                if (segmentLength > Integer.MAX_VALUE) {
+                    throw new IOException("Segment " + i + " is larger than 2 GB and cannot be mapped.");
+                }
+                ByteBuffer segmentBuffer = map(channel, segmentStart, segmentLength);
+                segmentBuffers.add(segmentBuffer.duplicate());
+                segments.add(readSegment(segmentBuffer));
+            }
+            return new IndexFile(new IndexSnapshot(segments), nextDocId, language, segmentBuffers, segmentChecksums);
+        }
+    }
+
+    private static void writeSegment(Output output, Segment segment) throws IOException {
+        InvertedIndex index = segment.index();
+        TermDictionary dictionary = index.terms();
+        IntBuffer docTermIds = index.docTermIds();
+        IntBuffer skipData = index.skipData();
+        LongBuffer packedPostings = index.packedPostings();
+        IntBuffer positionSkipData = index.positionSkipData();
+        LongBuffer packedPositions = index.packedPositions();
+        IntBuffer termTable = dictionary.table();
+        ByteBuffer termBytes = dictionary.termBytes();
+        long[] deletedDocs = segment.deletedDocs().toLongArray();
+        output.writeInt(index.docCount());
+        output.writeInt(dictionary.size());
+        output.writeInt(docTermIds.remaining());
+        output.writeInt(skipData.remaining());
+        output.writeInt(packedPostings.remaining());
+        output.writeInt(deletedDocs.length);
+        output.writeInt(termTable.remaining());
+        output.writeInt(termBytes.remaining());
+        // -1 for a segment without positions
+        output.writeInt(positionSkipData == null ? -1 : positionSkipData.remaining());
+        output.writeInt(packedPositions == null ? 0 : packedPositions.remaining());
+
+        output.writeInts(index.docIds());
+        output.writeInts(index.docLengths());
+        output.writeInts(index.docTermStarts());
+        output.writeInts(index.docFrequencies());
+        output.writeInts(index.postingSizes());
+        output.writeInts(index.firstBlocks());
+        output.writeInts(docTermIds);
+        output.writeInts(skipData);
+        output.writeInts(termTable);
+        output.writeInts(dictionary.hashes());
+        output.writeInts(dictionary.termStarts());
+        output.writeInts(dictionary.sortedTermIds());
+        output.writeLongs(LongBuffer.wrap(deletedDocs));
+        output.writeLongs(packedPostings);
+        if (positionSkipData != null) {
+            output.writeInts(positionSkipData);
+            output.writeLongs(packedPositions);
+        }
+        output.writeBytes(termBytes);
+    }
+
+    private static Segment readSegment(ByteBuffer buffer) {
+        int docCount = buffer.getInt();
+        int termCount = buffer.getInt();
+        int docTermCount = buffer.getInt();
+        int skipDataLength = buffer.getInt();
+        int packedLength = buffer.getInt();
+        int deletedLength = buffer.getInt();
+        int termTableLength = buffer.getInt();
+        int termBytesLength = buffer.getInt();
+        int positionSkipDataLength = buffer.getInt();
+        int packedPositionsLength = buffer.getInt();
+
+        IntBuffer docIds = ints(buffer, docCount);
+        IntBuffer docLengths = ints(buffer, docCount);
+        IntBuffer docTermStarts = ints(buffer, docCount + 1);
+        IntBuffer docFrequencies = ints(buffer, termCount);
+        IntBuffer postingSizes = ints(buffer, termCount);
+        IntBuffer firstBlocks = ints(buffer, termCount);
+        IntBuffer docTermIds = ints(buffer, docTermCount);
+        IntBuffer skipData = ints(buffer, skipDataLength);
+        IntBuffer termTable = ints(buffer, termTableLength);
+        IntBuffer termHashes = ints(buffer, termCount);
+        IntBuffer termStarts = ints(buffer, termCount + 1);
+        IntBuffer sortedTermIds = ints(buffer, termCount);
+        long[] deletedDocs = new long[deletedLength];
+        slice(buffer, deletedLength * Long.BYTES).asLongBuffer().get(deletedDocs);
+        LongBuffer packedPostings = slice(buffer, packedLength * Long.BYTES).asLongBuffer();
+        IntBuffer positionSkipData = null;
+        LongBuffer packedPositions = null;
+        if (positionSkipDataLength >= 0) {
+            positionSkipData = ints(buffer, positionSkipDataLength);
+            packedPositions = slice(buffer, packedPositionsLength * Long.BYTES).asLongBuffer();
+        }
+        ByteBuffer termBytes = slice(buffer, termBytesLength);
+        TermDictionary dictionary = new TermDictionary(termTable, termHashes, termStarts, termBytes, sortedTermIds);
+
+        InvertedIndex index = new InvertedIndex(dictionary,
+            docFrequencies,
+            postingSizes,
+            firstBlocks,
+            skipData,
+            packedPostings,
+            positionSkipData,
+            packedPositions,
+            docIds,
+            docLengths,
+            docTermStarts,
+            docTermIds);
+        return new Segment(index, BitSet.valueOf(deletedDocs));
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * @param buffer buffer positioned on an array, moved to the next 8 byte boundary after it
+     * @param length length of the array in bytes
+     * @return little-endian view of the array
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(buffer.position() + length);
+        align(buffer);
+        return slice;
+    }
+
+    private static IntBuffer ints(ByteBuffer buffer, int count) {
+        return slice(buffer, count * Integer.BYTES).asIntBuffer();
+    }
+
+    private static void align(ByteBuffer buffer) {
+        buffer.position((buffer.position() + 7) & ~7);
+    }
+
+    /**
+     * @param channel file
+     * @param start offset of the first byte to checksum
+     * @param length number of bytes to checksum
+     * @return CRC32C checksum of the bytes
+     */
+    private static long checksum(FileChannel channel, long start, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (long offset = 0; offset < length; offset += 1 << 30) {
+            crc.update(map(channel, start + offset, Math.min(1 << 30, length - offset)));
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Buffered little-endian writer keeping track of its position in the file.
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long flushed;
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void writeInt(int value) throws IOException {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensureRemaining(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        /**
+         * Write the remaining values of a buffer, padded to the next 8 byte boundary
+         */
+        void writeInts(IntBuffer values) throws IOException {
+            for (int i = values.position(); i < values.limit(); i++) {
+                writeInt(values.get(i));
+            }
+            align();
+        }
+
+        /**
+         * Write the remaining values of a buffer, padded to the next 8 byte boundary
+         */
+        void writeLongs(LongBuffer values) throws IOException {
+            for (int i = values.position(); i < values.limit(); i++) {
+                writeLong(values.get(i));
+            }
+            align();
+        }
+
+        /**
+         * Write the remaining bytes of a buffer, padded to the next 8 byte boundary
+         */
+        void writeBytes(ByteBuffer bytes) throws IOException {
+            for (int i = bytes.position(); i < bytes.limit(); i++) {
+                ensureRemaining(1);
+                buffer.put(bytes.get(i));
+            }
+            align();
+        }
+
+        /**
+         * Write a length-prefixed byte array
+         */
+        void writeBytes(byte[] bytes) throws IOException {
+            writeInt(bytes.length);
+            for (int written = 0; written < bytes.length; ) {
+                ensureRemaining(1);
+                int count = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, count);
+                written += count;
+            }
+        }
+
+        void align() throws IOException {
+            while ((position() & 7) != 0) {
+                ensureRemaining(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer, flushed);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.devoxx.util.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Immutable point-in-time view of a segmented index with its collection statistics:
+ * the number and total length of the live documents, and the document frequency of every term.
+ * <p>
+ * Changes to the index produce a new snapshot, one generation after the one they were applied to; searches keep
+ * working on the snapshot they started with.
+ */
+public final class IndexSnapshot {
+
+    private final List<Segment> segments;
+    private final long docCount;
+    private final long totalLength;
+    private final int maxDocId;
+    private final long generation;
+
+    /**
+     * Create the first snapshot of an index
+     * @param segments segments of the index
+     */
+    public IndexSnapshot(List<Segment> segments) {
+        this(segments, 0);
+    }
+
+    /**
+     * Create a snapshot
+     * @param segments segments of the index
+     * @param generation number of changes since the first snapshot
+     */
+    private IndexSnapshot(List<Segment> segments, long generation) {
+        this.segments = List.copyOf(segments);
+        this.generation = generation;
+        long liveDocs = 0;
+        long liveLength = 0;
+        int maxId = -1;
+        for (Segment segment : segments) {
+            liveDocs += segment.liveDocCount();
+            liveLength += segment.liveLength();
+            maxId = Math.max(maxId, segment.index().maxDocId());
+        }
+        this.docCount = liveDocs;
+        this.totalLength = liveLength;
+        this.maxDocId = maxId;
+    }
+
+    /**
+     * @return segments of the index
+     */
+    public List<Segment> segments() {
+        return segments;
+    }
+
+    /**
+     * @return number of changes made to the index since its first snapshot, a later snapshot of the same index has
+     * a greater generation
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * @return number of live documents
+     */
+    public long docCount() {
+        return docCount;
+    }
+
+    /**
+     * @return total length of the live documents
+     */
+    public long totalLength() {
+        return totalLength;
+    }
+
+    /**
+     * @return average length of the live documents, 0 when there are none
+     */
+    public double avgDocLength() {
+        return docCount == 0 ? 0 : (double) totalLength / docCount;
+    }
+
+    /**
+     * @return highest document id of any segment, including deleted documents
+     */
+    public int maxDocId() {
+        return maxDocId;
+    }
+
+    /**
+     * @param term analyzed term
+     * @return number of live documents containing the term
+     */
+    public int docFrequency(String term) {
+        int docFrequency = 0;
+        for (Segment segment : segments) {
+            docFrequency += segment.docFrequency(term);
+        }
+        return docFrequency;
+    }
+
+    /**
+     * @return ids of the live documents
+     */
+    public BitSet liveDocs() {
+        BitSet liveDocs = new BitSet(maxDocId + 1);
+        for (Segment segment : segments) {
+            InvertedIndex index = segment.index();
+            for (int localDoc = 0; localDoc < index.docCount(); localDoc++) {
+                if (!segment.isDeleted(localDoc)) {
+                    liveDocs.set(index.docId(localDoc));
+                }
+            }
+        }
+        return liveDocs;
+    }
+
+    /**
+     * @param segment segment to add
+     * @return new snapshot including the segment
+     */
+    public IndexSnapshot withSegment(Segment segment) {
+        List<Segment> newSegments = new ArrayList<>(segments);
+        newSegments.add(segment);
+        return new IndexSnapshot(newSegments, generation + 1);
+    }
+
+    /**
+     * @param docId global document id
+     * @return new snapshot in which the document is deleted, null when there is no live document with this id
+     */
+    public IndexSnapshot delete(int docId) {
+        for (int i = 0; i < segments.size(); i++) {
+            int localDoc = segments.get(i).liveLocalDoc(docId);
+            if (localDoc >= 0) {
+                List<Segment> newSegments = new ArrayList<>(segments);
+                newSegments.set(i, segments.get(i).delete(localDoc));
+                return new IndexSnapshot(newSegments, generation + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replace merged segments by the result of their merge. Documents deleted from the merged segments
+     * after the merge started are deleted from the merged segment as well.
+     * @param mergedSegments segments as they were when the merge started
+     * @param merged inverted index of the live documents of the merged segments
+     * @return new snapshot
+     */
+    public IndexSnapshot replace(List<Segment> mergedSegments, InvertedIndex merged) {
+        Segment result = new Segment(merged);
+        List<Segment> newSegments = new ArrayList<>(segments.size());
+        int position = -1;
+        for (Segment current : segments) {
+            Segment original = mergedSegments.stream()
+                .filter(segment -> segment.index() == current.index())
+                .findFirst()
+                .orElse(null);
+            if (original == null) {
+                newSegments.add(current);
+                continue;
+            }
+            if (position < 0) {
+                position = newSegments.size();
+            }
+            BitSet deletedSinceMerge = current.deletedDocs();
+            deletedSinceMerge.andNot(original.deletedDocs());
+            for (int localDoc = deletedSinceMerge.nextSetBit(0); localDoc >= 0; localDoc = deletedSinceMerge.nextSetBit(localDoc + 1)) {
+                result = result.delete(merged.localDoc(current.index().docId(localDoc)));
+            }
+        }
+        if (merged.docCount() > 0) {
+            newSegments.add(Math.max(position, 0), result);
+        }
+        return new IndexSnapshot(newSegments, generation + 1);
+    }
+}
@@ -0,0 +1,636 @@
+package com.devoxx.util.index;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable inverted index of a set of documents, mapping every term to the posting list of the documents
+ * containing it.
+ * <p>
+ * Terms are numbered by a {@link TermDictionary}, posting lists and document frequencies are kept in arrays
+ * indexed by term id. Documents are numbered locally from 0 in ascending order of their global document id,
+ * so posting lists of local ids are also sorted by global id. Document lengths are kept in an array indexed by
+ * local id, and the term ids of every document are kept in a forward index so that statistics can be updated
+ * when a document is deleted. All arrays are int buffers, which are either on the heap or mapped from an
+ * {@link IndexFile}.
+ * <p>
+ * An index built with positions also stores the positions of every term in every document, see
+ * {@link PostingsCursor#position(int)}. The position of an occurrence is the number of term occurrences before
+ * it in the document.
+ */
+public final class InvertedIndex {
+
+    private final TermDictionary dictionary;
+    private final IntBuffer docFrequencies;
+    private final IntBuffer postingSizes;
+    private final IntBuffer firstBlocks;
+    private final IntBuffer skipData;
+    private final LongBuffer packedPostings;
+    private final IntBuffer positionSkipData;
+    private final LongBuffer packedPositions;
+    private final IntBuffer docIds;
+    private final IntBuffer docLengths;
+    private final long totalLength;
+    private final IntBuffer docTermStarts;
+    private final IntBuffer docTermIds;
+
+    /**
+     * Create an inverted index from its parts, see {@link Builder}
+     * @param dictionary terms of the index
+     * @param docFrequencies number of documents containing every term, indexed by term id
+     * @param postingSizes number of postings of every term, indexed by term id
+     * @param firstBlocks index of the first block of the posting list of every term in the skip data
+     * @param skipData skip data of every posting list
+     * @param packedPostings packed postings of every posting list
+     * @param positionSkipData skip data of the positions of every posting list, null when there are no positions
+     * @param packedPositions packed positions of every posting list, null when there are no positions
+     * @param docIds global id of every document, indexed by local id
+     * @param docLengths length of every document, indexed by local id
+     * @param docTermStarts start of the term ids of every document in the forward index, followed by its length
+     * @param docTermIds forward index: the term ids of every document
+     */
+    InvertedIndex(TermDictionary dictionary,
+                  IntBuffer docFrequencies,
+                  IntBuffer postingSizes,
+                  IntBuffer firstBlocks,
+                  IntBuffer skipData,
+                  LongBuffer packedPostings,
+                  IntBuffer positionSkipData,
+                  LongBuffer packedPositions,
+                  IntBuffer docIds,
+                  IntBuffer docLengths,
+                  IntBuffer docTermStarts,
+                  IntBuffer docTermIds) {
+        this.dictionary = dictionary;
+        this.docFrequencies = docFrequencies;
+        this.postingSizes = postingSizes;
+        this.firstBlocks = firstBlocks;
+        this.skipData = skipData;
+        this.packedPostings = packedPostings;
+        this.positionSkipData = positionSkipData;
+        this.packedPositions = packedPositions;
+        this.docIds = docIds;
+        this.docLengths = docLengths;
+        long totalLength = 0;
+        for (int localDoc = 0; localDoc < docLengths.limit(); localDoc++) {
+            totalLength += docLengths.get(localDoc);
+        }
+        this.totalLength = totalLength;
+        this.docTermStarts = docTermStarts;
+        this.docTermIds = docTermIds;
+    }
+
+    /**
+     * @param term analyzed term
+     * @return posting list of the term or null when no document contains it
+     */
+    public PostingList postings(String term) {
+        int termId = dictionary.id(term);
+        return termId < 0 ? null : postings(termId);
+    }
+
+    /**
+     * @param termId term id
+     * @return posting list of the term
+     */
+    public PostingList postings(int termId) {
+        int size = postingSizes.get(termId);
+        return size == 0 ? null : new PostingList(skipData, packedPostings, positionSkipData, packedPositions,
+            firstBlocks.get(termId), size);
+    }
+
+    /**
+     * @return true when the positions of every term in every document are stored
+     */
+    public boolean hasPositions() {
+        return packedPositions != null;
+    }
+
+    /**
+     * @return dictionary of every term of the index
+     */
+    public TermDictionary terms() {
+        return dictionary;
+    }
+
+    /**
+     * @param term analyzed term
+     * @return number of documents containing the term
+     */
+    public int docFrequency(String term) {
+        int termId = dictionary.id(term);
+        return termId < 0 ? 0 : docFrequencies.get(termId);
+    }
+
+    /**
+     * @param termId term id
+     * @return number of documents containing the term
+     */
+    public int docFrequency(int termId) {
+        return docFrequencies.get(termId);
+    }
+
+    /**
+     * @param localDoc local document id
+     * @return length of the document in tokens
+     */
+    public int docLength(int localDoc) {
+        return docLengths.get(localDoc);
+    }
+
+    /**
+     * @return sum of the lengths of all documents
+     */
+    public long totalLength() {
+        return totalLength;
+    }
+
+    /**
+     * @return number of documents in the index
+     */
+    public int docCount() {
+        return docLengths.limit();
+    }
+
+    /**
+     * @param localDoc local document id
+     * @return global id of the document
+     */
+    public int docId(int localDoc) {
+        return docIds.get(localDoc);
+    }
+
+    /**
+     * @param docId global document id
+     * @return local id of the document or -1 when the index does not contain it
+     */
+    public int localDoc(int docId) {
+        int localDoc = ceilingLocalDoc(docId);
+        return localDoc < docIds.limit() && docIds.get(localDoc) == docId ? localDoc : -1;
+    }
+
+    /**
+     * @param docId global document id
+     * @return local id of the first document whose global id is greater than or equal to docId, the number of
+     * documents when there is none
+     */
+    public int ceilingLocalDoc(int docId) {
+        int low = 0;
+        int high = docIds.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (docIds.get(mid) < docId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return highest global document id, -1 when the index is empty
+     */
+    public int maxDocId() {
+        return docIds.limit() == 0 ? -1 : docIds.get(docIds.limit() - 1);
+    }
+
+    /**
+     * @return number of postings, one per distinct term of every document
+     */
+    public long postingCount() {
+        return docTermIds.limit();
+    }
+
+    /**
+     * @return size of the index data in bytes, on the heap or memory-mapped
+     */
+    public long sizeInBytes() {
+        long ints = docFrequencies.limit() + postingSizes.limit() + firstBlocks.limit() + skipData.limit()
+            + docIds.limit() + docLengths.limit() + docTermStarts.limit() + docTermIds.limit();
+        if (hasPositions()) {
+            ints += positionSkipData.limit() + packedPositions.limit() * 2L;
+        }
+        return ints * Integer.BYTES + (long) packedPostings.limit() * Long.BYTES + dictionary.sizeInBytes();
+    }
+
+    /**
+     * @param localDoc local document id
+     * @return ids of the distinct terms of the document
+     */
+    public int[] docTermIds(int localDoc) {
+        int start = docTermStarts.get(localDoc);
+        int[] termIds = new int[docTermStarts.get(localDoc + 1) - start];
+        docTermIds.get(start, termIds);
+        return termIds;
+    }
+
+    /**
+     * @param localDoc local document id
+     * @return distinct terms of the document
+     */
+    public Collection<String> docTerms(int localDoc) {
+        return Arrays.stream(docTermIds(localDoc)).mapToObj(dictionary::term).toList();
+    }
+
+    // Storage of the index, written and mapped by IndexFile
+
+    IntBuffer docFrequencies() {
+        return docFrequencies.duplicate();
+    }
+
+    IntBuffer postingSizes() {
+        return postingSizes.duplicate();
+    }
+
+    IntBuffer firstBlocks() {
+        return firstBlocks.duplicate();
+    }
+
+    IntBuffer skipData() {
+        return skipData.duplicate();
+    }
+
+    LongBuffer packedPostings() {
+        return packedPostings.duplicate();
+    }
+
+    IntBuffer positionSkipData() {
+        return positionSkipData == null ? null : positionSkipData.duplicate();
+    }
+
+    LongBuffer packedPositions() {
+        return packedPositions == null ? null : packedPositions.duplicate();
+    }
+
+    IntBuffer docIds() {
+        return docIds.duplicate();
+    }
+
+    IntBuffer docLengths() {
+        return docLengths.duplicate();
+    }
+
+    IntBuffer docTermStarts() {
+        return docTermStarts.duplicate();
+    }
+
+    IntBuffer docTermIds() {
+        return docTermIds.duplicate();
+    }
+
+    /**
+     * Concatenate inverted indexes whose documents follow each other, the result has positions when all parts have
+     * @param parts inverted indexes, every document id of a part must be lower than the ones of the next part
+     * @return inverted index of the documents of all parts
+     */
+    public static InvertedIndex concatenate(List<InvertedIndex> parts) {
+        boolean positions = parts.stream().allMatch(InvertedIndex::hasPositions);
+        int[] termPositions = new int[16];
+        int docCount = 0;
+        int docTermCount = 0;
+        int previousMaxDocId = -1;
+        for (InvertedIndex part : parts) {
+            if (part.docCount() > 0 && part.docId(0) <= previousMaxDocId) {
+                throw new IllegalArgumentException("Parts must be in ascending document id order.");
+            }
+            previousMaxDocId = Math.max(previousMaxDocId, part.maxDocId());
+            docCount += part.docCount();
+            docTermCount += part.docTermIds.limit();
+        }
+
+        TermDictionary.Builder dictionary = new TermDictionary.Builder();
+        int[] docIds = new int[docCount];
+        int[] docLengths = new int[docCount];
+        int[] docTermStarts = new int[docCount + 1];
+        int[] docTermIds = new int[docTermCount];
+        int[] docFrequencies = new int[16];
+        List<PostingList.Builder> postings = new ArrayList<>();
+        int docOffset = 0;
+        int docTermOffset = 0;
+        for (InvertedIndex part : parts) {
+            // Map the term ids of the part to the ids of the concatenated dictionary
+            int[] termIds = new int[part.dictionary.size()];
+            for (int partTermId = 0; partTermId < termIds.length; partTermId++) {
+                int termId = dictionary.add(part.dictionary.term(partTermId));
+                termIds[partTermId] = termId;
+                if (termId == postings.size()) {
+                    postings.add(null);
+                }
+                if (termId == docFrequencies.length) {
+                    docFrequencies = Arrays.copyOf(docFrequencies, termId * 2);
+                }
+                docFrequencies[termId] += part.docFrequencies.get(partTermId);
+                PostingList postingList = part.postings(partTermId);
+                if (postingList != null) {
+                    if (postings.get(termId) == null) {
+                        postings.set(termId, new PostingList.Builder());
+                    }
+                    PostingList.Builder builder = postings.get(termId);
+                    PostingsCursor cursor = postingList.cursor();
+                    for (int localDoc = cursor.docId(); localDoc != PostingsCursor.NO_MORE_DOCS; localDoc = cursor.next()) {
+                        int frequency = cursor.frequency();
+                        if (positions) {
+                            if (frequency > termPositions.length) {
+                                termPositions = new int[Math.max(frequency, termPositions.length * 2)];
+                            }
+                            for (int i = 0; i < frequency; i++) {
+                                termPositions[i] = cursor.position(i);
+                            }
+                            builder.add(localDoc + docOffset, frequency, termPositions, 0);
+                        } else {
+                            builder.add(localDoc + docOffset, frequency);
+                        }
+                    }
+                }
+            }
+            int partDocCount = part.docCount();
+            part.docIds.get(0, docIds, docOffset, partDocCount);
+            part.docLengths.get(0, docLengths, docOffset, partDocCount);
+            for (int localDoc = 0; localDoc < partDocCount; localDoc++) {
+                docTermStarts[docOffset + localDoc + 1] = docTermOffset + part.docTermStarts.get(localDoc + 1);
+            }
+            for (int i = 0; i < part.docTermIds.limit(); i++) {
+                docTermIds[docTermOffset + i] = termIds[part.docTermIds.get(i)];
+            }
+            docOffset += partDocCount;
+            docTermOffset += part.docTermIds.limit();
+        }
+        return freeze(dictionary, docFrequencies, postings, positions, docIds, docLengths, docTermStarts, docTermIds);
+    }
+
+    /**
+     * Encode the posting lists and create the inverted index
+     * @param dictionary terms of the index
+     * @param docFrequencies number of documents containing every term, indexed by term id, may be longer
+     * @param postings growable posting lists indexed by term id, null for terms without postings
+     * @param positions true when the posting lists have positions
+     * @param docIds global id of every document
+     * @param docLengths length of every document
+     * @param docTermStarts start of the term ids of every document in the forward index, followed by its length
+     * @param docTermIds forward index: the term ids of every document
+     * @return inverted index
+     */
+    private static InvertedIndex freeze(TermDictionary.Builder dictionary,
+                                        int[] docFrequencies,
+                                        List<PostingList.Builder> postings,
+                                        boolean positions,
+                                        int[] docIds,
+                                        int[] docLengths,
+                                        int[] docTermStarts,
+                                        int[] docTermIds) {
+        int termCount = dictionary.size();
+        int[] postingSizes = new int[termCount];
+        int[] firstBlocks = new int[termCount];
+        PostingList.Encoder encoder = new PostingList.Encoder();
+        for (int termId = 0; termId < termCount; termId++) {
+            PostingList.Builder builder = postings.get(termId);
+            if (builder != null) {
+                postingSizes[termId] = builder.size();
+                firstBlocks[termId] = builder.encode(encoder, docLengths);
+            }
+        }
+        return new InvertedIndex(dictionary.build(),
+            IntBuffer.wrap(Arrays.copyOf(docFrequencies, termCount)),
+            IntBuffer.wrap(postingSizes),
+            IntBuffer.wrap(firstBlocks),
+            encoder.skipData(),
+            encoder.packed(),
+            positions ? encoder.positionSkipData() : null,
+            positions ? encoder.packedPositions() : null,
+            IntBuffer.wrap(docIds),
+            IntBuffer.wrap(docLengths),
+            IntBuffer.wrap(docTermStarts),
+            IntBuffer.wrap(docTermIds));
+    }
+
+    /**
+     * Builds an inverted index one document at a time, documents must be added in ascending global id order.
+     */
+    public static final class Builder {
+        private final boolean positions;
+        private final TermDictionary.Builder dictionary = new TermDictionary.Builder();
+        private final List<PostingList.Builder> postings = new ArrayList<>();
+        private int[] docFrequencies = new int[16];
+        private int[] docIds = new int[16];
+        private int[] docLengths = new int[16];
+        private int[] docTermStarts = new int[17];
+        private int[] docTermIds = new int[64];
+        private int docCount;
+        private int docTermCount;
+        private int[] termFrequencies = new int[16]; // Frequency of every term in the current document
+        // Term id and position of every occurrence of the current document, when positions are indexed
+        private int[] occurrenceTermIds = new int[64];
+        private int[] occurrencePositions = new int[64];
+        private int[] groupedPositions = new int[64];
+        private int[] termPositionStarts = new int[16];
+        private int occurrenceCount;
+        private boolean documentOpen;
+        private long postingCount;
+        private long positionCount;
+        private long termBytes;
+
+        /**
+         * Create a builder of an index without positions
+         */
+        public Builder() {
+            this(false);
+        }
+
+        /**
+         * @param positions true to store the positions of every term in every document
+         */
+        public Builder(boolean positions) {
+            this.positions = positions;
+        }
+
+        /**
+         * Start the next document, its terms are then added with {@link #addTerm(String)}
+         * @param docId global document id, greater than any previously added id
+         */
+        public void startDocument(int docId) {
+            if (documentOpen) {
+                throw new IllegalStateException("The previous document has not been ended.");
+            }
+            if (docCount > 0 && docIds[docCount - 1] >= docId) {
+                throw new IllegalArgumentException("Documents must be added in ascending id order.");
+            }
+            if (docCount == docIds.length) {
+                docIds = Arrays.copyOf(docIds, docCount * 2);
+                docLengths = Arrays.copyOf(docLengths, docCount * 2);
+                docTermStarts = Arrays.copyOf(docTermStarts, docCount * 2 + 1);
+            }
+            docIds[docCount] = docId;
+            docLengths[docCount] = 0;
+            documentOpen = true;
+        }
+
+        /**
+         * Add an occurrence of a term to the current document
+         * @param term analyzed term
+         */
+        public void addTerm(String term) {
+            int termId = termId(term);
+            addTerm(termId, 1);
+            if (positions) {
+                addPosition(termId, docLengths[docCount] - 1);
+            }
+        }
+
+        /**
+         * Add the occurrences of a term in the current posting of a cursor to the current document, with their
+         * positions when the index has positions
+         * @param termId id of the term in this builder, see {@link #termId(String)}
+         * @param cursor cursor positioned on a posting of the term
+         */
+        void addTerm(int termId, PostingsCursor cursor) {
+            int frequency = cursor.frequency();
+            addTerm(termId, frequency);
+            if (positions) {
+                for (int i = 0; i < frequency; i++) {
+                    addPosition(termId, cursor.position(i));
+                }
+            }
+        }
+
+        private void addPosition(int termId, int position) {
+            if (occurrenceCount == occurrenceTermIds.length) {
+                occurrenceTermIds = Arrays.copyOf(occurrenceTermIds, occurrenceCount * 2);
+                occurrencePositions = Arrays.copyOf(occurrencePositions, occurrenceCount * 2);
+            }
+            occurrenceTermIds[occurrenceCount] = termId;
+            occurrencePositions[occurrenceCount++] = position;
+        }
+
+        /**
+         * Add occurrences of a term to the current document
+         * @param termId id of the term in this builder, see {@link #termId(String)}
+         * @param frequency number of occurrences
+         */
+        void addTerm(int termId, int frequency) {
+            if (!documentOpen) {
+                throw new IllegalStateException("No document has been started.");
+            }
+            if (termFrequencies[termId] == 0) {
+                if (docTermCount == docTermIds.length) {
+                    docTermIds = Arrays.copyOf(docTermIds, docTermCount * 2);
+                }
+                docTermIds[docTermCount++] = termId;
+            }
+            termFrequencies[termId] += frequency;
+            docLengths[docCount] += frequency;
+        }
+
+        /**
+         * End the current document, its length is the number of added term occurrences
+         * @return local id assigned to the document
+         */
+        public int endDocument() {
+            if (!documentOpen) {
+                throw new IllegalStateException("No document has been started.");
+            }
+            int localDoc = docCount++;
+            if (positions) {
+                groupPositions(localDoc);
+            }
+            for (int i = docTermStarts[localDoc]; i < docTermCount; i++) {
+                int termId = docTermIds[i];
+                if (postings.get(termId) == null) {
+                    postings.set(termId, new PostingList.Builder());
+                }
+                if (positions) {
+                    postings.get(termId).add(localDoc, termFrequencies[termId], groupedPositions, termPositionStarts[termId]);
+                } else {
+                    postings.get(termId).add(localDoc, termFrequencies[termId]);
+                }
+                docFrequencies[termId]++;
+                termFrequencies[termId] = 0;
+            }
+            postingCount += docTermCount - docTermStarts[localDoc];
+            docTermStarts[localDoc + 1] = docTermCount;
+            documentOpen = false;
+            return localDoc;
+        }
+
+        /**
+         * Group the positions of the occurrences of the current document by term with a counting sort, the
+         * positions of a term start at its entry of termPositionStarts
+         * @param localDoc local id of the current document
+         */
+        private void groupPositions(int localDoc) {
+            int start = 0;
+            for (int i = docTermStarts[localDoc]; i < docTermCount; i++) {
+                int termId = docTermIds[i];
+                termPositionStarts[termId] = start;
+                start += termFrequencies[termId];
+            }
+            if (occurrenceCount > groupedPositions.length) {
+                groupedPositions = new int[Math.max(occurrenceCount, groupedPositions.length * 2)];
+            }
+            for (int i = 0; i < occurrenceCount; i++) {
+                groupedPositions[termPositionStarts[occurrenceTermIds[i]]++] = occurrencePositions[i];
+            }
+            for (int i = docTermStarts[localDoc]; i < docTermCount; i++) {
+                int termId = docTermIds[i];
+                termPositionStarts[termId] -= termFrequencies[termId];
+            }
+            positionCount += occurrenceCount;
+            occurrenceCount = 0;
+        }
+
+        /**
+         * @param term analyzed term
+         * @return id of the term in this builder, added to the dictionary when missing
+         */
+        int termId(String term) {
+            int termId = dictionary.add(term);
+            if (termId == postings.size()) {
+                postings.add(null);
+                termBytes += term.length();
+            }
+            if (termId == docFrequencies.length) {
+                docFrequencies = Arrays.copyOf(docFrequencies, termId * 2);
+                termFrequencies = Arrays.copyOf(termFrequencies, termId * 2);
+                termPositionStarts = Arrays.copyOf(termPositionStarts, termId * 2);
+            }
+            return termId;
+        }
+
+        /**
+         * @return number of documents added so far
+         */
+        public int docCount() {
+            return docCount;
+        }
+
+        /**
+         * @return rough estimate of the heap used by the builder, in bytes
+         */
+        public long estimatedBytes() {
+            // A posting takes two ints in growable arrays, a term a string, a posting list builder and table slots
+            return postingCount * 2 * Integer.BYTES * 3 / 2
+                + positionCount * Integer.BYTES * 3 / 2
+                + dictionary.size() * 120L + termBytes
+                + (long) docTermCount * Integer.BYTES
+                + (long) docCount * 3 * Integer.BYTES;
+        }
+
+        /**
+         * @return the inverted index of all added documents, the builder must not be used afterwards
+         */
+        public InvertedIndex build() {
+            return freeze(dictionary,
+                docFrequencies,
+                postings,
+                positions,
+                Arrays.copyOf(docIds, docCount),
+                Arrays.copyOf(docLengths, docCount),
+                Arrays.copyOf(docTermStarts, docCount + 1),
+                Arrays.copyOf(docTermIds, docTermCount));
+        }
+    }
+}
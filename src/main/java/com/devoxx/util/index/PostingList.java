@@ -0,0 +1,557 @@
+package com.devoxx.util.index;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Compressed posting list of a single term: the ids of the documents containing the term, in ascending order,
+ * together with the frequency of the term in each of these documents.
+ * <p>
+ * Postings are grouped in blocks of {@link #BLOCK_SIZE} documents. Within a block, document ids are stored as
+ * gaps from the previous document and frequencies minus one, each packed with the number of bits of the largest
+ * value of the block (frame of reference bit packing), so a block of consecutive documents with a frequency of 1
+ * takes no space at all. For every block the skip data keeps the last document id, the position of the packed
+ * values, the highest term frequency and the shortest document length, so that a cursor can jump over blocks
+ * and bound their scores without decoding them.
+ * <p>
+ * When the index has positions, the positions of the term in every document of a block are stored after each
+ * other, the first position of a document and then the gaps between positions minus one, packed with the number
+ * of bits of the largest value of the block in a separate array. They are only decoded for the blocks in which
+ * positions are read, see {@link PostingsCursor#position(int)}.
+ * <p>
+ * The skip data and packed postings of all posting lists of an index are stored together, on the heap or in a
+ * memory-mapped file; a posting list is a lightweight view of its part.
+ */
+public final class PostingList {
+
+    public static final int BLOCK_SIZE = 128;
+
+    // Skip data of a block, stored in a single array with this stride
+    private static final int LAST_DOC_ID = 0;
+    private static final int OFFSET = 1;
+    private static final int BITS = 2;
+    private static final int MAX_FREQUENCY = 3;
+    private static final int MIN_DOC_LENGTH = 4;
+    private static final int SKIP_STRIDE = 5;
+    // Skip data of the positions of a block, stored in a separate array with this stride
+    private static final int POSITIONS_OFFSET = 0;
+    private static final int POSITIONS_BITS = 1;
+    private static final int POSITIONS_STRIDE = 2;
+
+    private final IntBuffer skipData;
+    private final LongBuffer packed;
+    private final IntBuffer positionSkipData;
+    private final LongBuffer packedPositions;
+    private final int skipStart;
+    private final int positionSkipStart;
+    private final int size;
+
+    /**
+     * Create a view of a posting list encoded by an {@link Encoder}
+     * @param skipData skip data of every posting list of the index
+     * @param packed packed postings of every posting list of the index
+     * @param positionSkipData skip data of the positions of every posting list, null when there are no positions
+     * @param packedPositions packed positions of every posting list, null when there are no positions
+     * @param firstBlock index of the first block of the posting list in the skip data
+     * @param size number of postings
+     */
+    PostingList(IntBuffer skipData,
+                LongBuffer packed,
+                IntBuffer positionSkipData,
+                LongBuffer packedPositions,
+                int firstBlock,
+                int size) {
+        this.skipData = skipData;
+        this.packed = packed;
+        this.positionSkipData = positionSkipData;
+        this.packedPositions = packedPositions;
+        this.skipStart = firstBlock * SKIP_STRIDE;
+        this.positionSkipStart = firstBlock * POSITIONS_STRIDE;
+        this.size = size;
+    }
+
+    /**
+     * @return true when the positions of the term in every document are stored
+     */
+    public boolean hasPositions() {
+        return packedPositions != null;
+    }
+
+    /**
+     * @return number of documents containing the term
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Look up the term frequency of a document
+     * @param docId document id
+     * @return term frequency in the document, 0 when the document does not contain the term
+     */
+    public int frequencyOf(int docId) {
+        int low = blockOf(docId);
+        if (low < 0) {
+            return 0;
+        }
+        int skip = skipStart + low * SKIP_STRIDE;
+        int offset = skipData.get(skip + OFFSET);
+        int gapBits = skipData.get(skip + BITS) & 0xFF;
+        int count = blockSize(low);
+        int current = low == 0 ? -1 : blockLastDocId(low - 1);
+        for (int i = 0; i < count; i++) {
+            current += unpack(packed, offset, gapBits, i) + 1;
+            if (current >= docId) {
+                if (current > docId) {
+                    return 0;
+                }
+                int frequencyOffset = offset + wordsRequired(count, gapBits);
+                return unpack(packed, frequencyOffset, skipData.get(skip + BITS) >>> 8, i) + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Look up the positions of the term in a document, for merges
+     * @param docId document id
+     * @return positions of the term in the document in ascending order, empty when the document does not contain
+     * the term
+     */
+    int[] positionsOf(int docId) {
+        int block = blockOf(docId);
+        if (block < 0) {
+            return new int[0];
+        }
+        int[] docIds = new int[BLOCK_SIZE];
+        int[] frequencies = new int[BLOCK_SIZE];
+        decodeDocIds(block, docIds);
+        decodeFrequencies(block, frequencies);
+        int index = Arrays.binarySearch(docIds, 0, blockSize(block), docId);
+        if (index < 0) {
+            return new int[0];
+        }
+        int start = 0;
+        int total = 0;
+        for (int i = 0; i < blockSize(block); i++) {
+            if (i == index) {
+                start = total;
+            }
+            total += frequencies[i];
+        }
+        int[] positions = new int[total];
+        decodePositions(block, frequencies, positions);
+        return Arrays.copyOfRange(positions, start, start + frequencies[index]);
+    }
+
+    /**
+     * @param docId document id
+     * @return index of the only block that may contain the document, -1 when all documents are lower
+     */
+    private int blockOf(int docId) {
+        int low = 0;
+        int high = blockCount() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockLastDocId(mid) < docId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return size == 0 || blockLastDocId(low) < docId ? -1 : low;
+    }
+
+    /**
+     * @return number of blocks
+     */
+    public int blockCount() {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * @param block block index
+     * @return number of postings in the block
+     */
+    int blockSize(int block) {
+        return Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+    }
+
+    /**
+     * @param block block index
+     * @return last document id of the block
+     */
+    public int blockLastDocId(int block) {
+        return skipData.get(skipStart + block * SKIP_STRIDE + LAST_DOC_ID);
+    }
+
+    /**
+     * @param block block index
+     * @return highest term frequency of the block
+     */
+    public int blockMaxFrequency(int block) {
+        return skipData.get(skipStart + block * SKIP_STRIDE + MAX_FREQUENCY);
+    }
+
+    /**
+     * @param block block index
+     * @return shortest document length of the block
+     */
+    public int blockMinDocLength(int block) {
+        return skipData.get(skipStart + block * SKIP_STRIDE + MIN_DOC_LENGTH);
+    }
+
+    /**
+     * Decode the document ids of a block
+     * @param block block index
+     * @param docIds receives the document ids, at least {@link #BLOCK_SIZE} long
+     */
+    void decodeDocIds(int block, int[] docIds) {
+        int skip = skipStart + block * SKIP_STRIDE;
+        int count = blockSize(block);
+        unpack(packed, skipData.get(skip + OFFSET), skipData.get(skip + BITS) & 0xFF, count, docIds);
+        int docId = block == 0 ? -1 : blockLastDocId(block - 1);
+        for (int i = 0; i < count; i++) {
+            docId += docIds[i] + 1;
+            docIds[i] = docId;
+        }
+    }
+
+    /**
+     * Decode the term frequencies of a block
+     * @param block block index
+     * @param frequencies receives the term frequencies, at least {@link #BLOCK_SIZE} long
+     */
+    void decodeFrequencies(int block, int[] frequencies) {
+        int skip = skipStart + block * SKIP_STRIDE;
+        int count = blockSize(block);
+        int gapBits = skipData.get(skip + BITS) & 0xFF;
+        int offset = skipData.get(skip + OFFSET) + wordsRequired(count, gapBits);
+        unpack(packed, offset, skipData.get(skip + BITS) >>> 8, count, frequencies);
+        for (int i = 0; i < count; i++) {
+            frequencies[i]++;
+        }
+    }
+
+    /**
+     * Decode the positions of a block: the positions of the term in every document of the block in ascending
+     * order, one document after the other
+     * @param block block index
+     * @param frequencies term frequencies of the block, see {@link #decodeFrequencies(int, int[])}
+     * @param positions receives the positions, at least as long as the sum of the frequencies
+     */
+    void decodePositions(int block, int[] frequencies, int[] positions) {
+        int skip = positionSkipStart + block * POSITIONS_STRIDE;
+        int count = blockSize(block);
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            total += frequencies[i];
+        }
+        unpack(packedPositions, positionSkipData.get(skip + POSITIONS_OFFSET), positionSkipData.get(skip + POSITIONS_BITS),
+            total, positions);
+        for (int i = 0, p = 0; i < count; i++) {
+            int position = -1;
+            for (int j = 0; j < frequencies[i]; j++, p++) {
+                position += positions[p] + 1;
+                positions[p] = position;
+            }
+        }
+    }
+
+    /**
+     * @return a new cursor positioned on the first posting
+     */
+    public PostingsCursor cursor() {
+        return new PostingsCursor(this);
+    }
+
+    /**
+     * @param maxValue largest value to store, not negative
+     * @return number of bits needed to store the value
+     */
+    private static int bitsRequired(int maxValue) {
+        return 32 - Integer.numberOfLeadingZeros(maxValue);
+    }
+
+    /**
+     * @param count number of values
+     * @param bits number of bits of every value
+     * @return number of 64 bit words holding the packed values
+     */
+    private static int wordsRequired(int count, int bits) {
+        return (count * bits + 63) >>> 6;
+    }
+
+    /**
+     * @param values values to pack
+     * @param count number of values
+     * @param bits number of bits of every value
+     * @param words receives the packed values, must be zeroed
+     * @param offset first word to write
+     */
+    private static void pack(int[] values, int count, int bits, long[] words, int offset) {
+        if (bits == 0) {
+            return;
+        }
+        for (int i = 0, bit = 0; i < count; i++, bit += bits) {
+            int word = offset + (bit >>> 6);
+            int shift = bit & 63;
+            words[word] |= (long) values[i] << shift;
+            if (shift + bits > 64) {
+                words[word + 1] |= (long) values[i] >>> (64 - shift);
+            }
+        }
+    }
+
+    /**
+     * @param words packed values
+     * @param offset first word of the packed values
+     * @param bits number of bits of every value
+     * @param count number of values to unpack
+     * @param values receives the values
+     */
+    private static void unpack(LongBuffer words, int offset, int bits, int count, int[] values) {
+        if (bits == 0) {
+            Arrays.fill(values, 0, count, 0);
+            return;
+        }
+        long mask = (1L << bits) - 1;
+        int word = offset;
+        int shift = 0;
+        for (int i = 0; i < count; i++) {
+            long value = words.get(word) >>> shift;
+            shift += bits;
+            if (shift >= 64) {
+                word++;
+                shift -= 64;
+                if (shift > 0) {
+                    value |= words.get(word) << (bits - shift);
+                }
+            }
+            values[i] = (int) (value & mask);
+        }
+    }
+
+    /**
+     * @param words packed values
+     * @param offset first word of the packed values
+     * @param bits number of bits of every value
+     * @param index index of the value to unpack
+     * @return the value
+     */
+    private static int unpack(LongBuffer words, int offset, int bits, int index) {
+        if (bits == 0) {
+            return 0;
+        }
+        int bit = index * bits;
+        int word = offset + (bit >>> 6);
+        int shift = bit & 63;
+        long value = words.get(word) >>> shift;
+        if (shift + bits > 64) {
+            value |= words.get(word + 1) << (64 - shift);
+        }
+        return (int) (value & ((1L << bits) - 1));
+    }
+
+    /**
+     * Encodes the posting lists of an index one after the other into shared skip data and packed postings.
+     */
+    static final class Encoder {
+        private final int[] gaps = new int[BLOCK_SIZE];
+        private final int[] frequenciesMinusOne = new int[BLOCK_SIZE];
+        private int[] skipData = new int[SKIP_STRIDE * 16];
+        private long[] words = new long[16];
+        private int[] positionGaps = new int[BLOCK_SIZE];
+        private int[] positionSkipData = new int[POSITIONS_STRIDE * 16];
+        private long[] positionWords = new long[16];
+        private int blockCount;
+        private int wordCount;
+        private int positionWordCount;
+
+        /**
+         * Encode a posting list
+         * @param docIds document ids in ascending order
+         * @param frequencies term frequency for each document id
+         * @param positions positions of the term in every document, one document after the other, null when the
+         * index has no positions
+         * @param size number of postings
+         * @param docLengths length of every document of the index, indexed by document id
+         * @return index of the first block of the posting list in the skip data
+         */
+        int encode(int[] docIds, int[] frequencies, int[] positions, int size, int[] docLengths) {
+            int firstBlock = blockCount;
+            int positionStart = 0;
+            for (int start = 0; start < size; start += BLOCK_SIZE) {
+                int count = Math.min(BLOCK_SIZE, size - start);
+                int previousDocId = start == 0 ? -1 : docIds[start - 1];
+                int maxGap = 0;
+                int maxFrequency = 0;
+                int minDocLength = Integer.MAX_VALUE;
+                for (int i = 0; i < count; i++) {
+                    int docId = docIds[start + i];
+                    gaps[i] = docId - previousDocId - 1;
+                    frequenciesMinusOne[i] = frequencies[start + i] - 1;
+                    previousDocId = docId;
+                    maxGap = Math.max(maxGap, gaps[i]);
+                    maxFrequency = Math.max(maxFrequency, frequencies[start + i]);
+                    minDocLength = Math.min(minDocLength, docLengths[docId]);
+                }
+                int gapBits = bitsRequired(maxGap);
+                int frequencyBits = bitsRequired(maxFrequency - 1);
+                int blockWords = wordsRequired(count, gapBits) + wordsRequired(count, frequencyBits);
+                if (wordCount + blockWords > words.length) {
+                    words = Arrays.copyOf(words, Math.max(words.length * 2, wordCount + blockWords));
+                }
+                pack(gaps, count, gapBits, words, wordCount);
+                pack(frequenciesMinusOne, count, frequencyBits, words, wordCount + wordsRequired(count, gapBits));
+
+                int skip = blockCount++ * SKIP_STRIDE;
+                if (skip == skipData.length) {
+                    skipData = Arrays.copyOf(skipData, skipData.length * 2);
+                }
+                skipData[skip + LAST_DOC_ID] = previousDocId;
+                skipData[skip + OFFSET] = wordCount;
+                skipData[skip + BITS] = gapBits | frequencyBits << 8;
+                skipData[skip + MAX_FREQUENCY] = maxFrequency;
+                skipData[skip + MIN_DOC_LENGTH] = minDocLength;
+                wordCount += blockWords;
+                if (positions != null) {
+                    positionStart = encodePositions(frequencies, start, count, positions, positionStart);
+                }
+            }
+            return firstBlock;
+        }
+
+        /**
+         * Encode the positions of the block being encoded
+         * @param frequencies term frequency for each document id
+         * @param start index of the first posting of the block
+         * @param count number of postings of the block
+         * @param positions positions of the term in every document, one document after the other
+         * @param positionStart index of the first position of the block
+         * @return index of the first position of the next block
+         */
+        private int encodePositions(int[] frequencies, int start, int count, int[] positions, int positionStart) {
+            int total = 0;
+            for (int i = 0; i < count; i++) {
+                total += frequencies[start + i];
+            }
+            if (total > positionGaps.length) {
+                positionGaps = new int[Math.max(total, positionGaps.length * 2)];
+            }
+            int maxGap = 0;
+            for (int i = 0, p = 0; i < count; i++) {
+                int previous = -1;
+                for (int j = 0; j < frequencies[start + i]; j++, p++) {
+                    int position = positions[positionStart + p];
+                    positionGaps[p] = position - previous - 1;
+                    previous = position;
+                    maxGap = Math.max(maxGap, positionGaps[p]);
+                }
+            }
+            int bits = bitsRequired(maxGap);
+            int blockWords = wordsRequired(total, bits);
+            if (positionWordCount + blockWords > positionWords.length) {
+                positionWords = Arrays.copyOf(positionWords, Math.max(positionWords.length * 2, positionWordCount + blockWords));
+            }
+            pack(positionGaps, total, bits, positionWords, positionWordCount);
+            int skip = (blockCount - 1) * POSITIONS_STRIDE;
+            if (skip == positionSkipData.length) {
+                positionSkipData = Arrays.copyOf(positionSkipData, positionSkipData.length * 2);
+            }
+            positionSkipData[skip + POSITIONS_OFFSET] = positionWordCount;
+            positionSkipData[skip + POSITIONS_BITS] = bits;
+            positionWordCount += blockWords;
+            return positionStart + total;
+        }
+
+        /**
+         * @return skip data of every encoded posting list
+         */
+        IntBuffer skipData() {
+            return IntBuffer.wrap(Arrays.copyOf(skipData, blockCount * SKIP_STRIDE));
+        }
+
+        /**
+         * @return packed postings of every encoded posting list
+         */
+        LongBuffer packed() {
+            return LongBuffer.wrap(Arrays.copyOf(words, wordCount));
+        }
+
+        /**
+         * @return skip data of the positions of every encoded posting list
+         */
+        IntBuffer positionSkipData() {
+            return IntBuffer.wrap(Arrays.copyOf(positionSkipData, blockCount * POSITIONS_STRIDE));
+        }
+
+        /**
+         * @return packed positions of every encoded posting list
+         */
+        LongBuffer packedPositions() {
+            return LongBuffer.wrap(Arrays.copyOf(positionWords, positionWordCount));
+        }
+    }
+
+    /**
+     * Growable posting list used while indexing, documents must be added in ascending order.
+     */
+    static final class Builder {
+        private int[] docIds = new int[4];
+        private int[] frequencies = new int[4];
+        private int[] positions; // Positions of the term in every document one after the other, null without positions
+        private int size;
+        private int positionCount;
+
+        /**
+         * Append a document to the posting list
+         * @param docId document id, greater than any previously added id
+         * @param frequency term frequency in the document
+         */
+        void add(int docId, int frequency) {
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docIds[size] = docId;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        /**
+         * Append a document to the posting list with the positions of the term in the document
+         * @param docId document id, greater than any previously added id
+         * @param frequency term frequency in the document
+         * @param termPositions positions of the term in the document in ascending order
+         * @param offset index of the first position in termPositions, followed by frequency - 1 others
+         */
+        void add(int docId, int frequency, int[] termPositions, int offset) {
+            add(docId, frequency);
+            if (positions == null) {
+                positions = new int[Math.max(4, frequency)];
+            } else if (positionCount + frequency > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(positions.length * 2, positionCount + frequency));
+            }
+            System.arraycopy(termPositions, offset, positions, positionCount, frequency);
+            positionCount += frequency;
+        }
+
+        /**
+         * @return number of postings
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * @param encoder encoder of the posting lists of the index
+         * @param docLengths length of every document of the index, indexed by document id
+         * @return index of the first block of the posting list in the skip data
+         */
+        int encode(Encoder encoder, int[] docLengths) {
+            return encoder.encode(docIds, frequencies, positions, size, docLengths);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.devoxx.util.index;
+
+/**
+ * Forward-only iterator over a posting list that can skip whole blocks of postings.
+ * <p>
+ * Postings are decoded one block at a time, the frequencies of a block only when one of them is read, and its
+ * positions only when one of them is read.
+ * <p>
+ * Besides the current posting, the cursor tracks a "shallow" block: {@link #advanceShallow(int)} locates the
+ * block that may contain a target document without decoding any posting, so that callers can check the block
+ * statistics before paying for {@link #advance(int)}.
+ */
+public final class PostingsCursor {
+
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private final PostingList postings;
+    private final int[] docIds = new int[PostingList.BLOCK_SIZE];
+    private final int[] frequencies = new int[PostingList.BLOCK_SIZE];
+    private int decodedBlock = -1;
+    private int decodedCount;
+    private boolean frequenciesDecoded;
+    private final int[] positionStarts = new int[PostingList.BLOCK_SIZE];
+    private int[] positions = new int[PostingList.BLOCK_SIZE];
+    private boolean positionsDecoded;
+    private int position;
+    private int docId;
+    private int block;
+    private long decodedPostings;
+
+    PostingsCursor(PostingList postings) {
+        this.postings = postings;
+        if (postings.size() == 0) {
+            this.docId = NO_MORE_DOCS;
+        } else {
+            decode(0);
+            this.docId = docIds[0];
+        }
+    }
+
+    /**
+     * @return current document id or {@link #NO_MORE_DOCS} when exhausted
+     */
+    public int docId() {
+        return docId;
+    }
+
+    /**
+     * @return term frequency in the current document
+     */
+    public int frequency() {
+        // Frequencies are only decoded for the blocks in which a document is scored
+        if (!frequenciesDecoded) {
+            postings.decodeFrequencies(decodedBlock, frequencies);
+            frequenciesDecoded = true;
+        }
+        return frequencies[position];
+    }
+
+    /**
+     * @param index index of an occurrence of the term in the current document, lower than {@link #frequency()}
+     * @return position of the occurrence in the document, the positions of the occurrences are in ascending order
+     * @throws IllegalStateException when the posting list has no positions
+     */
+    public int position(int index) {
+        if (!positionsDecoded) {
+            decodePositions();
+        }
+        return positions[positionStarts[position] + index];
+    }
+
+    /**
+     * Move to the next posting
+     * @return the new current document id
+     */
+    public int next() {
+        if (docId == NO_MORE_DOCS) {
+            return docId;
+        }
+        if (++position == decodedCount) {
+            if (decodedBlock + 1 == postings.blockCount()) {
+                return exhaust();
+            }
+            decode(decodedBlock + 1);
+        }
+        docId = docIds[position];
+        return docId;
+    }
+
+    /**
+     * Move to the first posting whose document id is greater than or equal to the target
+     * @param target document id to advance to
+     * @return the new current document id
+     */
+    public int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        int targetBlock = shallowBlock(target);
+        if (targetBlock == postings.blockCount()) {
+            return exhaust();
+        }
+        if (targetBlock != decodedBlock) {
+            decode(targetBlock);
+        }
+        // The last document of the block is at least the target
+        int low = position;
+        int high = decodedCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (docIds[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        position = low;
+        docId = docIds[position];
+        return docId;
+    }
+
+    /**
+     * Read the postings from the current one to the end of its block and move to the first posting of the next
+     * block, so that postings can be processed a block at a time
+     * @param docIds receives the document ids, at least {@link PostingList#BLOCK_SIZE} long
+     * @param frequencies receives the term frequencies, at least {@link PostingList#BLOCK_SIZE} long
+     * @return number of postings read, 0 when the cursor is exhausted
+     */
+    public int nextBlock(int[] docIds, int[] frequencies) {
+        if (docId == NO_MORE_DOCS) {
+            return 0;
+        }
+        frequency();
+        int count = decodedCount - position;
+        System.arraycopy(this.docIds, position, docIds, 0, count);
+        System.arraycopy(this.frequencies, position, frequencies, 0, count);
+        if (decodedBlock + 1 == postings.blockCount()) {
+            exhaust();
+        } else {
+            decode(decodedBlock + 1);
+            docId = this.docIds[0];
+        }
+        return count;
+    }
+
+    /**
+     * Move the shallow block to the block that contains the first posting greater than or equal to the target,
+     * without moving the cursor
+     * @param target document id
+     * @return last document id of the shallow block, {@link #NO_MORE_DOCS} when no posting reaches the target
+     */
+    public int advanceShallow(int target) {
+        shallowBlock(target);
+        return blockLastDocId();
+    }
+
+    /**
+     * @param target document id
+     * @return index of the block containing the first posting greater than or equal to the target,
+     * equal to the block count when no posting reaches the target
+     */
+    private int shallowBlock(int target) {
+        int blockCount = postings.blockCount();
+        while (block < blockCount && postings.blockLastDocId(block) < target) {
+            block++;
+        }
+        return block;
+    }
+
+    /**
+     * @return last document id of the shallow block
+     */
+    public int blockLastDocId() {
+        return block < postings.blockCount() ? postings.blockLastDocId(block) : NO_MORE_DOCS;
+    }
+
+    /**
+     * @return highest term frequency of the shallow block
+     */
+    public int blockMaxFrequency() {
+        return postings.blockMaxFrequency(block);
+    }
+
+    /**
+     * @return shortest document length of the shallow block
+     */
+    public int blockMinDocLength() {
+        return postings.blockMinDocLength(block);
+    }
+
+    /**
+     * @return number of postings decoded so far, the blocks skipped without decoding are not counted
+     */
+    public long decodedPostings() {
+        return decodedPostings;
+    }
+
+    /**
+     * Decode the document ids of a block and position the cursor on its first posting
+     * @param newBlock block index
+     */
+    private void decode(int newBlock) {
+        postings.decodeDocIds(newBlock, docIds);
+        decodedBlock = newBlock;
+        decodedCount = postings.blockSize(newBlock);
+        decodedPostings += decodedCount;
+        frequenciesDecoded = false;
+        positionsDecoded = false;
+        position = 0;
+        block = Math.max(block, newBlock);
+    }
+
+    /**
+     * Decode the positions of the decoded block
+     */
+    private void decodePositions() {
+        if (!postings.hasPositions()) {
+            throw new IllegalStateException("The index has no positions.");
+        }
+        frequency();
+        int total = 0;
+        for (int i = 0; i < decodedCount; i++) {
+            positionStarts[i] = total;
+            total += frequencies[i];
+        }
+        if (total > positions.length) {
+            positions = new int[Math.max(total, positions.length * 2)];
+        }
+        postings.decodePositions(decodedBlock, frequencies, positions);
+        positionsDecoded = true;
+    }
+
+    private int exhaust() {
+        docId = NO_MORE_DOCS;
+        block = postings.blockCount();
+        return docId;
+    }
+}
@@ -0,0 +1,224 @@
+package com.devoxx.util.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable view of an inverted index together with the documents deleted from it.
+ * <p>
+ * Deleting a document creates a new segment sharing the same inverted index, so that searches running on the
+ * previous segment are not affected. The deletion bits are kept in chunks of words, and the document frequencies
+ * of the deleted documents by term id in chunks of primitive ints, both shared between segments: a deletion only
+ * copies the chunk of bits of the deleted document and the chunks of its terms.
+ */
+public final class Segment {
+
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int[][] NO_DELETED_DOC_FREQUENCIES = new int[0][];
+    // 64 words of 64 documents per chunk of deletion bits
+    private static final int WORD_CHUNK_BITS = 6;
+    private static final int WORD_CHUNK_SIZE = 1 << WORD_CHUNK_BITS;
+    private static final long[][] NO_DELETED_DOCS = new long[0][];
+
+    private final InvertedIndex index;
+    // Words of deletion bits by local document in chunks of WORD_CHUNK_SIZE words, a missing or null chunk has no
+    // deleted documents
+    private final long[][] deletedDocs;
+    // By term id in chunks of CHUNK_SIZE terms, a missing or null chunk has no deleted documents
+    private final int[][] deletedDocFrequencies;
+    private final int deletedCount;
+    private final long deletedLength;
+
+    /**
+     * Create a segment without deletions
+     * @param index inverted index of the segment
+     */
+    public Segment(InvertedIndex index) {
+        this(index, NO_DELETED_DOCS, NO_DELETED_DOC_FREQUENCIES, 0, 0);
+    }
+
+    /**
+     * Create a segment from an inverted index and the documents deleted from it
+     * @param index inverted index of the segment
+     * @param deletedDocs local ids of the deleted documents
+     */
+    Segment(InvertedIndex index, BitSet deletedDocs) {
+        this.index = index;
+        this.deletedDocs = deletedDocs.isEmpty() ? NO_DELETED_DOCS : wordChunks(deletedDocs.toLongArray());
+        this.deletedCount = deletedDocs.cardinality();
+        int[][] docFrequencies = deletedCount == 0 ? NO_DELETED_DOC_FREQUENCIES : new int[chunkCount(index)][];
+        long length = 0;
+        for (int localDoc = deletedDocs.nextSetBit(0); localDoc >= 0; localDoc = deletedDocs.nextSetBit(localDoc + 1)) {
+            length += index.docLength(localDoc);
+            for (int termId : index.docTermIds(localDoc)) {
+                int chunk = termId >>> CHUNK_BITS;
+                if (docFrequencies[chunk] == null) {
+                    docFrequencies[chunk] = new int[CHUNK_SIZE];
+                }
+                docFrequencies[chunk][termId & (CHUNK_SIZE - 1)]++;
+            }
+        }
+        this.deletedDocFrequencies = docFrequencies;
+        this.deletedLength = length;
+    }
+
+    private Segment(InvertedIndex index,
+                    long[][] deletedDocs,
+                    int[][] deletedDocFrequencies,
+                    int deletedCount,
+                    long deletedLength) {
+        this.index = index;
+        this.deletedDocs = deletedDocs;
+        this.deletedDocFrequencies = deletedDocFrequencies;
+        this.deletedCount = deletedCount;
+        this.deletedLength = deletedLength;
+    }
+
+    /**
+     * @return inverted index of the segment, including deleted documents
+     */
+    public InvertedIndex index() {
+        return index;
+    }
+
+    /**
+     * @param localDoc local document id
+     * @return true when the document has been deleted
+     */
+    public boolean isDeleted(int localDoc) {
+        int word = localDoc >>> 6;
+        int chunk = word >>> WORD_CHUNK_BITS;
+        return chunk < deletedDocs.length && deletedDocs[chunk] != null
+            && (deletedDocs[chunk][word & (WORD_CHUNK_SIZE - 1)] & 1L << localDoc) != 0;
+    }
+
+    /**
+     * @return local ids of the deleted documents, a copy built on every call
+     */
+    public BitSet deletedDocs() {
+        long[] words = new long[deletedDocs.length << WORD_CHUNK_BITS];
+        for (int chunk = 0; chunk < deletedDocs.length; chunk++) {
+            if (deletedDocs[chunk] != null) {
+                System.arraycopy(deletedDocs[chunk], 0, words, chunk << WORD_CHUNK_BITS, WORD_CHUNK_SIZE);
+            }
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * @param docId global document id
+     * @return local id of the document or -1 when the segment has no live document with this id
+     */
+    public int liveLocalDoc(int docId) {
+        int localDoc = index.localDoc(docId);
+        return localDoc < 0 || isDeleted(localDoc) ? -1 : localDoc;
+    }
+
+    /**
+     * @return number of documents that have not been deleted
+     */
+    public int liveDocCount() {
+        return index.docCount() - deletedCount;
+    }
+
+    /**
+     * @return sum of the lengths of the documents that have not been deleted
+     */
+    public long liveLength() {
+        return index.totalLength() - deletedLength;
+    }
+
+    /**
+     * @return number of deleted documents
+     */
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * @param term analyzed term
+     * @return number of live documents containing the term
+     */
+    public int docFrequency(String term) {
+        int termId = index.terms().id(term);
+        return termId < 0 ? 0 : docFrequency(termId);
+    }
+
+    /**
+     * @param termId id of the term in the dictionary of the index
+     * @return number of live documents containing the term
+     */
+    public int docFrequency(int termId) {
+        int chunk = termId >>> CHUNK_BITS;
+        if (chunk >= deletedDocFrequencies.length || deletedDocFrequencies[chunk] == null) {
+            return index.docFrequency(termId);
+        }
+        return index.docFrequency(termId) - deletedDocFrequencies[chunk][termId & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Delete a live document
+     * @param localDoc local document id
+     * @return new segment in which the document is deleted
+     */
+    public Segment delete(int localDoc) {
+        if (isDeleted(localDoc)) {
+            throw new IllegalArgumentException("Document " + index.docId(localDoc) + " is already deleted.");
+        }
+        // Share the chunks of bits of the other documents with this segment, copy the chunk of the document
+        int word = localDoc >>> 6;
+        int wordChunk = word >>> WORD_CHUNK_BITS;
+        long[][] deleted = Arrays.copyOf(deletedDocs, Math.max(deletedDocs.length, wordChunkCount(index)));
+        deleted[wordChunk] = deleted[wordChunk] == null ? new long[WORD_CHUNK_SIZE] : deleted[wordChunk].clone();
+        deleted[wordChunk][word & (WORD_CHUNK_SIZE - 1)] |= 1L << localDoc;
+        // Share the chunks of the other terms with this segment, copy a chunk the first time one of its terms is hit
+        int[][] docFrequencies = deletedDocFrequencies.length == 0
+            ? new int[chunkCount(index)][]
+            : deletedDocFrequencies.clone();
+        for (int termId : index.docTermIds(localDoc)) {
+            int chunk = termId >>> CHUNK_BITS;
+            if (docFrequencies[chunk] == null) {
+                docFrequencies[chunk] = new int[CHUNK_SIZE];
+            } else if (chunk < deletedDocFrequencies.length && docFrequencies[chunk] == deletedDocFrequencies[chunk]) {
+                docFrequencies[chunk] = docFrequencies[chunk].clone();
+            }
+            docFrequencies[chunk][termId & (CHUNK_SIZE - 1)]++;
+        }
+        return new Segment(index, deleted, docFrequencies, deletedCount + 1, deletedLength + index.docLength(localDoc));
+    }
+
+    /**
+     * @param index inverted index
+     * @return number of chunks of document frequencies covering every term of the index
+     */
+    private static int chunkCount(InvertedIndex index) {
+        return (index.terms().size() + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+    }
+
+    /**
+     * @param index inverted index
+     * @return number of chunks of deletion bits covering every document of the index
+     */
+    private static int wordChunkCount(InvertedIndex index) {
+        return (index.docCount() + (64 << WORD_CHUNK_BITS) - 1) >>> (6 + WORD_CHUNK_BITS);
+    }
+
+    /**
+     * @param words words of deletion bits
+     * @return the words in chunks, null for the chunks without deleted documents
+     */
+    private static long[][] wordChunks(long[] words) {
+        long[][] chunks = new long[(words.length + WORD_CHUNK_SIZE - 1) >>> WORD_CHUNK_BITS][];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            int from = chunk << WORD_CHUNK_BITS;
+            for (int word = from; word < Math.min(from + WORD_CHUNK_SIZE, words.length); word++) {
+                if (words[word] != 0) {
+                    chunks[chunk] = Arrays.copyOfRange(words, from, from + WORD_CHUNK_SIZE);
+                    break;
+                }
+            }
+        }
+        return chunks;
+    }
+}
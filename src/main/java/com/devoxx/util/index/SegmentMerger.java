@@ -0,0 +1,71 @@
+package com.devoxx.util.index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges segments into a single inverted index, dropping deleted documents.
+ */
+public final class SegmentMerger {
+
+    private SegmentMerger() {
+    }
+
+    /**
+     * Merge the live documents of segments
+     * @param segments segments to merge, a document id must not be live in more than one of them
+     * @return inverted index of the live documents in ascending id order
+     */
+    public static InvertedIndex merge(List<Segment> segments) {
+        int liveDocs = segments.stream().mapToInt(Segment::liveDocCount).sum();
+        int[] segmentOf = new int[liveDocs];
+        int[] localDocOf = new int[liveDocs];
+        // Sort on (document id, position in the parallel arrays) packed in a single long
+        long[] order = new long[liveDocs];
+        int position = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            for (int localDoc = 0; localDoc < segment.index().docCount(); localDoc++) {
+                if (!segment.isDeleted(localDoc)) {
+                    segmentOf[position] = i;
+                    localDocOf[position] = localDoc;
+                    order[position] = ((long) segment.index().docId(localDoc) << 32) | position;
+                    position++;
+                }
+            }
+        }
+        Arrays.sort(order);
+
+        boolean positions = segments.stream().allMatch(segment -> segment.index().hasPositions());
+        InvertedIndex.Builder builder = new InvertedIndex.Builder(positions);
+        // Map the term ids of every segment to the ids of the builder when first seen
+        int[][] termIds = new int[segments.size()][];
+        // One cursor per term of every segment, the live documents of a segment are visited in ascending local
+        // order so each cursor only moves forward and every positions block is decoded once
+        PostingsCursor[][] cursors = new PostingsCursor[segments.size()][];
+        for (int i = 0; i < segments.size(); i++) {
+            termIds[i] = new int[segments.get(i).index().terms().size()];
+            Arrays.fill(termIds[i], -1);
+            cursors[i] = new PostingsCursor[termIds[i].length];
+        }
+        for (long entry : order) {
+            int index = (int) entry;
+            InvertedIndex source = segments.get(segmentOf[index]).index();
+            int[] builderTermIds = termIds[segmentOf[index]];
+            PostingsCursor[] termCursors = cursors[segmentOf[index]];
+            int localDoc = localDocOf[index];
+            builder.startDocument(source.docId(localDoc));
+            for (int termId : source.docTermIds(localDoc)) {
+                if (builderTermIds[termId] < 0) {
+                    builderTermIds[termId] = builder.termId(source.terms().term(termId));
+                    termCursors[termId] = source.postings(termId).cursor();
+                }
+                PostingsCursor cursor = termCursors[termId];
+                cursor.advance(localDoc);
+                builder.addTerm(builderTermIds[termId], cursor);
+            }
+            builder.endDocument();
+        }
+        return builder.build();
+    }
+}
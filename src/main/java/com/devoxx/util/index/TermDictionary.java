@@ -0,0 +1,351 @@
+package com.devoxx.util.index;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+
+/**
+ * Maps the terms of an inverted index to dense ids from 0, in order of first appearance.
+ * <p>
+ * Every term is stored once as UTF-8 bytes, and ids are found through an open-addressing hash table of primitive
+ * ints with linear probing, so that per-term data can be kept in arrays indexed by term id instead of maps keyed
+ * by term. The ids are also kept sorted by the bytes of their terms, which is the order of their code points, so
+ * that the terms starting with a prefix are found by a binary search followed by a scan of the ones after it.
+ * The table, the hash codes, the sorted ids and the bytes of the terms are held in buffers, which are either on
+ * the heap or mapped from an {@link IndexFile}.
+ */
+public final class TermDictionary {
+
+    private final IntBuffer table; // term id + 1 per slot, 0 for an empty slot
+    private final IntBuffer hashes;
+    private final IntBuffer termStarts;
+    private final ByteBuffer termBytes;
+    private final IntBuffer sortedTermIds;
+
+    /**
+     * Create a dictionary from its parts, see {@link Builder}
+     * @param table hash table, term id + 1 per slot and 0 for an empty slot, its size is a power of two
+     * @param hashes hash code of every term, indexed by term id
+     * @param termStarts start of the bytes of every term, followed by their length
+     * @param termBytes UTF-8 bytes of the terms
+     * @param sortedTermIds term ids in ascending order of the bytes of their terms
+     */
+    TermDictionary(IntBuffer table, IntBuffer hashes, IntBuffer termStarts, ByteBuffer termBytes, IntBuffer sortedTermIds) {
+        this.table = table;
+        this.hashes = hashes;
+        this.termStarts = termStarts;
+        this.termBytes = termBytes;
+        this.sortedTermIds = sortedTermIds;
+    }
+
+    /**
+     * @return number of terms
+     */
+    public int size() {
+        return hashes.limit();
+    }
+
+    /**
+     * @param termId term id
+     * @return the term with this id
+     */
+    public String term(int termId) {
+        int start = termStarts.get(termId);
+        byte[] bytes = new byte[termStarts.get(termId + 1) - start];
+        termBytes.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param term analyzed term
+     * @return id of the term or -1 when the dictionary does not contain it
+     */
+    public int id(String term) {
+        int hash = hash(term);
+        int mask = table.limit() - 1;
+        byte[] bytes = null;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table.get(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            int termId = entry - 1;
+            if (hashes.get(termId) == hash) {
+                if (bytes == null) {
+                    bytes = term.getBytes(StandardCharsets.UTF_8);
+                }
+                if (equals(termId, bytes)) {
+                    return termId;
+                }
+            }
+        }
+    }
+
+    /**
+     * Visit the terms starting with a prefix, in ascending order of their bytes
+     * @param prefix prefix of analyzed terms, the empty prefix visits every term
+     * @param termIds receives the id of every term starting with the prefix
+     */
+    public void forEachTermWithPrefix(String prefix, IntConsumer termIds) {
+        forEachTermWithPrefix(prefix, Integer.MAX_VALUE, termIds);
+    }
+
+    /**
+     * Visit the first terms starting with a prefix, in ascending order of their bytes
+     * @param prefix prefix of analyzed terms, the empty prefix visits every term
+     * @param maxTerms maximum number of terms to visit
+     * @param termIds receives the id of every visited term
+     * @return true when every term starting with the prefix was visited
+     */
+    public boolean forEachTermWithPrefix(String prefix, int maxTerms, IntConsumer termIds) {
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        // Find the first term greater than or equal to the prefix, the terms starting with it follow
+        int low = 0;
+        int high = sortedTermIds.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(sortedTermIds.get(mid), bytes) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < sortedTermIds.limit() && startsWith(sortedTermIds.get(i), bytes); i++) {
+            if (i - low == maxTerms) {
+                return false;
+            }
+            termIds.accept(sortedTermIds.get(i));
+        }
+        return true;
+    }
+
+    /**
+     * @param termId term id
+     * @param bytes UTF-8 bytes
+     * @return negative, zero or positive when the bytes of the term are lower than, equal to or greater than the
+     * given bytes, compared as unsigned
+     */
+    private int compare(int termId, byte[] bytes) {
+        int start = termStarts.get(termId);
+        int length = termStarts.get(termId + 1) - start;
+        for (int i = 0; i < Math.min(length, bytes.length); i++) {
+            int comparison = Byte.compareUnsigned(termBytes.get(start + i), bytes[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return length - bytes.length;
+    }
+
+    private boolean startsWith(int termId, byte[] prefix) {
+        int start = termStarts.get(termId);
+        if (termStarts.get(termId + 1) - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (termBytes.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equals(int termId, byte[] bytes) {
+        int start = termStarts.get(termId);
+        if (termStarts.get(termId + 1) - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (termBytes.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return size of the dictionary data in bytes, on the heap or memory-mapped
+     */
+    public long sizeInBytes() {
+        return (long) (table.limit() + hashes.limit() + termStarts.limit() + sortedTermIds.limit()) * Integer.BYTES
+            + termBytes.limit();
+    }
+
+    // Storage of the dictionary, written and mapped by IndexFile
+
+    IntBuffer table() {
+        return table.duplicate();
+    }
+
+    IntBuffer hashes() {
+        return hashes.duplicate();
+    }
+
+    IntBuffer termStarts() {
+        return termStarts.duplicate();
+    }
+
+    ByteBuffer termBytes() {
+        return termBytes.duplicate();
+    }
+
+    IntBuffer sortedTermIds() {
+        return sortedTermIds.duplicate();
+    }
+
+    /**
+     * @param term term
+     * @return hash code of the term with its bits spread, as linear probing only uses the lowest bits
+     */
+    private static int hash(String term) {
+        int hash = term.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Growable dictionary used while indexing.
+     */
+    static final class Builder {
+        private String[] terms = new String[16];
+        private int[] hashes = new int[16];
+        private int[] table = new int[32];
+        private int size;
+
+        /**
+         * @return number of terms
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * @param term analyzed term
+         * @return id of the term, added to the dictionary when missing
+         */
+        int add(String term) {
+            int hash = hash(term);
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            for (int entry = table[slot]; entry != 0; entry = table[slot]) {
+                if (hashes[entry - 1] == hash && terms[entry - 1].equals(term)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            int termId = size++;
+            if (termId == terms.length) {
+                terms = Arrays.copyOf(terms, termId * 2);
+                hashes = Arrays.copyOf(hashes, termId * 2);
+            }
+            terms[termId] = term;
+            hashes[termId] = hash;
+            table[slot] = termId + 1;
+            // Keep the load factor at most 1/2 so that probe sequences stay short
+            if (size * 2 > table.length) {
+                rehash(table.length * 2);
+            }
+            return termId;
+        }
+
+        /**
+         * @return the dictionary of all added terms, the builder must not be used afterwards
+         */
+        TermDictionary build() {
+            byte[][] encodedTerms = new byte[size][];
+            int[] termStarts = new int[size + 1];
+            for (int termId = 0; termId < size; termId++) {
+                encodedTerms[termId] = terms[termId].getBytes(StandardCharsets.UTF_8);
+                termStarts[termId + 1] = termStarts[termId] + encodedTerms[termId].length;
+            }
+            byte[] termBytes = new byte[termStarts[size]];
+            for (int termId = 0; termId < size; termId++) {
+                System.arraycopy(encodedTerms[termId], 0, termBytes, termStarts[termId], encodedTerms[termId].length);
+            }
+            int[] sortedTermIds = sortedTermIds(encodedTerms);
+            return new TermDictionary(IntBuffer.wrap(table),
+                IntBuffer.wrap(Arrays.copyOf(hashes, size)),
+                IntBuffer.wrap(termStarts),
+                ByteBuffer.wrap(termBytes),
+                IntBuffer.wrap(sortedTermIds));
+        }
+
+        /**
+         * Sort the term ids by the bytes of their terms. The ids are sorted as primitive longs by their first four
+         * bytes, then the ids sharing their first four bytes are compared by their next eight bytes, read once in
+         * term id order, and only byte by byte when those are equal too.
+         * @param encodedTerms UTF-8 bytes of every term, indexed by term id
+         * @return term ids in ascending order of the bytes of their terms
+         */
+        private int[] sortedTermIds(byte[][] encodedTerms) {
+            long[] keys = new long[size];
+            long[] nextKeys = new long[size];
+            for (int termId = 0; termId < size; termId++) {
+                byte[] bytes = encodedTerms[termId];
+                // Flip the sign bits so that signed order is the unsigned order of the bytes
+                keys[termId] = (bytesAt(bytes, 0, 4) << 32 | termId) ^ Long.MIN_VALUE;
+                nextKeys[termId] = bytesAt(bytes, 4, 8) ^ Long.MIN_VALUE;
+            }
+            Arrays.sort(keys);
+            IntBinaryOperator comparator = (a, b) -> {
+                int compare = Long.compare(nextKeys[a], nextKeys[b]);
+                return compare != 0 ? compare : Arrays.compareUnsigned(encodedTerms[a], encodedTerms[b]);
+            };
+            int[] sortedTermIds = new int[size];
+            for (int start = 0, end; start < size; start = end) {
+                for (end = start + 1; end < size && keys[end] >>> 32 == keys[start] >>> 32; end++) {
+                }
+                if (end - start <= 16) {
+                    // Runs are mostly short, sort them in place by insertion
+                    for (int i = start; i < end; i++) {
+                        int termId = (int) keys[i];
+                        int j = i;
+                        for (; j > start && comparator.applyAsInt(sortedTermIds[j - 1], termId) > 0; j--) {
+                            sortedTermIds[j] = sortedTermIds[j - 1];
+                        }
+                        sortedTermIds[j] = termId;
+                    }
+                } else {
+                    Integer[] run = new Integer[end - start];
+                    for (int i = 0; i < run.length; i++) {
+                        run[i] = (int) keys[start + i];
+                    }
+                    Arrays.sort(run, comparator::applyAsInt);
+                    for (int i = 0; i < run.length; i++) {
+                        sortedTermIds[start + i] = run[i];
+                    }
+                }
+            }
+            return sortedTermIds;
+        }
+
+        /**
+         * @param bytes bytes of a term
+         * @param offset offset of the first byte
+         * @param count number of bytes, at most 8
+         * @return the bytes from the offset as a big-endian unsigned number, padded with zeros past the end
+         */
+        private static long bytesAt(byte[] bytes, int offset, int count) {
+            long value = 0;
+            for (int i = offset; i < offset + count; i++) {
+                value = value << 8 | (i < bytes.length ? bytes[i] & 0xFF : 0);
+            }
+            return value;
+        }
+
+        private void rehash(int capacity) {
+            int[] newTable = new int[capacity];
+            int mask = capacity - 1;
+            for (int termId = 0; termId < size; termId++) {
+                int slot = hashes[termId] & mask;
+                while (newTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newTable[slot] = termId + 1;
+            }
+            table = newTable;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.devoxx.util.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of an operation building index data: the initial build of an index, the flush of a
+ * partial index to disk or a segment merge. Enable it with {@code -XX:StartFlightRecording} and the
+ * {@code com.devoxx.bm25.Index} event name.
+ */
+@Name("com.devoxx.bm25.Index")
+@Label("BM25 Indexing")
+@Category("BM25")
+@Description("Build, flush or merge of BM25 index segments")
+@StackTrace(false)
+public final class IndexEvent extends Event {
+
+    @Label("Operation")
+    @Description("build, flush or merge")
+    public String operation;
+
+    @Label("Documents")
+    public long documentCount;
+
+    @Label("Segments")
+    @Description("Number of segments built or merged")
+    public int segmentCount;
+
+    @Label("Terms")
+    public long termCount;
+
+    @Label("Postings")
+    public long postingCount;
+}
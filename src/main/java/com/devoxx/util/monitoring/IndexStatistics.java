@@ -0,0 +1,86 @@
+package com.devoxx.util.monitoring;
+
+/**
+ * Size of an index at a point in time, see {@link com.devoxx.util.BM25#indexStatistics()}.
+ */
+public final class IndexStatistics {
+
+    private final long documentCount;
+    private final long deletedDocumentCount;
+    private final int segmentCount;
+    private final long termCount;
+    private final long postingCount;
+    private final long sizeInBytes;
+
+    /**
+     * Create the statistics of an index
+     * @param documentCount number of live documents
+     * @param deletedDocumentCount number of deleted documents not yet reclaimed by a merge
+     * @param segmentCount number of segments
+     * @param termCount sum of the vocabulary sizes of the segments
+     * @param postingCount number of postings, deleted documents included
+     * @param sizeInBytes estimated size of the index data, on the heap or memory-mapped
+     */
+    public IndexStatistics(long documentCount,
+                           long deletedDocumentCount,
+                           int segmentCount,
+                           long termCount,
+                           long postingCount,
+                           long sizeInBytes) {
+        this.documentCount = documentCount;
+        this.deletedDocumentCount = deletedDocumentCount;
+        this.segmentCount = segmentCount;
+        this.termCount = termCount;
+        this.postingCount = postingCount;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    /**
+     * @return number of live documents
+     */
+    public long documentCount() {
+        return documentCount;
+    }
+
+    /**
+     * @return number of deleted documents not yet reclaimed by a merge
+     */
+    public long deletedDocumentCount() {
+        return deletedDocumentCount;
+    }
+
+    /**
+     * @return number of segments
+     */
+    public int segmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * @return sum of the vocabulary sizes of the segments, the vocabulary size when there is a single segment
+     */
+    public long termCount() {
+        return termCount;
+    }
+
+    /**
+     * @return number of postings, deleted documents included
+     */
+    public long postingCount() {
+        return postingCount;
+    }
+
+    /**
+     * @return estimated size of the index data, on the heap or memory-mapped
+     */
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexStatistics{documents=" + documentCount + ", deletedDocuments=" + deletedDocumentCount
+            + ", segments=" + segmentCount + ", terms=" + termCount + ", postings=" + postingCount
+            + ", sizeInBytes=" + sizeInBytes + "}";
+    }
+}
@@ -0,0 +1,56 @@
+package com.devoxx.util.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of a search, with the statistics of {@link SearchStatistics}.
+ * Enable it with {@code -XX:StartFlightRecording} and the {@code com.devoxx.bm25.Search} event name.
+ */
+@Name("com.devoxx.bm25.Search")
+@Label("BM25 Search")
+@Category("BM25")
+@Description("Search of a BM25 index")
+@StackTrace(false)
+public final class SearchEvent extends Event {
+
+    @Label("Query")
+    public String query;
+
+    @Label("k")
+    @Description("Maximum number of results, 0 for a search ranking every document")
+    public int k;
+
+    @Label("Terms")
+    public int termCount;
+
+    @Label("Postings Visited")
+    public long postingsVisited;
+
+    @Label("Documents Scored")
+    public long documentsScored;
+
+    @Label("Results")
+    public int resultCount;
+
+    @Label("Cache Hit")
+    @Description("Results found in the result cache")
+    public boolean cacheHit;
+
+    @Label("Analysis")
+    @Timespan
+    public long analysisDuration;
+
+    @Label("Scoring")
+    @Timespan
+    public long scoringDuration;
+
+    @Label("Sorting")
+    @Timespan
+    public long sortingDuration;
+}
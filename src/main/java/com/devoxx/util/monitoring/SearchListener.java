@@ -0,0 +1,16 @@
+package com.devoxx.util.monitoring;
+
+/**
+ * Receives the statistics of every search of an index, see {@link com.devoxx.util.BM25#setSearchListener}.
+ * <p>
+ * The listener is called on the searching thread once the results are ready, possibly from many threads at once.
+ * It should return quickly and must not throw.
+ */
+@FunctionalInterface
+public interface SearchListener {
+
+    /**
+     * @param statistics statistics of a completed search
+     */
+    void searchCompleted(SearchStatistics statistics);
+}
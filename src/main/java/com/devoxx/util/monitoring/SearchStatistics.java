@@ -0,0 +1,139 @@
+package com.devoxx.util.monitoring;
+
+/**
+ * Work done by a single search, split in three phases: the analysis of the query, the scoring of the documents
+ * found in the posting lists of the query terms, and the sorting of the results.
+ */
+public final class SearchStatistics {
+
+    private final String query;
+    private final int k;
+    private final int termCount;
+    private final long postingsVisited;
+    private final long documentsScored;
+    private final int resultCount;
+    private final boolean cacheHit;
+    private final long analysisNanos;
+    private final long scoringNanos;
+    private final long sortingNanos;
+
+    /**
+     * Create the statistics of a search
+     * @param query query text
+     * @param k maximum number of results, 0 for a search ranking every document
+     * @param termCount number of distinct analyzed query terms
+     * @param postingsVisited number of postings decoded or iterated
+     * @param documentsScored number of documents whose score was computed
+     * @param resultCount number of returned documents
+     * @param cacheHit true when the results came from the result cache
+     * @param analysisNanos time spent analyzing the query, in nanoseconds
+     * @param scoringNanos time spent scoring documents, in nanoseconds
+     * @param sortingNanos time spent sorting the results, in nanoseconds
+     */
+    public SearchStatistics(String query,
+                            int k,
+                            int termCount,
+                            long postingsVisited,
+                            long documentsScored,
+                            int resultCount,
+                            boolean cacheHit,
+                            long analysisNanos,
+                            long scoringNanos,
+                            long sortingNanos) {
+        this.query = query;
+        this.k = k;
+        this.termCount = termCount;
+        this.postingsVisited = postingsVisited;
+        this.documentsScored = documentsScored;
+        this.resultCount = resultCount;
+        this.cacheHit = cacheHit;
+        this.analysisNanos = analysisNanos;
+        this.scoringNanos = scoringNanos;
+        this.sortingNanos = sortingNanos;
+    }
+
+    /**
+     * @return query text
+     */
+    public String query() {
+        return query;
+    }
+
+    /**
+     * @return maximum number of results, 0 for a search ranking every document
+     */
+    public int k() {
+        return k;
+    }
+
+    /**
+     * @return number of distinct analyzed query terms
+     */
+    public int termCount() {
+        return termCount;
+    }
+
+    /**
+     * @return number of postings decoded or iterated
+     */
+    public long postingsVisited() {
+        return postingsVisited;
+    }
+
+    /**
+     * @return number of documents whose score was computed
+     */
+    public long documentsScored() {
+        return documentsScored;
+    }
+
+    /**
+     * @return number of returned documents
+     */
+    public int resultCount() {
+        return resultCount;
+    }
+
+    /**
+     * @return true when the results came from the result cache, without scoring any document
+     */
+    public boolean cacheHit() {
+        return cacheHit;
+    }
+
+    /**
+     * @return time spent analyzing the query, in nanoseconds
+     */
+    public long analysisNanos() {
+        return analysisNanos;
+    }
+
+    /**
+     * @return time spent scoring documents, in nanoseconds
+     */
+    public long scoringNanos() {
+        return scoringNanos;
+    }
+
+    /**
+     * @return time spent sorting the results, in nanoseconds
+     */
+    public long sortingNanos() {
+        return sortingNanos;
+    }
+
+    /**
+     * @return time spent in the search, in nanoseconds
+     */
+    public long totalNanos() {
+        return analysisNanos + scoringNanos + sortingNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchStatistics{query='" + query + "', k=" + k + ", terms=" + termCount
+            + ", postingsVisited=" + postingsVisited + ", documentsScored=" + documentsScored
+            + ", results=" + resultCount + ", cacheHit=" + cacheHit + ", analysisNanos=" + analysisNanos
+            + ", scoringNanos=" + scoringNanos + ", sortingNanos=" + sortingNanos + "}";
+    }
+}
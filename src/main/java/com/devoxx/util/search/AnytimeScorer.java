@@ -0,0 +1,480 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.index.InvertedIndex;
+import com.devoxx.util.index.PostingList;
+import com.devoxx.util.index.PostingsCursor;
+import com.devoxx.util.index.Segment;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Term-at-a-time evaluation of a disjunctive query within a {@link SearchBudget}, which can stop at any time with
+ * the best documents found so far.
+ * <p>
+ * The terms are scored from the rarest, whose inverse document frequency and scores are the highest, to the most
+ * frequent, so that a search stopped early has already added the terms that weigh most in the ranking. The posting
+ * lists of a term are decoded and scored one block at a time into a score accumulator, and the budget is checked
+ * before every block. Long queries whose frequent terms would take most of the time only lose the contribution of
+ * those terms. The accumulator flags the chunks of documents reached, so that reading and clearing the scores only
+ * goes through these chunks. Reading the accumulated scores is only limited by the timeout of the budget, so the
+ * postings visited by a search are the postings its budget limits.
+ * <p>
+ * The accumulated scores are lower bounds of the document scores, so the k-th best of them bounds the k-th best
+ * score of the query. Once the maximum scores of the terms left add up below it, a document not found yet cannot
+ * enter the top k and the frequent terms left are not accumulated: like in the MaxScore strategy, the documents
+ * found so far whose accumulated score plus the maximum scores of the terms left can reach the bound get their
+ * exact score, summed in query order like {@link BlockMaxWand} does, by skipping through the posting lists. The top
+ * k is then identical to the one of a search without budget. When the budget runs out, the documents are ranked
+ * by their accumulated scores instead.
+ * <p>
+ * Deleted documents are skipped, and documents are collected with their global id. A scorer evaluates a single
+ * query once and is not thread-safe.
+ */
+public final class AnytimeScorer {
+
+    private final List<Segment> segments;
+    private final List<String> terms;
+    private final TermScorer[] scorers;
+    private final int[] order;
+    private final SearchBudget budget;
+    private final Accumulator accumulator;
+    // Position of the first document of every segment in the accumulator
+    private final int[] offsets;
+    // Maximum score of every term, computed on first use
+    private final double[] maxScores;
+    // Buffers of the block of postings being scored
+    private final int[] localDocs = new int[PostingList.BLOCK_SIZE];
+    private final int[] frequencies = new int[PostingList.BLOCK_SIZE];
+    private final int[] docLengths = new int[PostingList.BLOCK_SIZE];
+    private final double[] blockScores = new double[PostingList.BLOCK_SIZE];
+    private long start;
+    private long postingsVisited;
+    private long documentsScored;
+    private boolean partial;
+
+    /**
+     * Create a scorer
+     * @param segments segments of the index
+     * @param terms distinct analyzed query terms, in query order
+     * @param scorers scorer of every term, null for the terms that are not in the index
+     * @param docFrequencies number of documents containing every term, which orders the evaluation of the terms
+     * @param budget limits on the work of the search
+     */
+    public AnytimeScorer(List<Segment> segments, List<String> terms, List<TermScorer> scorers, int[] docFrequencies,
+                         SearchBudget budget) {
+        this(segments, terms, scorers, docFrequencies, budget, new Accumulator());
+    }
+
+    /**
+     * Create a scorer sharing its score accumulator with other scorers
+     * @param segments segments of the index
+     * @param terms distinct analyzed query terms, in query order
+     * @param scorers scorer of every term, null for the terms that are not in the index
+     * @param docFrequencies number of documents containing every term, which orders the evaluation of the terms
+     * @param budget limits on the work of the search
+     * @param accumulator score accumulator, not used by another scorer at the same time
+     */
+    public AnytimeScorer(List<Segment> segments, List<String> terms, List<TermScorer> scorers, int[] docFrequencies,
+                         SearchBudget budget, Accumulator accumulator) {
+        if (terms.size() != scorers.size() || terms.size() != docFrequencies.length) {
+            throw new IllegalArgumentException("There must be one scorer and one document frequency per term.");
+        }
+        this.segments = segments;
+        this.terms = terms;
+        this.scorers = scorers.toArray(new TermScorer[0]);
+        this.order = IntStream.range(0, terms.size())
+            .filter(term -> scorers.get(term) != null)
+            .boxed()
+            .sorted(Comparator.comparingInt(term -> docFrequencies[term]))
+            .mapToInt(Integer::intValue)
+            .toArray();
+        this.budget = budget;
+        this.accumulator = accumulator;
+        this.offsets = new int[segments.size() + 1];
+        for (int segment = 0; segment < segments.size(); segment++) {
+            offsets[segment + 1] = offsets[segment] + segments.get(segment).index().docCount();
+        }
+        this.maxScores = new double[terms.size()];
+        Arrays.fill(maxScores, Double.NaN);
+    }
+
+    /**
+     * Evaluate the query until every term is scored or the budget runs out
+     * @param collector receives the best documents
+     */
+    public void search(TopKCollector collector) {
+        start = System.nanoTime();
+        accumulator.ensureCapacity(offsets[segments.size()]);
+        try {
+            accumulateAndCollect(collector);
+        } finally {
+            accumulator.clear();
+        }
+    }
+
+    /**
+     * @param collector receives the best documents
+     */
+    private void accumulateAndCollect(TopKCollector collector) {
+        long[] postingsSizes = new long[terms.size()];
+        long remainingPostings = 0;
+        for (int term : order) {
+            postingsSizes[term] = postingsSize(term);
+            remainingPostings += postingsSizes[term];
+        }
+        int docCount = offsets[segments.size()];
+        long postingsSinceCheck = 0;
+        double threshold = Double.NEGATIVE_INFINITY;
+        int evaluated = 0;
+        for (; evaluated < order.length; evaluated++) {
+            // Once the k-th best accumulated score is out of reach of the terms left, only the documents found so
+            // far can enter the top k. Check it when the postings scored since the last check pay for the scan, and
+            // stop accumulating when scoring these documents exactly decodes fewer postings than the terms left have
+            if (postingsSinceCheck >= docCount) {
+                postingsSinceCheck = 0;
+                threshold = threshold(collector.capacity());
+                double minimum = threshold - remainingMaxScore(evaluated);
+                if (minimum > ScoreBounds.SLACK
+                    && exactScoringCost(postingsSizes, candidateCount(minimum)) < remainingPostings) {
+                    break;
+                }
+            }
+            long visited = postingsVisited;
+            if (!accumulate(order[evaluated])) {
+                partial = true;
+                for (int segment = 0; segment < segments.size(); segment++) {
+                    collectAccumulated(segment, collector);
+                }
+                return;
+            }
+            postingsSinceCheck += postingsVisited - visited;
+            remainingPostings -= postingsSizes[order[evaluated]];
+        }
+
+        double remainingMaxScore = 0;
+        if (evaluated == order.length) {
+            threshold = threshold(collector.capacity());
+        } else {
+            remainingMaxScore = remainingMaxScore(evaluated);
+        }
+        for (int segment = 0; segment < segments.size(); segment++) {
+            collectExact(segment, threshold - remainingMaxScore, collector);
+        }
+    }
+
+    /**
+     * Add the scores of a term in every segment to the accumulators
+     * @param term index of the term
+     * @return false when the budget ran out before every posting of the term was scored
+     */
+    private boolean accumulate(int term) {
+        for (int segment = 0; segment < segments.size(); segment++) {
+            InvertedIndex index = segments.get(segment).index();
+            PostingList postings = index.postings(terms.get(term));
+            if (postings == null) {
+                continue;
+            }
+            PostingsCursor cursor = postings.cursor();
+            while (true) {
+                if (isExhausted(postingsVisited)) {
+                    return false;
+                }
+                int count = cursor.nextBlock(localDocs, frequencies);
+                if (count == 0) {
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    docLengths[i] = index.docLength(localDocs[i]);
+                }
+                scorers[term].score(frequencies, docLengths, count, blockScores);
+                accumulator.add(offsets[segment], localDocs, blockScores, count);
+                postingsVisited += count;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param visited number of postings visited so far
+     * @return true when the budget ran out
+     */
+    private boolean isExhausted(long visited) {
+        return visited >= budget.maxPostingsVisited() || System.nanoTime() - start >= budget.timeoutNanos();
+    }
+
+    /**
+     * @param term index of the term
+     * @return number of postings of the term in every segment
+     */
+    private long postingsSize(int term) {
+        long size = 0;
+        for (Segment segment : segments) {
+            PostingList postings = segment.index().postings(terms.get(term));
+            size += postings == null ? 0 : postings.size();
+        }
+        return size;
+    }
+
+    /**
+     * @param postingsSizes number of postings of every term
+     * @param candidateCount number of documents to score exactly
+     * @return estimated number of postings decoded to score the documents exactly, a block per document and term
+     * at most
+     */
+    private long exactScoringCost(long[] postingsSizes, long candidateCount) {
+        long cost = 0;
+        for (int term : order) {
+            cost += Math.min(candidateCount * PostingList.BLOCK_SIZE, postingsSizes[term]);
+        }
+        return cost;
+    }
+
+    /**
+     * @param minimum accumulated score a document needs to possibly enter the top k
+     * @return number of live documents whose accumulated score is at least the minimum
+     */
+    private long candidateCount(double minimum) {
+        long candidateCount = 0;
+        for (int segment = 0; segment < segments.size(); segment++) {
+            int offset = offsets[segment];
+            int end = offsets[segment + 1];
+            Segment source = segments.get(segment);
+            for (int doc = accumulator.nextChunk(offset, end); doc < end; doc = accumulator.nextChunk(doc, end)) {
+                for (int chunkEnd = Accumulator.chunkEnd(doc, end); doc < chunkEnd; doc++) {
+                    double score = accumulator.scores[doc];
+                    if (score != 0 && score + ScoreBounds.SLACK >= minimum && !source.isDeleted(doc - offset)) {
+                        candidateCount++;
+                    }
+                }
+            }
+        }
+        return candidateCount;
+    }
+
+    /**
+     * @param k number of results
+     * @return k-th best accumulated score of the live documents, a lower bound of the k-th best score of the query,
+     * or negative infinity when fewer than k documents were found
+     */
+    private double threshold(int k) {
+        TopKCollector collector = new TopKCollector(k);
+        for (int segment = 0; segment < segments.size(); segment++) {
+            int offset = offsets[segment];
+            int end = offsets[segment + 1];
+            Segment source = segments.get(segment);
+            for (int doc = accumulator.nextChunk(offset, end); doc < end; doc = accumulator.nextChunk(doc, end)) {
+                for (int chunkEnd = Accumulator.chunkEnd(doc, end); doc < chunkEnd; doc++) {
+                    double score = accumulator.scores[doc];
+                    if (score != 0 && score > collector.threshold() && !source.isDeleted(doc - offset)) {
+                        collector.collect(0, score);
+                    }
+                }
+            }
+        }
+        return collector.threshold();
+    }
+
+    /**
+     * @param evaluated number of terms already accumulated, in evaluation order
+     * @return sum of the maximum scores of the terms left
+     */
+    private double remainingMaxScore(int evaluated) {
+        double remainingMaxScore = 0;
+        for (int i = evaluated; i < order.length; i++) {
+            int term = order[i];
+            if (Double.isNaN(maxScores[term])) {
+                double maxScore = 0;
+                for (Segment segment : segments) {
+                    PostingList postings = segment.index().postings(terms.get(term));
+                    for (int block = 0; postings != null && block < postings.blockCount(); block++) {
+                        maxScore = Math.max(maxScore,
+                            scorers[term].score(postings.blockMaxFrequency(block), postings.blockMinDocLength(block)));
+                    }
+                }
+                maxScores[term] = maxScore;
+            }
+            remainingMaxScore += maxScores[term];
+        }
+        return remainingMaxScore;
+    }
+
+    /**
+     * Collect the live documents of a segment by their accumulated scores
+     * @param segment index of the segment
+     * @param collector receives the documents
+     */
+    private void collectAccumulated(int segment, TopKCollector collector) {
+        Segment source = segments.get(segment);
+        int offset = offsets[segment];
+        int end = offsets[segment + 1];
+        for (int doc = accumulator.nextChunk(offset, end); doc < end; doc = accumulator.nextChunk(doc, end)) {
+            for (int chunkEnd = Accumulator.chunkEnd(doc, end); doc < chunkEnd; doc++) {
+                double score = accumulator.scores[doc];
+                // Term scores are positive, a document scoring 0 contains none of the terms scored
+                if (score != 0 && score >= collector.threshold() && !source.isDeleted(doc - offset)) {
+                    documentsScored++;
+                    collector.collect(source.index().docId(doc - offset), score);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect the live documents of a segment that can enter the top k with their exact score. When the budget runs
+     * out, the documents left are collected with their accumulated score.
+     * @param segment index of the segment
+     * @param minimum accumulated score a document needs to possibly reach the k-th best exact score
+     * @param collector receives the documents
+     */
+    private void collectExact(int segment, double minimum, TopKCollector collector) {
+        Segment source = segments.get(segment);
+        int offset = offsets[segment];
+        int end = offsets[segment + 1];
+        InvertedIndex index = source.index();
+        PostingsCursor[] cursors = new PostingsCursor[scorers.length];
+        for (int term = 0; term < cursors.length; term++) {
+            PostingList postings = scorers[term] == null ? null : index.postings(terms.get(term));
+            cursors[term] = postings == null ? null : postings.cursor();
+        }
+        long visited = postingsVisited;
+        // Documents are reached in ascending order, so the cursors only move forward
+        for (int doc = accumulator.nextChunk(offset, end); doc < end; doc = accumulator.nextChunk(doc, end)) {
+            for (int chunkEnd = Accumulator.chunkEnd(doc, end); doc < chunkEnd; doc++) {
+                double accumulated = accumulator.scores[doc];
+                int localDoc = doc - offset;
+                if (accumulated == 0 || accumulated + ScoreBounds.SLACK < minimum || source.isDeleted(localDoc)) {
+                    continue;
+                }
+                if (!partial && isExhausted(visited + decodedPostings(cursors))) {
+                    partial = true;
+                }
+                if (partial) {
+                    collector.collect(index.docId(localDoc), accumulated);
+                    continue;
+                }
+                // Same computation as Block-Max WAND, so the same score
+                documentsScored++;
+                int docLength = index.docLength(localDoc);
+                double score = 0;
+                for (int term = 0; term < cursors.length; term++) {
+                    if (cursors[term] != null && cursors[term].advance(localDoc) == localDoc) {
+                        score += scorers[term].score(cursors[term].frequency(), docLength);
+                    }
+                }
+                collector.collect(index.docId(localDoc), score);
+            }
+        }
+        postingsVisited = visited + decodedPostings(cursors);
+    }
+
+    /**
+     * @param cursors cursors, null for the terms not in the segment
+     * @return number of postings decoded by the cursors
+     */
+    private static long decodedPostings(PostingsCursor[] cursors) {
+        long decodedPostings = 0;
+        for (PostingsCursor cursor : cursors) {
+            if (cursor != null) {
+                decodedPostings += cursor.decodedPostings();
+            }
+        }
+        return decodedPostings;
+    }
+
+    /**
+     * Score accumulator indexed by document, the documents of every segment following the ones of the previous
+     * segment, with a flag per chunk of documents reached, grown to the largest index scored. Scores are left all
+     * zeros after every query, so that it can be used for the next one.
+     */
+    public static final class Accumulator {
+        private static final int CHUNK_BITS = 6;
+
+        private double[] scores = new double[0];
+        private boolean[] touchedChunks = new boolean[0];
+
+        /**
+         * @param docCount number of documents of the segments to score
+         */
+        private void ensureCapacity(int docCount) {
+            if (scores.length < docCount) {
+                scores = new double[docCount];
+                touchedChunks = new boolean[(docCount >>> CHUNK_BITS) + 1];
+            }
+        }
+
+        /**
+         * Add the scores of a block of postings to the accumulated scores of their documents
+         * @param offset position of the first document of the segment
+         * @param localDocs local document ids
+         * @param blockScores scores to add, positive
+         * @param count number of postings
+         */
+        private void add(int offset, int[] localDocs, double[] blockScores, int count) {
+            for (int i = 0; i < count; i++) {
+                int doc = offset + localDocs[i];
+                // Set without reading it first, so that the postings of the block do not wait for each other
+                touchedChunks[doc >>> CHUNK_BITS] = true;
+                scores[doc] += blockScores[i];
+            }
+        }
+
+        /**
+         * Move to the next chunk of documents reached
+         * @param doc first document to look at
+         * @param end document after the last one to look at
+         * @return first document at or after the first one in a chunk of documents reached, end when none is before it
+         */
+        private int nextChunk(int doc, int end) {
+            while (doc < end && !touchedChunks[doc >>> CHUNK_BITS]) {
+                doc = chunkEnd(doc, end);
+            }
+            return Math.min(doc, end);
+        }
+
+        /**
+         * @param doc document
+         * @param end document after the last one to look at
+         * @return first document after the chunk of the document, end at most
+         */
+        private static int chunkEnd(int doc, int end) {
+            return Math.min(end, (doc | (1 << CHUNK_BITS) - 1) + 1);
+        }
+
+        /**
+         * Reset the scores of the documents reached
+         */
+        private void clear() {
+            for (int chunk = 0; chunk < touchedChunks.length; chunk++) {
+                if (touchedChunks[chunk]) {
+                    int start = chunk << CHUNK_BITS;
+                    Arrays.fill(scores, start, Math.min(start + (1 << CHUNK_BITS), scores.length), 0);
+                    touchedChunks[chunk] = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of postings decoded and scored by the accumulation
+     */
+    public long postingsVisited() {
+        return postingsVisited;
+    }
+
+    /**
+     * @return number of documents containing at least one of the terms scored
+     */
+    public long documentsScored() {
+        return documentsScored;
+    }
+
+    /**
+     * @return true when the budget ran out before every term was scored
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+}
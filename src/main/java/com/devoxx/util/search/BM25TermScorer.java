@@ -0,0 +1,65 @@
+package com.devoxx.util.search;
+
+/**
+ * Scores a query term with the BM25 formula
+ * {@code idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * docLength / avgDocLength))}.
+ * <p>
+ * Postings scored in bulk go through the vectorized {@link ScoringKernel} when it was built and the
+ * {@code jdk.incubator.vector} module is available, through the scalar formula otherwise. Both compute every score with the same operations
+ * in the same order, so they return the same scores to the last bit.
+ */
+public final class BM25TermScorer implements TermScorer {
+
+    private static final ScoringKernel KERNEL = ScoringKernel.preferred();
+
+    // The formula rewritten as weight * tf / (tf + lengthNorm + lengthSlope * docLength), with a single division
+    private final double weight;
+    private final double lengthNorm;
+    private final double lengthSlope;
+
+    /**
+     * Create a scorer
+     * @param idf inverse document frequency of the term
+     * @param termFrequencyScalingFactor scaling factor for term frequency (k1)
+     * @param documentLengthNormalizationFactor normalization factor for document length (b)
+     * @param avgDocLength average length of the documents
+     */
+    public BM25TermScorer(double idf,
+                          double termFrequencyScalingFactor,
+                          double documentLengthNormalizationFactor,
+                          double avgDocLength) {
+        this.weight = idf * (termFrequencyScalingFactor + 1);
+        this.lengthNorm = termFrequencyScalingFactor * (1 - documentLengthNormalizationFactor);
+        this.lengthSlope = termFrequencyScalingFactor * documentLengthNormalizationFactor / avgDocLength;
+    }
+
+    @Override
+    public double score(int termFrequency, int docLength) {
+        return score(weight, lengthNorm, lengthSlope, termFrequency, docLength);
+    }
+
+    @Override
+    public void score(int[] termFrequencies, int[] docLengths, int count, double[] scores) {
+        KERNEL.score(weight, lengthNorm, lengthSlope, termFrequencies, docLengths, count, scores);
+    }
+
+    /**
+     * @return name of the kernel scoring postings in bulk, "vector" or "scalar"
+     */
+    public static String kernel() {
+        return KERNEL.name();
+    }
+
+    /**
+     * Calculate BM25 score for a term in a document, the reference of the scoring kernels
+     * @param weight idf * (k1 + 1)
+     * @param lengthNorm k1 * (1 - b)
+     * @param lengthSlope k1 * b / avgDocLength
+     * @param termFrequency frequency of the term in the document
+     * @param docLength length of the document
+     * @return BM25 score for the term in the document
+     */
+    static double score(double weight, double lengthNorm, double lengthSlope, int termFrequency, int docLength) {
+        return weight * termFrequency / (termFrequency + lengthNorm + lengthSlope * docLength);
+    }
+}
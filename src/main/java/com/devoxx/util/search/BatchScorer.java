@@ -0,0 +1,397 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.index.InvertedIndex;
+import com.devoxx.util.index.PostingList;
+import com.devoxx.util.index.PostingsCursor;
+import com.devoxx.util.index.Segment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Term-at-a-time evaluation of a batch of disjunctive queries sharing terms.
+ * <p>
+ * Every query is evaluated with the MaxScore strategy. The maximum score of a term is bounded by the statistics
+ * of the blocks of its posting list, and a lower bound of the k-th best score of the query is taken from the exact
+ * scores of the best postings of its most selective term. The terms whose maximum scores add up below that bound
+ * are non-essential, as a document containing none of the other terms cannot enter the top k; frequent terms
+ * have a low inverse document frequency and are usually non-essential. The postings of the essential terms are
+ * added to a score accumulator indexed by document, and the documents whose accumulated score plus the maximum
+ * scores of the non-essential terms can beat the threshold get their exact score, summed in query order like
+ * {@link BlockMaxWand} does, so the top k of every query is identical to the one of a single search.
+ * <p>
+ * The posting list of a term is decoded and scored at most once per segment, when the term is essential or
+ * selective for a query of the batch, and shared by every query using it. Non-essential terms are only read for
+ * the documents that get an exact score, with a cursor skipping the blocks in between.
+ * <p>
+ * Deleted documents are skipped, and documents are collected with their global id so that several segments can
+ * be scored one after the other. The score accumulator is an {@link Accumulator} sized to the largest segment
+ * scored, which batches scored one after the other can share. A scorer is not thread-safe, score independent
+ * batches on separate threads.
+ *
+ * @see <a href="https://doi.org/10.1016/0306-4573(95)00020-H">Query evaluation: strategies and optimizations</a>
+ */
+public final class BatchScorer {
+
+    // Longest posting list accumulated in full for a single query, longer ones are left to Block-Max WAND
+    private static final int MAX_ACCUMULATED_POSTINGS = 16 * PostingList.BLOCK_SIZE;
+
+    private final List<List<String>> queries;
+    private final Map<String, TermScorer> scorers;
+    private final int k;
+    private final TopKCollector[] collectors;
+    private final Accumulator accumulator;
+    // Buffers of the block of postings being scored
+    private final int[] localDocs = new int[PostingList.BLOCK_SIZE];
+    private final int[] frequencies = new int[PostingList.BLOCK_SIZE];
+    private final int[] docLengths = new int[PostingList.BLOCK_SIZE];
+    private final double[] blockScores = new double[PostingList.BLOCK_SIZE];
+    private long postingsVisited;
+
+    /**
+     * Create a scorer
+     * @param queries distinct analyzed terms of every query, in query order
+     * @param scorers scorer of every term found in the index, terms without a scorer are ignored
+     * @param k maximum number of results of every query
+     */
+    public BatchScorer(List<List<String>> queries, Map<String, TermScorer> scorers, int k) {
+        this(queries, scorers, k, new Accumulator());
+    }
+
+    /**
+     * Create a scorer sharing its score accumulator with other scorers
+     * @param queries distinct analyzed terms of every query, in query order
+     * @param scorers scorer of every term found in the index, terms without a scorer are ignored
+     * @param k maximum number of results of every query
+     * @param accumulator score accumulator, not used by another scorer at the same time
+     */
+    public BatchScorer(List<List<String>> queries, Map<String, TermScorer> scorers, int k, Accumulator accumulator) {
+        this.accumulator = accumulator;
+        this.queries = queries;
+        this.scorers = scorers;
+        this.k = k;
+        this.collectors = new TopKCollector[queries.size()];
+        for (int query = 0; query < collectors.length; query++) {
+            collectors[query] = new TopKCollector(k);
+        }
+    }
+
+    /**
+     * Score the live documents of a segment for every query of the batch
+     * @param segment segment of the index
+     */
+    public void score(Segment segment) {
+        Map<String, Term> segmentTerms = new HashMap<>();
+        accumulator.ensureCapacity(segment.index().docCount());
+        for (int query = 0; query < queries.size(); query++) {
+            // Terms present in the segment, in query order
+            Term[] terms = queries.get(query).stream()
+                .map(term -> segmentTerms.computeIfAbsent(term, t -> term(segment, t)))
+                .filter(Objects::nonNull)
+                .toArray(Term[]::new);
+            if (terms.length > 0) {
+                score(segment, terms, collectors[query], accumulator.scores, accumulator.touched);
+            }
+        }
+    }
+
+    /**
+     * Collect the documents of a segment that can enter the top k of a query
+     * @param segment segment of the index
+     * @param terms terms of the query, in query order
+     * @param collector top k of the query
+     * @param accumulator score accumulator indexed by local document, all zeros, left all zeros
+     * @param touched buffer of local documents
+     */
+    private void score(Segment segment, Term[] terms, TopKCollector collector, double[] accumulator, int[] touched) {
+        Term[] byMaxScore = terms.clone();
+        Arrays.sort(byMaxScore, (a, b) -> Double.compare(a.maxScore, b.maxScore));
+        Term selective = byMaxScore[terms.length - 1];
+        if (!selective.isCheap()) {
+            blockMaxWand(segment, terms, collector);
+            return;
+        }
+        double threshold = Math.max(collector.threshold(), estimateThreshold(segment, terms, selective));
+
+        // The non-essential terms are a prefix of the terms by ascending maximum score
+        int nonEssentialCount = 0;
+        double nonEssentialMaxScore = 0;
+        while (nonEssentialCount < byMaxScore.length
+            && nonEssentialMaxScore + byMaxScore[nonEssentialCount].maxScore + ScoreBounds.SLACK < threshold) {
+            nonEssentialMaxScore += byMaxScore[nonEssentialCount++].maxScore;
+        }
+        for (int term = nonEssentialCount; term < byMaxScore.length; term++) {
+            if (!byMaxScore[term].isCheap()) {
+                blockMaxWand(segment, terms, collector);
+                return;
+            }
+        }
+
+        int touchedCount = 0;
+        for (int term = nonEssentialCount; term < byMaxScore.length; term++) {
+            ScoredPostings postings = byMaxScore[term].scoredPostings(segment);
+            for (int i = 0; i < postings.size; i++) {
+                int localDoc = postings.localDocs[i];
+                // Term scores are positive, a document scoring 0 has not been touched yet
+                if (accumulator[localDoc] == 0) {
+                    touched[touchedCount++] = localDoc;
+                }
+                accumulator[localDoc] += postings.scores[i];
+            }
+        }
+        int candidateCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int localDoc = touched[i];
+            // Ties on the threshold are decided by document id in the collector
+            if (accumulator[localDoc] + nonEssentialMaxScore + ScoreBounds.SLACK >= threshold) {
+                touched[candidateCount++] = localDoc;
+            }
+            accumulator[localDoc] = 0;
+        }
+
+        // Score the candidates in ascending order, so that the posting lists are read forward
+        Arrays.sort(touched, 0, candidateCount);
+        ExactScorer exactScorer = new ExactScorer(segment, terms);
+        for (int i = 0; i < candidateCount; i++) {
+            double score = exactScorer.score(touched[i]);
+            if (score >= threshold) {
+                collector.collect(segment.index().docId(touched[i]), score);
+                threshold = Math.max(threshold, collector.threshold());
+            }
+        }
+    }
+
+    /**
+     * Collect the top k of a query with long essential posting lists, which Block-Max WAND mostly skips
+     * @param segment segment of the index
+     * @param terms terms of the query, in query order
+     * @param collector top k of the query
+     */
+    private static void blockMaxWand(Segment segment, Term[] terms, TopKCollector collector) {
+        new BlockMaxWand(segment,
+            Arrays.stream(terms).map(term -> term.postings).toList(),
+            Arrays.stream(terms).map(term -> term.scorer).toList()).search(collector);
+    }
+
+    /**
+     * @param segment segment of the index
+     * @param terms terms of the query, in query order
+     * @param selective term of the query with the highest maximum score
+     * @return the k-th best exact score of the best postings of the selective term, a lower bound of the k-th
+     * best score of the query, or negative infinity when the term has fewer than k live postings
+     */
+    private double estimateThreshold(Segment segment, Term[] terms, Term selective) {
+        int[] best = selective.best(segment, k);
+        if (best.length < k) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        ExactScorer exactScorer = new ExactScorer(segment, terms);
+        double[] scores = new double[k];
+        for (int i = 0; i < k; i++) {
+            scores[i] = exactScorer.score(best[i]);
+        }
+        Arrays.sort(scores);
+        return scores[0];
+    }
+
+    /**
+     * @param query index of the query in the batch
+     * @return the k best documents of the query with their scores, best first, the results of a query can only be
+     * read once
+     */
+    public List<Map.Entry<Integer, Double>> results(int query) {
+        return collectors[query].toEntries();
+    }
+
+    /**
+     * @return number of postings decoded and scored in full so far, every posting of a term shared by several
+     * queries counted once
+     */
+    public long postingsVisited() {
+        return postingsVisited;
+    }
+
+    /**
+     * @return the term in the segment, null when it has no live posting or is not in the index
+     */
+    private Term term(Segment segment, String term) {
+        TermScorer scorer = scorers.get(term);
+        PostingList postings = scorer == null ? null : segment.index().postings(term);
+        return postings == null || postings.size() == 0 ? null : new Term(postings, scorer);
+    }
+
+    /**
+     * Score accumulator indexed by local document, with a buffer of the documents reached, grown to the largest
+     * segment scored. Scores are left all zeros after every query, so that it can be used for the next one.
+     */
+    public static final class Accumulator {
+        private double[] scores = new double[0];
+        private int[] touched = new int[0];
+
+        /**
+         * @param docCount number of documents of the segment to score
+         */
+        private void ensureCapacity(int docCount) {
+            if (scores.length < docCount) {
+                scores = new double[docCount];
+                touched = new int[docCount];
+            }
+        }
+    }
+
+    /**
+     * Posting list of a term in a segment with the upper bound of its scores, decoded and scored on first use
+     */
+    private final class Term {
+        private final PostingList postings;
+        private final TermScorer scorer;
+        private final double maxScore;
+        private ScoredPostings scoredPostings;
+        private int[] best;
+
+        private Term(PostingList postings, TermScorer scorer) {
+            this.postings = postings;
+            this.scorer = scorer;
+            double max = 0;
+            for (int block = 0; block < postings.blockCount(); block++) {
+                max = Math.max(max, scorer.score(postings.blockMaxFrequency(block), postings.blockMinDocLength(block)));
+            }
+            this.maxScore = max;
+        }
+
+        /**
+         * @return true when the posting list is short or already scored, so that accumulating it is cheap
+         */
+        private boolean isCheap() {
+            return scoredPostings != null || postings.size() <= MAX_ACCUMULATED_POSTINGS;
+        }
+
+        /**
+         * @param segment segment of the posting list
+         * @return live documents of the posting list with their scores
+         */
+        private ScoredPostings scoredPostings(Segment segment) {
+            if (scoredPostings == null) {
+                InvertedIndex index = segment.index();
+                scoredPostings = new ScoredPostings(postings.size());
+                // Score a block of postings at once, vectorized when the Vector API is available
+                PostingsCursor cursor = postings.cursor();
+                for (int count = cursor.nextBlock(localDocs, frequencies); count > 0; count = cursor.nextBlock(localDocs, frequencies)) {
+                    for (int i = 0; i < count; i++) {
+                        docLengths[i] = index.docLength(localDocs[i]);
+                    }
+                    scorer.score(frequencies, docLengths, count, blockScores);
+                    for (int i = 0; i < count; i++) {
+                        if (!segment.isDeleted(localDocs[i])) {
+                            scoredPostings.localDocs[scoredPostings.size] = localDocs[i];
+                            scoredPostings.scores[scoredPostings.size++] = blockScores[i];
+                        }
+                    }
+                }
+                postingsVisited += postings.size();
+            }
+            return scoredPostings;
+        }
+
+        /**
+         * @param segment segment of the posting list
+         * @param count maximum number of documents, the same for every call
+         * @return the live documents with the best scores, at most count of them, in ascending order
+         */
+        private int[] best(Segment segment, int count) {
+            if (best == null) {
+                ScoredPostings postings = scoredPostings(segment);
+                TopKCollector collector = new TopKCollector(count);
+                for (int i = 0; i < postings.size; i++) {
+                    if (postings.scores[i] > collector.threshold()) {
+                        collector.collect(postings.localDocs[i], postings.scores[i]);
+                    }
+                }
+                best = collector.toEntries().stream().mapToInt(Map.Entry::getKey).sorted().toArray();
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Computes the exact scores of documents in ascending order, from the scored postings of the terms decoded so
+     * far and by skipping through the posting lists of the others
+     */
+    private static final class ExactScorer {
+        private final InvertedIndex index;
+        private final Term[] terms;
+        private final ScoredPostings[] scoredPostings;
+        private final int[] positions;
+        private final PostingsCursor[] cursors;
+
+        private ExactScorer(Segment segment, Term[] terms) {
+            this.index = segment.index();
+            this.terms = terms;
+            this.scoredPostings = new ScoredPostings[terms.length];
+            this.positions = new int[terms.length];
+            this.cursors = new PostingsCursor[terms.length];
+            for (int term = 0; term < terms.length; term++) {
+                scoredPostings[term] = terms[term].scoredPostings;
+                if (scoredPostings[term] == null) {
+                    cursors[term] = terms[term].postings.cursor();
+                }
+            }
+        }
+
+        /**
+         * @param localDoc live local document, after the previous one
+         * @return score of the document, the term scores being summed in query order
+         */
+        private double score(int localDoc) {
+            double score = 0;
+            for (int term = 0; term < terms.length; term++) {
+                ScoredPostings postings = scoredPostings[term];
+                if (postings != null) {
+                    int position = postings.advance(positions[term], localDoc);
+                    positions[term] = position;
+                    if (position < postings.size && postings.localDocs[position] == localDoc) {
+                        score += postings.scores[position];
+                    }
+                } else if (cursors[term].advance(localDoc) == localDoc) {
+                    // Same computation as when the posting list is scored in full, so the same score
+                    score += terms[term].scorer.score(cursors[term].frequency(), index.docLength(localDoc));
+                }
+            }
+            return score;
+        }
+    }
+
+    /**
+     * Live documents of a posting list in ascending order, with the score of the term in each of them
+     */
+    private static final class ScoredPostings {
+        private final int[] localDocs;
+        private final double[] scores;
+        private int size;
+
+        private ScoredPostings(int capacity) {
+            this.localDocs = new int[capacity];
+            this.scores = new double[capacity];
+        }
+
+        /**
+         * Galloping search of a document
+         * @param from position to search from
+         * @param localDoc local document, not before the document at the position
+         * @return position of the first document greater than or equal to the given one, size when there is none
+         */
+        private int advance(int from, int localDoc) {
+            int low = from;
+            int step = 1;
+            while (low + step < size && localDocs[low + step] < localDoc) {
+                low += step;
+                step <<= 1;
+            }
+            int position = Arrays.binarySearch(localDocs, low, Math.min(low + step + 1, size), localDoc);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.index.PostingList;
+import com.devoxx.util.index.PostingsCursor;
+import com.devoxx.util.index.Segment;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Block-Max WAND document-at-a-time evaluation of a disjunctive query.
+ * <p>
+ * The cursors of the query terms are kept sorted by current document. A pivot document is only considered once
+ * the maximum scores of the terms positioned on or before it can beat the current top-k threshold, and it is
+ * only scored when the block maximum scores around it can as well. Otherwise the cursors jump past the pivot or
+ * to the end of the smallest block, skipping documents that can never enter the top k.
+ * The top k is identical to the one of exhaustive scoring. Deleted documents are skipped, and documents are
+ * collected with their global id so that several segments can share a collector.
+ * <p>
+ * An optional filter restricts the search to a set of global document ids. A pivot document outside the filter is
+ * never scored: every cursor jumps to the next document of the filter, so a selective filter skips most postings.
+ * <p>
+ * An evaluator can also be restricted to a range of local documents, so that several threads can evaluate the same
+ * query on disjoint ranges of a segment, each with its own collector.
+ *
+ * @see <a href="https://dl.acm.org/doi/10.1145/2009916.2010048">Faster top-k document retrieval using block-max indexes</a>
+ */
+public final class BlockMaxWand {
+
+    private final Segment segment;
+    private final PostingsCursor[] cursors;
+    private final TermScorer[] scorers;
+    private final double[] maxScores;
+    private final int[] order;
+    private final BitSet filter;
+    private final int fromDoc;
+    private final int toDoc;
+    private long documentsScored;
+
+    /**
+     * Create an evaluator
+     * @param segment segment the posting lists belong to
+     * @param postings posting list of every query term, in query order
+     * @param scorers scorer of every query term, in query order
+     */
+    public BlockMaxWand(Segment segment, List<PostingList> postings, List<TermScorer> scorers) {
+        this(segment, postings, scorers, null);
+    }
+
+    /**
+     * Create an evaluator restricted to some documents
+     * @param segment segment the posting lists belong to
+     * @param postings posting list of every query term, in query order
+     * @param scorers scorer of every query term, in query order
+     * @param filter global ids of the documents to search, null to search every document
+     */
+    public BlockMaxWand(Segment segment, List<PostingList> postings, List<TermScorer> scorers, BitSet filter) {
+        this(segment, postings, scorers, filter, 0, segment.index().docCount());
+    }
+
+    /**
+     * Create an evaluator restricted to some documents and to a range of local documents
+     * @param segment segment the posting lists belong to
+     * @param postings posting list of every query term, in query order
+     * @param scorers scorer of every query term, in query order
+     * @param filter global ids of the documents to search, null to search every document
+     * @param fromDoc first local document to search, inclusive
+     * @param toDoc last local document to search, exclusive
+     */
+    public BlockMaxWand(Segment segment, List<PostingList> postings, List<TermScorer> scorers, BitSet filter,
+                        int fromDoc, int toDoc) {
+        if (postings.size() != scorers.size()) {
+            throw new IllegalArgumentException("postings and scorers must have the same size.");
+        }
+        if (fromDoc < 0 || fromDoc > toDoc) {
+            throw new IllegalArgumentException("fromDoc must be between 0 and toDoc.");
+        }
+        int termCount = postings.size();
+        this.segment = segment;
+        this.cursors = new PostingsCursor[termCount];
+        this.scorers = scorers.toArray(new TermScorer[0]);
+        this.maxScores = new double[termCount];
+        this.order = new int[termCount];
+        this.filter = filter;
+        this.fromDoc = fromDoc;
+        this.toDoc = toDoc;
+        for (int term = 0; term < termCount; term++) {
+            PostingList postingList = postings.get(term);
+            cursors[term] = postingList.cursor();
+            // Only the blocks overlapping the range bound the scores of the term
+            for (int block = 0; block < postingList.blockCount(); block++) {
+                if (postingList.blockLastDocId(block) >= fromDoc) {
+                    maxScores[term] = Math.max(maxScores[term],
+                        this.scorers[term].score(postingList.blockMaxFrequency(block), postingList.blockMinDocLength(block)));
+                    if (postingList.blockLastDocId(block) >= toDoc - 1) {
+                        break;
+                    }
+                }
+            }
+            order[term] = term;
+        }
+    }
+
+    /**
+     * Evaluate the query
+     * @param collector receives the documents that may belong to the top k
+     */
+    public void search(TopKCollector collector) {
+        if (fromDoc > 0) {
+            for (PostingsCursor cursor : cursors) {
+                cursor.advance(fromDoc);
+            }
+        }
+        while (true) {
+            sortCursors();
+            double threshold = collector.threshold();
+
+            int pivot = findPivot(threshold);
+            if (pivot < 0) {
+                return;
+            }
+            int pivotDoc = cursors[order[pivot]].docId();
+            if (pivotDoc >= toDoc) {
+                return;
+            }
+            while (pivot + 1 < order.length && cursors[order[pivot + 1]].docId() == pivotDoc) {
+                pivot++;
+            }
+            if (filter != null) {
+                // No document before the next document of the filter can be collected, move every cursor past them
+                int target = nextFilteredDoc(pivotDoc);
+                if (target != pivotDoc) {
+                    for (PostingsCursor cursor : cursors) {
+                        cursor.advance(target);
+                    }
+                    continue;
+                }
+            }
+
+            double blockBound = 0;
+            for (int i = 0; i <= pivot; i++) {
+                PostingsCursor cursor = cursors[order[i]];
+                if (cursor.advanceShallow(pivotDoc) != PostingsCursor.NO_MORE_DOCS) {
+                    blockBound += scorers[order[i]].score(cursor.blockMaxFrequency(), cursor.blockMinDocLength());
+                }
+            }
+
+            if (!canCompete(blockBound, threshold)) {
+                skipBlocks(pivot);
+            } else if (cursors[order[0]].docId() == pivotDoc) {
+                if (!segment.isDeleted(pivotDoc)) {
+                    collector.collect(segment.index().docId(pivotDoc), score(pivotDoc));
+                }
+                for (int i = 0; i <= pivot; i++) {
+                    cursors[order[i]].next();
+                }
+            } else {
+                for (int i = 0; cursors[order[i]].docId() < pivotDoc; i++) {
+                    cursors[order[i]].advance(pivotDoc);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param threshold current top-k threshold
+     * @return position in the sorted cursors of the first document that may beat the threshold, -1 when none
+     */
+    private int findPivot(double threshold) {
+        double upperBound = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (cursors[order[i]].docId() == PostingsCursor.NO_MORE_DOCS) {
+                return -1;
+            }
+            upperBound += maxScores[order[i]];
+            if (canCompete(upperBound, threshold)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move the cursors up to the pivot past the end of the smallest shallow block,
+     * or to the next document of the following cursor when it comes first
+     * @param pivot position of the last cursor on the pivot document
+     */
+    private void skipBlocks(int pivot) {
+        long target = pivot + 1 < order.length ? cursors[order[pivot + 1]].docId() : PostingsCursor.NO_MORE_DOCS;
+        for (int i = 0; i <= pivot; i++) {
+            target = Math.min(target, cursors[order[i]].blockLastDocId() + 1L);
+        }
+        for (int i = 0; i <= pivot; i++) {
+            cursors[order[i]].advance((int) target);
+        }
+    }
+
+    /**
+     * @param localDoc local document id
+     * @return localDoc when the filter contains it, otherwise the first following document the filter may contain
+     */
+    private int nextFilteredDoc(int localDoc) {
+        int docId = segment.index().docId(localDoc);
+        if (filter.get(docId)) {
+            return localDoc;
+        }
+        int nextDocId = filter.nextSetBit(docId + 1);
+        int next = nextDocId < 0 ? segment.index().docCount() : segment.index().ceilingLocalDoc(nextDocId);
+        return next == segment.index().docCount() ? PostingsCursor.NO_MORE_DOCS : next;
+    }
+
+    /**
+     * Score a document, summing the term scores in query order like exhaustive evaluation does
+     * @param docId local id of the document positioned under the first cursors
+     * @return BM25 score of the document
+     */
+    private double score(int docId) {
+        documentsScored++;
+        int docLength = segment.index().docLength(docId);
+        double score = 0;
+        for (int term = 0; term < cursors.length; term++) {
+            if (cursors[term].docId() == docId) {
+                score += scorers[term].score(cursors[term].frequency(), docLength);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * @return number of postings decoded by the cursors of the query terms
+     */
+    public long postingsVisited() {
+        long postingsVisited = 0;
+        for (PostingsCursor cursor : cursors) {
+            postingsVisited += cursor.decodedPostings();
+        }
+        return postingsVisited;
+    }
+
+    /**
+     * @return number of documents scored, the documents skipped by their score bounds are not counted
+     */
+    public long documentsScored() {
+        return documentsScored;
+    }
+
+    private static boolean canCompete(double upperBound, double threshold) {
+        return upperBound * (1 + ScoreBounds.SLACK) >= threshold;
+    }
+
+    /**
+     * Insertion sort of the cursors by current document, the order barely changes between iterations
+     */
+    private void sortCursors() {
+        for (int i = 1; i < order.length; i++) {
+            int term = order[i];
+            int docId = cursors[term].docId();
+            int j = i - 1;
+            while (j >= 0 && cursors[order[j]].docId() > docId) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = term;
+        }
+    }
+}
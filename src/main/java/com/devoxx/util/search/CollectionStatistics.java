@@ -0,0 +1,122 @@
+package com.devoxx.util.search;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collection statistics of the terms of a query: the number and total length of the live documents, and the
+ * number of live documents containing every term.
+ * <p>
+ * Statistics of disjoint parts of a collection add up to the statistics of the whole collection, so that the
+ * shards of an index can score their documents with the inverse document frequencies and the average document
+ * length of the whole index. Statistics are an immutable value made of strings and numbers only, serializable so
+ * that they can be exchanged with shards living in other JVMs.
+ */
+public final class CollectionStatistics implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String[] terms;
+    private final long docCount;
+    private final long totalLength;
+    private final int[] docFrequencies;
+
+    /**
+     * Create statistics
+     * @param terms distinct analyzed query terms
+     * @param docCount number of live documents
+     * @param totalLength total length of the live documents
+     * @param docFrequencies number of live documents containing every term, in the order of the terms
+     */
+    public CollectionStatistics(List<String> terms, long docCount, long totalLength, int[] docFrequencies) {
+        if (terms.size() != docFrequencies.length) {
+            throw new IllegalArgumentException("There must be one document frequency per term.");
+        }
+        if (docCount < 0 || totalLength < 0) {
+            throw new IllegalArgumentException("docCount and totalLength must not be negative.");
+        }
+        this.terms = terms.toArray(new String[0]);
+        this.docCount = docCount;
+        this.totalLength = totalLength;
+        this.docFrequencies = docFrequencies.clone();
+    }
+
+    /**
+     * @return distinct analyzed query terms
+     */
+    public List<String> terms() {
+        return List.of(terms);
+    }
+
+    /**
+     * @return number of live documents
+     */
+    public long docCount() {
+        return docCount;
+    }
+
+    /**
+     * @return total length of the live documents
+     */
+    public long totalLength() {
+        return totalLength;
+    }
+
+    /**
+     * @return average length of the live documents, 0 when there are none
+     */
+    public double avgDocLength() {
+        return docCount == 0 ? 0 : (double) totalLength / docCount;
+    }
+
+    /**
+     * @param term index of the term in {@link #terms()}
+     * @return number of live documents containing the term
+     */
+    public int docFrequency(int term) {
+        return docFrequencies[term];
+    }
+
+    /**
+     * @return number of live documents containing every term, in the order of the terms
+     */
+    public int[] docFrequencies() {
+        return docFrequencies.clone();
+    }
+
+    /**
+     * @param other statistics of the same terms over other documents
+     * @return statistics of the documents of both
+     */
+    public CollectionStatistics add(CollectionStatistics other) {
+        if (!Arrays.equals(terms, other.terms)) {
+            throw new IllegalArgumentException("Statistics of different terms cannot be added.");
+        }
+        int[] sums = docFrequencies.clone();
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] += other.docFrequencies[i];
+        }
+        return new CollectionStatistics(List.of(terms), docCount + other.docCount, totalLength + other.totalLength,
+            sums);
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (terms == null || docFrequencies == null || terms.length != docFrequencies.length
+            || Arrays.asList(terms).contains(null) || docCount < 0 || totalLength < 0) {
+            throw new InvalidObjectException("Invalid collection statistics.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CollectionStatistics{terms=" + Arrays.toString(terms) + ", docCount=" + docCount + ", totalLength=" + totalLength + '}';
+    }
+}
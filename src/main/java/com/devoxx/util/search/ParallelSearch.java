@@ -0,0 +1,110 @@
+package com.devoxx.util.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Evaluation of a single query by several threads.
+ * <p>
+ * The documents of every segment are split in ranges of consecutive local documents, about as many ranges in total
+ * as threads, and the query is evaluated on every range by its own {@link BlockMaxWand} and collector. The local
+ * top k are merged at the end; as documents are ordered the same way in every collector, the merged top k is
+ * identical to the one of a single evaluation. Every range starts with an empty top k and prunes less than a
+ * single evaluation would, so only queries with enough postings are split.
+ */
+public final class ParallelSearch {
+
+    private final Executor executor;
+    private final int parallelism;
+    private final long minPostings;
+
+    /**
+     * Create a parallel search
+     * @param executor executor running the evaluation of the ranges, for instance a fork-join pool or a
+     *                 virtual-thread-per-task executor
+     * @param parallelism number of ranges a query is split in
+     * @param minPostings number of postings of the query terms from which a query is split
+     */
+    public ParallelSearch(Executor executor, int parallelism, long minPostings) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null.");
+        }
+        if (parallelism <= 1) {
+            throw new IllegalArgumentException("parallelism must be greater than 1.");
+        }
+        if (minPostings < 0) {
+            throw new IllegalArgumentException("minPostings must not be negative.");
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.minPostings = minPostings;
+    }
+
+    /**
+     * @param postings number of postings of the query terms
+     * @return true when a query with that many postings is worth splitting
+     */
+    public boolean isWorthSplitting(long postings) {
+        return postings >= minPostings;
+    }
+
+    /**
+     * Split the documents of a segment in ranges, in proportion to its share of the documents of the index
+     * @param docCount number of documents of the segment
+     * @param totalDocCount number of documents of all the segments of the index
+     * @return bounds of the ranges of local documents: range i goes from bounds[i] inclusive to bounds[i + 1]
+     * exclusive
+     */
+    public int[] split(int docCount, long totalDocCount) {
+        int rangeCount = Math.clamp(Math.round((double) docCount * parallelism / Math.max(1, totalDocCount)),
+            1, Math.max(1, docCount));
+        int[] bounds = new int[rangeCount + 1];
+        for (int range = 0; range <= rangeCount; range++) {
+            bounds[range] = (int) ((long) docCount * range / rangeCount);
+        }
+        return bounds;
+    }
+
+    /**
+     * Evaluate ranges in parallel and merge their top k, the calling thread waits for every range
+     * @param evaluators evaluators of disjoint ranges of documents
+     * @param collector receives the documents of the merged top k
+     */
+    public void search(List<BlockMaxWand> evaluators, TopKCollector collector) {
+        List<CompletableFuture<List<Map.Entry<Integer, Double>>>> ranges = new ArrayList<>(evaluators.size());
+        for (BlockMaxWand evaluator : evaluators) {
+            ranges.add(CompletableFuture.supplyAsync(() -> {
+                TopKCollector local = collector.emptyCopy();
+                evaluator.search(local);
+                return local.toEntries();
+            }, executor));
+        }
+        for (CompletableFuture<List<Map.Entry<Integer, Double>>> range : ranges) {
+            for (Map.Entry<Integer, Double> result : range.join()) {
+                collector.collect(result.getKey(), result.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return number of ranges a query is split in
+     */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return number of postings of the query terms from which a query is split
+     */
+    public long minPostings() {
+        return minPostings;
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelSearch{parallelism=" + parallelism + ", minPostings=" + minPostings + '}';
+    }
+}
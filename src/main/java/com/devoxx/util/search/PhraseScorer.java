@@ -0,0 +1,215 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.index.PostingList;
+import com.devoxx.util.index.PostingsCursor;
+import com.devoxx.util.index.Segment;
+
+import java.util.List;
+
+/**
+ * Document-at-a-time evaluation of a phrase query over positional postings.
+ * <p>
+ * The cursors of the distinct phrase terms are intersected by leapfrogging from the rarest term, so that only the
+ * documents containing every term are visited and the other cursors skip whole blocks. A document containing
+ * every term is scored with the sum of the BM25 scores of the distinct terms, and its positions are only decoded
+ * when that score can enter the top k: the block maximum scores of the terms discard whole blocks first, then the
+ * exact score discards single documents. The document matches when the terms occur at consecutive positions in
+ * phrase order. Deleted documents are skipped, and documents are collected with their global id so that several
+ * segments can share a collector.
+ */
+public final class PhraseScorer {
+
+    private final Segment segment;
+    private final PostingsCursor[] cursors;
+    private final TermScorer[] scorers;
+    private final int[] phraseTerms;
+    private final int lead;
+    private long documentsScored;
+    private long positionsChecked;
+
+    /**
+     * Create an evaluator
+     * @param segment segment the posting lists belong to, its index must have positions
+     * @param postings posting list of every distinct phrase term
+     * @param scorers scorer of every distinct phrase term
+     * @param phraseTerms index in postings of the term at every position of the phrase
+     */
+    public PhraseScorer(Segment segment, List<PostingList> postings, List<TermScorer> scorers, int[] phraseTerms) {
+        if (postings.size() != scorers.size()) {
+            throw new IllegalArgumentException("postings and scorers must have the same size.");
+        }
+        if (postings.isEmpty()) {
+            throw new IllegalArgumentException("The phrase must contain at least one term.");
+        }
+        if (!segment.index().hasPositions()) {
+            throw new IllegalStateException("The index has no positions.");
+        }
+        this.segment = segment;
+        this.cursors = new PostingsCursor[postings.size()];
+        this.scorers = scorers.toArray(new TermScorer[0]);
+        this.phraseTerms = phraseTerms.clone();
+        int lead = 0;
+        for (int term = 0; term < cursors.length; term++) {
+            cursors[term] = postings.get(term).cursor();
+            if (postings.get(term).size() < postings.get(lead).size()) {
+                lead = term;
+            }
+        }
+        this.lead = lead;
+    }
+
+    /**
+     * Evaluate the phrase
+     * @param collector receives the documents matching the phrase that may belong to the top k
+     */
+    public void search(TopKCollector collector) {
+        int docId = cursors[lead].docId();
+        while (docId != PostingsCursor.NO_MORE_DOCS) {
+            int next = intersect(docId);
+            if (next != docId) {
+                docId = next;
+                continue;
+            }
+            if (collector.isFull()) {
+                int blockEnd = skipBlocks(docId, collector.threshold());
+                if (blockEnd != docId) {
+                    docId = blockEnd;
+                    continue;
+                }
+            }
+            if (!segment.isDeleted(docId)) {
+                double score = score(docId);
+                if (score >= collector.threshold() && matches()) {
+                    collector.collect(segment.index().docId(docId), score);
+                }
+            }
+            docId = cursors[lead].next();
+        }
+    }
+
+    /**
+     * Advance the other cursors to a document of the lead cursor
+     * @param docId current document of the lead cursor
+     * @return docId when every cursor is on it, otherwise the next document of the lead cursor to try
+     */
+    private int intersect(int docId) {
+        for (int term = 0; term < cursors.length; term++) {
+            if (term != lead) {
+                int other = cursors[term].advance(docId);
+                if (other != docId) {
+                    return cursors[lead].advance(other);
+                }
+            }
+        }
+        return docId;
+    }
+
+    /**
+     * Skip the blocks whose maximum scores cannot reach the threshold
+     * @param docId document every cursor is on
+     * @param threshold current top-k threshold
+     * @return docId when the blocks around it can reach the threshold, otherwise the next document of the lead
+     * cursor after the smallest block
+     */
+    private int skipBlocks(int docId, double threshold) {
+        double blockBound = 0;
+        long blockEnd = PostingsCursor.NO_MORE_DOCS;
+        for (int term = 0; term < cursors.length; term++) {
+            PostingsCursor cursor = cursors[term];
+            blockEnd = Math.min(blockEnd, cursor.advanceShallow(docId));
+            blockBound += scorers[term].score(cursor.blockMaxFrequency(), cursor.blockMinDocLength());
+        }
+        // Block bounds are summed in the same order as document scores
+        if (blockBound >= threshold) {
+            return docId;
+        }
+        return blockEnd == PostingsCursor.NO_MORE_DOCS ? PostingsCursor.NO_MORE_DOCS : cursors[lead].advance((int) blockEnd + 1);
+    }
+
+    /**
+     * @param docId local id of the document every cursor is on
+     * @return sum of the BM25 scores of the distinct phrase terms
+     */
+    private double score(int docId) {
+        documentsScored++;
+        int docLength = segment.index().docLength(docId);
+        double score = 0;
+        for (int term = 0; term < cursors.length; term++) {
+            score += scorers[term].score(cursors[term].frequency(), docLength);
+        }
+        return score;
+    }
+
+    /**
+     * @return true when the phrase terms occur at consecutive positions of the current document
+     */
+    private boolean matches() {
+        positionsChecked++;
+        // Try the occurrences of the phrase term that is the least frequent in the document as anchors
+        int anchor = 0;
+        for (int i = 1; i < phraseTerms.length; i++) {
+            if (cursors[phraseTerms[i]].frequency() < cursors[phraseTerms[anchor]].frequency()) {
+                anchor = i;
+            }
+        }
+        PostingsCursor anchorCursor = cursors[phraseTerms[anchor]];
+        for (int occurrence = 0; occurrence < anchorCursor.frequency(); occurrence++) {
+            int start = anchorCursor.position(occurrence) - anchor;
+            boolean match = start >= 0;
+            for (int i = 0; match && i < phraseTerms.length; i++) {
+                match = i == anchor || contains(cursors[phraseTerms[i]], start + i);
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param cursor cursor on the current document
+     * @param position position
+     * @return true when the term of the cursor occurs at the position of the document
+     */
+    private static boolean contains(PostingsCursor cursor, int position) {
+        int low = 0;
+        int high = cursor.frequency() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midPosition = cursor.position(mid);
+            if (midPosition < position) {
+                low = mid + 1;
+            } else if (midPosition > position) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of postings decoded by the cursors of the phrase terms
+     */
+    public long postingsVisited() {
+        long postingsVisited = 0;
+        for (PostingsCursor cursor : cursors) {
+            postingsVisited += cursor.decodedPostings();
+        }
+        return postingsVisited;
+    }
+
+    /**
+     * @return number of documents containing every phrase term that were scored
+     */
+    public long documentsScored() {
+        return documentsScored;
+    }
+
+    /**
+     * @return number of documents whose positions were checked, the others were discarded by their scores
+     */
+    public long positionsChecked() {
+        return positionsChecked;
+    }
+}
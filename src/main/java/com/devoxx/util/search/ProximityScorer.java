@@ -0,0 +1,79 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.index.PostingList;
+import com.devoxx.util.index.PostingsCursor;
+
+import java.util.List;
+
+/**
+ * Measures how close the query terms are to each other in documents, from positional postings.
+ * <p>
+ * For every pair of consecutive query terms occurring in a document, the bonus adds the inverse of the smallest
+ * distance between an occurrence of the first term and one of the second, so adjacent terms add 1 and terms far
+ * apart add little. The positions of both terms are walked once in ascending order. Documents must be asked in
+ * ascending order: the cursors only move forward, skipping the blocks of the documents in between.
+ */
+public final class ProximityScorer {
+
+    private final PostingsCursor[] cursors;
+
+    /**
+     * Create a scorer
+     * @param postings posting list of every distinct query term in query order, null for terms not in the index
+     */
+    public ProximityScorer(List<PostingList> postings) {
+        this.cursors = new PostingsCursor[postings.size()];
+        for (int term = 0; term < cursors.length; term++) {
+            PostingList postingList = postings.get(term);
+            if (postingList != null) {
+                if (!postingList.hasPositions()) {
+                    throw new IllegalStateException("The index has no positions.");
+                }
+                cursors[term] = postingList.cursor();
+            }
+        }
+    }
+
+    /**
+     * @param docId local document id, greater than the documents of the previous calls
+     * @return sum over the pairs of consecutive query terms in the document of the inverse of their distance
+     */
+    public double bonus(int docId) {
+        for (PostingsCursor cursor : cursors) {
+            if (cursor != null) {
+                cursor.advance(docId);
+            }
+        }
+        double bonus = 0;
+        for (int term = 1; term < cursors.length; term++) {
+            PostingsCursor first = cursors[term - 1];
+            PostingsCursor second = cursors[term];
+            if (first != null && second != null && first.docId() == docId && second.docId() == docId) {
+                bonus += 1.0 / distance(first, second);
+            }
+        }
+        return bonus;
+    }
+
+    /**
+     * @param first cursor of a term on the current document
+     * @param second cursor of another term on the same document
+     * @return smallest distance between an occurrence of the first term and one of the second
+     */
+    private static int distance(PostingsCursor first, PostingsCursor second) {
+        int distance = Integer.MAX_VALUE;
+        int i = 0;
+        int j = 0;
+        while (i < first.frequency() && j < second.frequency()) {
+            int firstPosition = first.position(i);
+            int secondPosition = second.position(j);
+            distance = Math.min(distance, Math.abs(firstPosition - secondPosition));
+            if (firstPosition < secondPosition) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,193 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.concurrent.ClockCache;
+import com.devoxx.util.index.IndexSnapshot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of top-k search results, keyed by the analyzed terms of the query.
+ * <p>
+ * Queries analyzed to the same terms share an entry whatever their order, stop words, case or inflections, so
+ * "I love Java" and "java love" are the same query: entries are keyed by the sorted terms. An entry holds the ids
+ * and scores of the results in two arrays, and answers any search of its terms for up to the number of results it
+ * was computed for.
+ * <p>
+ * Entries are only valid for the snapshot of the index they were computed on: the cache remembers the newest
+ * snapshot it has seen and a lookup with another snapshot misses. Storing the results of a newer snapshot clears
+ * the cache, while the results of an older snapshot, from a search that started before a change of the index and
+ * ended after it, are dropped. Entries also expire after a time to live, and the cache holds a bounded number of
+ * entries evicted with the CLOCK algorithm, see {@link ClockCache}. A hit is a lock-free map lookup; only insertions
+ * take a lock.
+ */
+public final class ResultCache {
+
+    private final ClockCache<List<String>, Entry> cache;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoTime;
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private IndexSnapshot snapshot; // Newest snapshot seen, of the cached results, guarded by the snapshot lock
+
+    /**
+     * Create a result cache
+     * @param maximumSize maximum number of cached queries
+     * @param timeToLive time after which a cached result expires, zero for results that never expire
+     */
+    public ResultCache(int maximumSize, Duration timeToLive) {
+        this(maximumSize, timeToLive, System::nanoTime);
+    }
+
+    /**
+     * Create a result cache
+     * @param maximumSize maximum number of cached queries
+     * @param timeToLive time after which a cached result expires, zero for results that never expire
+     * @param nanoTime clock in nanoseconds
+     */
+    ResultCache(int maximumSize, Duration timeToLive, LongSupplier nanoTime) {
+        if (timeToLive.isNegative()) {
+            throw new IllegalArgumentException("timeToLive must not be negative.");
+        }
+        this.cache = new ClockCache<>(maximumSize);
+        this.timeToLiveNanos = timeToLive.isZero() ? Long.MAX_VALUE : timeToLive.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @param snapshot snapshot of the index searched
+     * @param terms distinct analyzed query terms, in any order
+     * @param k maximum number of results
+     * @return the cached results, best first, or null when the query is not cached for this snapshot and k
+     */
+    public List<Map.Entry<Integer, Double>> get(IndexSnapshot snapshot, List<String> terms, int k) {
+        Entry entry = cache.get(key(terms),
+            cached -> cached.snapshot == snapshot && cached.answers(k) && !isExpired(cached));
+        return entry == null ? null : entry.results(k);
+    }
+
+    /**
+     * Cache the results of a search, evicting the first entry of the clock that has not been referenced when the
+     * cache is full. The results are dropped when the cache has seen a newer snapshot
+     * @param snapshot snapshot of the index the results were computed on
+     * @param terms distinct analyzed query terms, in any order
+     * @param k maximum number of results of the search
+     * @param results results of the search, best first
+     */
+    public void put(IndexSnapshot snapshot, List<String> terms, int k, List<Map.Entry<Integer, Double>> results) {
+        terms = key(terms);
+        Entry entry = new Entry(snapshot, k, results, nanoTime.getAsLong());
+        snapshotLock.lock();
+        try {
+            if (snapshot != this.snapshot) {
+                if (this.snapshot != null && snapshot.generation() < this.snapshot.generation()) {
+                    return;
+                }
+                cache.clear();
+                this.snapshot = snapshot;
+            }
+            // Keep the entry answering the most searches
+            cache.put(terms, entry, previous -> previous.k < k || isExpired(previous));
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Remove every cached result
+     */
+    public void invalidate() {
+        snapshotLock.lock();
+        try {
+            cache.clear();
+            snapshot = null;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of searches answered from the cache
+     */
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    /**
+     * @return number of searches not found in the cache
+     */
+    public long missCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * @return ratio of the searches answered from the cache, 0 when no search has been made
+     */
+    public double hitRate() {
+        return cache.hitRate();
+    }
+
+    /**
+     * @return number of cached queries
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @param terms distinct analyzed query terms
+     * @return the terms in ascending order
+     */
+    private static List<String> key(List<String> terms) {
+        for (int i = 1; i < terms.size(); i++) {
+            if (terms.get(i - 1).compareTo(terms.get(i)) > 0) {
+                return terms.stream().sorted().toList();
+            }
+        }
+        return terms;
+    }
+
+    private boolean isExpired(Entry entry) {
+        return nanoTime.getAsLong() - entry.created > timeToLiveNanos;
+    }
+
+    private static final class Entry {
+        private final IndexSnapshot snapshot;
+        private final int k;
+        private final int[] docIds;
+        private final double[] scores;
+        private final long created;
+
+        private Entry(IndexSnapshot snapshot, int k, List<Map.Entry<Integer, Double>> results, long created) {
+            this.snapshot = snapshot;
+            this.k = k;
+            this.docIds = new int[results.size()];
+            this.scores = new double[results.size()];
+            for (int i = 0; i < docIds.length; i++) {
+                docIds[i] = results.get(i).getKey();
+                scores[i] = results.get(i).getValue();
+            }
+            this.created = created;
+        }
+
+        /**
+         * @return true when the entry holds the first k results, as it was computed for k or more results or
+         * holds every matching document
+         */
+        private boolean answers(int k) {
+            return k <= this.k || docIds.length < this.k;
+        }
+
+        private List<Map.Entry<Integer, Double>> results(int k) {
+            List<Map.Entry<Integer, Double>> entries = new ArrayList<>(Math.min(k, docIds.length));
+            for (int i = 0; i < Math.min(k, docIds.length); i++) {
+                entries.add(Map.entry(docIds[i], scores[i]));
+            }
+            return Collections.unmodifiableList(entries);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.devoxx.util.search;
+
+/**
+ * Scores one posting at a time.
+ */
+final class ScalarScoringKernel implements ScoringKernel {
+
+    @Override
+    public void score(double weight, double lengthNorm, double lengthSlope,
+                      int[] termFrequencies, int[] docLengths, int count, double[] scores) {
+        for (int i = 0; i < count; i++) {
+            scores[i] = BM25TermScorer.score(weight, lengthNorm, lengthSlope, termFrequencies[i], docLengths[i]);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
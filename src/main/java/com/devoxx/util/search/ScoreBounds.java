@@ -0,0 +1,16 @@
+package com.devoxx.util.search;
+
+/**
+ * Constants shared by the scorers that prune documents with upper or lower bounds of their scores.
+ */
+final class ScoreBounds {
+
+    /**
+     * Margin for rounding when comparing a bound with a score: bounds are summed in a different order than the
+     * document scores, so a document whose bound equals the threshold must not be pruned because of the last bit
+     */
+    static final double SLACK = 1e-9;
+
+    private ScoreBounds() {
+    }
+}
@@ -0,0 +1,43 @@
+package com.devoxx.util.search;
+
+/**
+ * Computes the BM25 scores of many postings of a term at once, see {@link BM25TermScorer}.
+ */
+interface ScoringKernel {
+
+    /**
+     * Score postings
+     * @param weight idf * (k1 + 1)
+     * @param lengthNorm k1 * (1 - b)
+     * @param lengthSlope k1 * b / avgDocLength
+     * @param termFrequencies frequency of the term in every document
+     * @param docLengths length of every document
+     * @param count number of postings
+     * @param scores receives the score of every posting
+     */
+    void score(double weight, double lengthNorm, double lengthSlope,
+               int[] termFrequencies, int[] docLengths, int count, double[] scores);
+
+    /**
+     * @return name of the kernel
+     */
+    String name();
+
+    /**
+     * @return the vectorized kernel when it was built, with the {@code vector} profile, and the JVM was started
+     * with {@code --add-modules jdk.incubator.vector}, the scalar kernel otherwise
+     */
+    static ScoringKernel preferred() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // Loaded by name, the default build does not compile it
+                return (ScoringKernel) Class.forName("com.devoxx.util.search.VectorScoringKernel")
+                    .getDeclaredConstructor()
+                    .newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // The kernel was not built or cannot be used on this platform, fall back to the scalar kernel
+            }
+        }
+        return new ScalarScoringKernel();
+    }
+}
@@ -0,0 +1,67 @@
+package com.devoxx.util.search;
+
+import java.time.Duration;
+
+/**
+ * Limits on the work of a single search: the time spent scoring and the number of postings visited. A search
+ * exceeding its budget stops and returns the best documents found so far, see {@link AnytimeScorer}.
+ */
+public final class SearchBudget {
+
+    private static final Duration MAX_TIMEOUT = Duration.ofNanos(Long.MAX_VALUE);
+
+    private final long timeoutNanos;
+    private final long maxPostingsVisited;
+
+    /**
+     * Create a budget
+     * @param timeout maximum time spent scoring
+     * @param maxPostingsVisited maximum number of postings visited, reading the accumulated scores is only limited by
+     *                           the timeout
+     */
+    public SearchBudget(Duration timeout, long maxPostingsVisited) {
+        if (timeout == null || timeout.isNegative()) {
+            throw new IllegalArgumentException("timeout must not be null or negative.");
+        }
+        if (maxPostingsVisited < 0) {
+            throw new IllegalArgumentException("maxPostingsVisited must not be negative.");
+        }
+        this.timeoutNanos = timeout.compareTo(MAX_TIMEOUT) > 0 ? Long.MAX_VALUE : timeout.toNanos();
+        this.maxPostingsVisited = maxPostingsVisited;
+    }
+
+    /**
+     * @param timeout maximum time spent scoring
+     * @return a budget limiting only the time
+     */
+    public static SearchBudget ofTimeout(Duration timeout) {
+        return new SearchBudget(timeout, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxPostingsVisited maximum number of postings visited
+     * @return a budget limiting only the number of postings visited
+     */
+    public static SearchBudget ofPostings(long maxPostingsVisited) {
+        return new SearchBudget(MAX_TIMEOUT, maxPostingsVisited);
+    }
+
+    /**
+     * @return maximum time spent scoring, in nanoseconds
+     */
+    public long timeoutNanos() {
+        return timeoutNanos;
+    }
+
+    /**
+     * @return maximum number of postings visited
+     */
+    public long maxPostingsVisited() {
+        return maxPostingsVisited;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchBudget{timeoutNanos=" + timeoutNanos + ", maxPostingsVisited=" + maxPostingsVisited + '}';
+    }
+}
@@ -0,0 +1,91 @@
+package com.devoxx.util.search;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Position of the last document of a page of results, from which the next page starts: the documents ranking
+ * after it, by descending score then ascending document id. A cursor can be encoded in an opaque string, for
+ * instance to be sent to a client and given back with the request of the next page.
+ */
+public final class SearchCursor {
+
+    private static final int ENCODED_BYTES = Double.BYTES + Integer.BYTES;
+
+    private final int docId;
+    private final double score;
+
+    /**
+     * Create a cursor
+     * @param docId id of the last document of the page
+     * @param score score of the last document of the page
+     */
+    public SearchCursor(int docId, double score) {
+        if (docId < 0) {
+            throw new IllegalArgumentException("docId must not be negative.");
+        }
+        if (Double.isNaN(score)) {
+            throw new IllegalArgumentException("score must be a number.");
+        }
+        this.docId = docId;
+        this.score = score;
+    }
+
+    /**
+     * @param encoded cursor encoded by {@link #encode()}
+     * @return the cursor
+     */
+    public static SearchCursor decode(String encoded) {
+        if (encoded == null) {
+            throw new IllegalArgumentException("encoded must not be null.");
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid search cursor: " + encoded, e);
+        }
+        if (bytes.length != ENCODED_BYTES) {
+            throw new IllegalArgumentException("Invalid search cursor: " + encoded);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        double score = buffer.getDouble();
+        return new SearchCursor(buffer.getInt(), score);
+    }
+
+    /**
+     * @return the cursor as a URL-safe string, exact to the bit of the score
+     */
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_BYTES).putDouble(score).putInt(docId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @param docId document id
+     * @param score score of the document
+     * @return true when the cursor is before the document, which then belongs to a following page
+     */
+    public boolean isBefore(int docId, double score) {
+        return score < this.score || (score == this.score && docId > this.docId);
+    }
+
+    /**
+     * @return id of the last document of the page
+     */
+    public int docId() {
+        return docId;
+    }
+
+    /**
+     * @return score of the last document of the page
+     */
+    public double score() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCursor{docId=" + docId + ", score=" + score + '}';
+    }
+}
@@ -0,0 +1,42 @@
+package com.devoxx.util.search;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page of search results with the cursor from which the next page starts.
+ */
+public final class SearchPage {
+
+    private final List<Map.Entry<Integer, Double>> results;
+    private final SearchCursor next;
+
+    /**
+     * Create a page
+     * @param results documents of the page with their scores, best first
+     * @param next cursor of the last document of the page, null when there is no following page
+     */
+    public SearchPage(List<Map.Entry<Integer, Double>> results, SearchCursor next) {
+        this.results = List.copyOf(results);
+        this.next = next;
+    }
+
+    /**
+     * @return documents of the page with their scores, best first
+     */
+    public List<Map.Entry<Integer, Double>> results() {
+        return results;
+    }
+
+    /**
+     * @return cursor to give to the search of the next page, null when this page is the last one
+     */
+    public SearchCursor next() {
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchPage{results=" + results + ", next=" + next + '}';
+    }
+}
@@ -0,0 +1,54 @@
+package com.devoxx.util.search;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of a search with a {@link SearchBudget}: the best documents found, and whether the budget ran out
+ * before every posting was scored.
+ */
+public final class SearchResults {
+
+    private final List<Map.Entry<Integer, Double>> results;
+    private final boolean partial;
+    private final long postingsVisited;
+
+    /**
+     * Create results
+     * @param results documents with their scores, best first
+     * @param partial true when the search stopped before scoring every posting
+     * @param postingsVisited number of postings visited
+     */
+    public SearchResults(List<Map.Entry<Integer, Double>> results, boolean partial, long postingsVisited) {
+        this.results = List.copyOf(results);
+        this.partial = partial;
+        this.postingsVisited = postingsVisited;
+    }
+
+    /**
+     * @return documents with their scores, best first. When the results are partial, the scores only add up the
+     * query terms scored before the budget ran out
+     */
+    public List<Map.Entry<Integer, Double>> results() {
+        return results;
+    }
+
+    /**
+     * @return true when the budget ran out, the results are then the best found so far
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * @return number of postings visited
+     */
+    public long postingsVisited() {
+        return postingsVisited;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResults{results=" + results + ", partial=" + partial + ", postingsVisited=" + postingsVisited + '}';
+    }
+}
@@ -0,0 +1,31 @@
+package com.devoxx.util.search;
+
+/**
+ * Scores one query term in one document.
+ * <p>
+ * Implementations must not decrease when the term frequency grows or when the document length shrinks,
+ * so that the score of the highest frequency and the shortest length of a block bounds every score in it.
+ */
+@FunctionalInterface
+public interface TermScorer {
+
+    /**
+     * @param termFrequency frequency of the term in the document
+     * @param docLength length of the document
+     * @return score contribution of the term
+     */
+    double score(int termFrequency, int docLength);
+
+    /**
+     * Score many documents at once
+     * @param termFrequencies frequency of the term in every document
+     * @param docLengths length of every document
+     * @param count number of documents
+     * @param scores receives the score contribution of the term to every document
+     */
+    default void score(int[] termFrequencies, int[] docLengths, int count, double[] scores) {
+        for (int i = 0; i < count; i++) {
+            scores[i] = score(termFrequencies[i], docLengths[i]);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.devoxx.util.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the k best scoring documents in a bounded binary min-heap of primitive (docId, score) pairs.
+ * The root of the heap is the weakest collected document so that a new document only costs a comparison
+ * unless it beats it. Documents are ordered by descending score, ties are broken by ascending document id.
+ * <p>
+ * A collector can start after a {@link SearchCursor}: the documents ranking before the cursor or on it, which were
+ * on the previous pages, are ignored, so the collector keeps the k best documents of the next page.
+ */
+public final class TopKCollector {
+
+    private final int[] docIds;
+    private final double[] scores;
+    private final SearchCursor after;
+    private int size;
+
+    /**
+     * Create a collector
+     * @param k maximum number of documents to keep
+     */
+    public TopKCollector(int k) {
+        this(k, null);
+    }
+
+    /**
+     * Create a collector of the documents ranking after a cursor
+     * @param k maximum number of documents to keep
+     * @param after cursor of the last document of the previous page, null to collect from the best document
+     */
+    public TopKCollector(int k, SearchCursor after) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive.");
+        }
+        this.docIds = new int[k];
+        this.scores = new double[k];
+        this.after = after;
+    }
+
+    /**
+     * Offer a document to the collector
+     * @param docId document id
+     * @param score score of the document
+     */
+    public void collect(int docId, double score) {
+        if (after != null && !after.isBefore(docId, score)) {
+            return;
+        }
+        if (size < docIds.length) {
+            docIds[size] = docId;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (isWorse(docIds[0], scores[0], docId, score)) {
+            docIds[0] = docId;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return true when k documents have been collected
+     */
+    public boolean isFull() {
+        return size == docIds.length;
+    }
+
+    /**
+     * @return score a document must exceed to enter a full collector, negative infinity while it is not full
+     */
+    public double threshold() {
+        return isFull() ? scores[0] : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @return maximum number of documents kept
+     */
+    public int capacity() {
+        return docIds.length;
+    }
+
+    /**
+     * @return an empty collector of the same capacity, starting after the same cursor
+     */
+    public TopKCollector emptyCopy() {
+        return new TopKCollector(docIds.length, after);
+    }
+
+    /**
+     * @return number of collected documents
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Drain the collected documents, the collector is empty afterward
+     * @return collected documents with their scores, best first
+     */
+    public List<Map.Entry<Integer, Double>> toEntries() {
+        // The heap drains from the weakest document
+        List<Map.Entry<Integer, Double>> entries = new ArrayList<>(size);
+        while (size > 0) {
+            int last = --size;
+            entries.add(Map.entry(docIds[0], scores[0]));
+            docIds[0] = docIds[last];
+            scores[0] = scores[last];
+            siftDown(0);
+        }
+        Collections.reverse(entries);
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return true when the first document ranks below the second one
+     */
+    private static boolean isWorse(int docId, double score, int otherDocId, double otherScore) {
+        return score < otherScore || (score == otherScore && docId > otherDocId);
+    }
+
+    private void siftUp(int index) {
+        int docId = docIds[index];
+        double score = scores[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isWorse(docId, score, docIds[parent], scores[parent])) {
+                break;
+            }
+            docIds[index] = docIds[parent];
+            scores[index] = scores[parent];
+            index = parent;
+        }
+        docIds[index] = docId;
+        scores[index] = score;
+    }
+
+    private void siftDown(int index) {
+        int docId = docIds[index];
+        double score = scores[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && isWorse(docIds[right], scores[right], docIds[child], scores[child])) {
+                child = right;
+            }
+            if (!isWorse(docIds[child], scores[child], docId, score)) {
+                break;
+            }
+            docIds[index] = docIds[child];
+            scores[index] = scores[child];
+            index = child;
+        }
+        docIds[index] = docId;
+        scores[index] = score;
+    }
+}
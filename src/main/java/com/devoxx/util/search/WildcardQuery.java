@@ -0,0 +1,183 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.index.IndexSnapshot;
+import com.devoxx.util.index.Segment;
+import com.devoxx.util.index.TermDictionary;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Term pattern with wildcards, expanded into the terms of an index that match it.
+ * <p>
+ * In a pattern, {@code *} matches any sequence of characters and {@code ?} any single character. The characters
+ * before the first wildcard are a literal prefix: candidate terms are looked up in the sorted term dictionary of
+ * every segment, so only the terms starting with the prefix are visited. A pattern whose only wildcard is a final
+ * {@code *}, like {@code jav*}, is a prefix query and needs no further matching; a pattern starting with a
+ * wildcard visits every term.
+ * <p>
+ * A short prefix can match many thousands of terms, so a pattern is expanded to a bounded number of them: the
+ * terms found in the most documents of the whole snapshot, ties broken by term order. The document frequencies of
+ * the matching terms are summed over the segments, so the ranking is exact. To keep patterns like {@code a*} or
+ * {@code ?} interactive, at most 16,384 terms starting with the prefix are visited in every segment: when a segment
+ * has more, only the matching terms up to the last term visited in every segment are candidates, so the expansion
+ * is then the most frequent of the first matching terms in term order rather than of all of them.
+ */
+public final class WildcardQuery {
+
+    private static final int MAX_VISITED_TERMS = 1 << 14; // Maximum number of terms visited in every segment
+
+    private final String pattern;
+    private final String prefix;
+    private final Pattern regex; // Null for a prefix query
+
+    /**
+     * Create a query
+     * @param pattern lowercase pattern
+     */
+    public WildcardQuery(String pattern) {
+        int wildcard = wildcardIndex(pattern);
+        if (wildcard < 0) {
+            throw new IllegalArgumentException("The pattern must contain a wildcard.");
+        }
+        this.pattern = pattern;
+        this.prefix = pattern.substring(0, wildcard);
+        this.regex = wildcard == pattern.length() - 1 && pattern.charAt(wildcard) == '*' ? null : toRegex(pattern);
+    }
+
+    /**
+     * @param word word of a query
+     * @return true when the word contains a wildcard
+     */
+    public static boolean isWildcard(String word) {
+        return wildcardIndex(word) >= 0;
+    }
+
+    /**
+     * @return characters before the first wildcard
+     */
+    public String prefix() {
+        return prefix;
+    }
+
+    /**
+     * @return true when the pattern is its prefix followed by {@code *}
+     */
+    public boolean isPrefix() {
+        return regex == null;
+    }
+
+    /**
+     * @param term analyzed term
+     * @return true when the pattern matches the whole term
+     */
+    public boolean matches(String term) {
+        return term.startsWith(prefix) && (regex == null || regex.matcher(term).matches());
+    }
+
+    /**
+     * Expand the pattern into the terms of an index snapshot
+     * @param snapshot index snapshot
+     * @param maxExpansions maximum number of terms
+     * @return at most maxExpansions matching terms, by descending document frequency
+     */
+    public List<String> expand(IndexSnapshot snapshot, int maxExpansions) {
+        return expand(snapshot, maxExpansions, MAX_VISITED_TERMS);
+    }
+
+    /**
+     * Expand the pattern into the terms of an index snapshot
+     * @param snapshot index snapshot
+     * @param maxExpansions maximum number of terms
+     * @param maxVisitedTerms maximum number of terms starting with the prefix visited in every segment
+     * @return at most maxExpansions matching terms, by descending document frequency
+     */
+    List<String> expand(IndexSnapshot snapshot, int maxExpansions, int maxVisitedTerms) {
+        if (maxExpansions <= 0) {
+            throw new IllegalArgumentException("maxExpansions must be positive.");
+        }
+        // Live document frequency of every matching term in the whole snapshot
+        Map<String, Integer> docFrequencies = new HashMap<>();
+        // Greatest term visited in every segment, null when every segment visited all the terms with the prefix
+        String lastVisited = null;
+        for (Segment segment : snapshot.segments()) {
+            TermDictionary terms = segment.index().terms();
+            IntStream.Builder visited = IntStream.builder();
+            boolean complete = terms.forEachTermWithPrefix(prefix, maxVisitedTerms, visited::add);
+            int[] termIds = visited.build().toArray();
+            for (int termId : termIds) {
+                String term = terms.term(termId);
+                int docFrequency = segment.docFrequency(termId);
+                if (docFrequency > 0 && (regex == null || regex.matcher(term).matches())) {
+                    docFrequencies.merge(term, docFrequency, Integer::sum);
+                }
+            }
+            if (!complete) {
+                String last = terms.term(termIds[termIds.length - 1]);
+                if (lastVisited == null || compareBytes(last, lastVisited) < 0) {
+                    lastVisited = last;
+                }
+            }
+        }
+        // The frequency of a term after the last visited one may miss the segments that did not reach it
+        String cutoff = lastVisited;
+        return docFrequencies.entrySet().stream()
+            .filter(entry -> cutoff == null || compareBytes(entry.getKey(), cutoff) <= 0)
+            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey(WildcardQuery::compareBytes)))
+            .limit(maxExpansions)
+            .map(Map.Entry::getKey)
+            .toList();
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    /**
+     * @return negative, zero or positive when the first term is lower than, equal to or greater than the second in
+     * the order of their UTF-8 bytes, the order of the term dictionary
+     */
+    private static int compareBytes(String first, String second) {
+        for (int i = 0, j = 0; i < first.length() && j < second.length(); ) {
+            int firstCodePoint = first.codePointAt(i);
+            int secondCodePoint = second.codePointAt(j);
+            if (firstCodePoint != secondCodePoint) {
+                return Integer.compare(firstCodePoint, secondCodePoint);
+            }
+            i += Character.charCount(firstCodePoint);
+            j += Character.charCount(secondCodePoint);
+        }
+        return Integer.compare(first.length(), second.length());
+    }
+
+    private static int wildcardIndex(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) == '*' || word.charAt(i) == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Pattern toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i <= pattern.length(); i++) {
+            if (i == pattern.length() || pattern.charAt(i) == '*' || pattern.charAt(i) == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(pattern.substring(literalStart, i)));
+                }
+                if (i < pattern.length()) {
+                    regex.append(pattern.charAt(i) == '*' ? ".*" : ".");
+                }
+                literalStart = i + 1;
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
@@ -0,0 +1,73 @@
+package com.devoxx.util.stemmer;
+
+import com.devoxx.util.Language;
+import com.devoxx.util.concurrent.ClockCache;
+
+/**
+ * Stemmer remembering the stems of the most frequently seen words.
+ * <p>
+ * The cache holds a bounded number of words evicted with the CLOCK algorithm, see {@link ClockCache}: a word read
+ * since the previous sweep of the clock hand is kept over one that has not been. A hit is a lock-free map lookup
+ * plus a reference bit write; only misses take a lock to insert in the clock.
+ * <p>
+ * The cache is thread-safe when the decorated stemmer is, wrap a stemmer that is not in a {@link PooledStemmer}.
+ */
+public final class CachingStemmer implements Stemmer {
+
+    private final Stemmer stemmer;
+    private final ClockCache<String, String> cache;
+
+    /**
+     * Create a caching stemmer
+     * @param stemmer stemmer computing the stems of the words that are not cached
+     * @param maximumSize maximum number of cached words
+     */
+    public CachingStemmer(Stemmer stemmer, int maximumSize) {
+        this.stemmer = stemmer;
+        this.cache = new ClockCache<>(maximumSize);
+    }
+
+    @Override
+    public String stem(String word) {
+        String stem = cache.get(word);
+        if (stem == null) {
+            stem = stemmer.stem(word);
+            // Another thread may have cached the same word meanwhile
+            cache.putIfAbsent(word, stem);
+        }
+        return stem;
+    }
+
+    @Override
+    public Language getSupportedLanguage() {
+        return stemmer.getSupportedLanguage();
+    }
+
+    /**
+     * @return number of words found in the cache
+     */
+    public long hitCount() {
+        return cache.hitCount();
+    }
+
+    /**
+     * @return number of words stemmed by the decorated stemmer
+     */
+    public long missCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * @return ratio of the words found in the cache, 0 when no word has been stemmed
+     */
+    public double hitRate() {
+        return cache.hitRate();
+    }
+
+    /**
+     * @return number of cached words
+     */
+    public int size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,56 @@
+package com.devoxx.util.stemmer;
+
+import com.devoxx.util.Language;
+import com.devoxx.util.concurrent.SlotPool;
+
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe stemmer backed by a small {@link SlotPool} of non thread-safe stemmers created by a factory.
+ * <p>
+ * A call borrows a stemmer from the pool and puts it back afterward. When all stemmers are in use, a new one is
+ * created and dropped after the call if the pool is still full, so the number of idle stemmers is bounded by the
+ * pool size rather than the number of threads, which suits virtual threads.
+ */
+public final class PooledStemmer implements Stemmer {
+
+    private final Supplier<? extends Stemmer> factory;
+    private final SlotPool<Stemmer> pool;
+    private final Language supportedLanguage;
+
+    /**
+     * Create a pool of two stemmers per available processor
+     * @param factory creates a new stemmer
+     */
+    public PooledStemmer(Supplier<? extends Stemmer> factory) {
+        this(factory, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Create a pool
+     * @param factory creates a new stemmer
+     * @param size maximum number of idle stemmers kept in the pool
+     */
+    public PooledStemmer(Supplier<? extends Stemmer> factory, int size) {
+        this.factory = factory;
+        this.pool = new SlotPool<>(size);
+        Stemmer stemmer = factory.get();
+        this.supportedLanguage = stemmer.getSupportedLanguage();
+        pool.release(stemmer);
+    }
+
+    @Override
+    public String stem(String word) {
+        Stemmer stemmer = pool.acquire(factory);
+        try {
+            return stemmer.stem(word);
+        } finally {
+            pool.release(stemmer);
+        }
+    }
+
+    @Override
+    public Language getSupportedLanguage() {
+        return supportedLanguage;
+    }
+}
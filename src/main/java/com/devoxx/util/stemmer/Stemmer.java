@@ -4,6 +4,9 @@ import com.devoxx.util.Language;
 
 /**
  * A language stemmer.
+ * <p>
+ * Implementations keep state while stemming a word and are not expected to be thread-safe,
+ * see {@link PooledStemmer} to share a stemmer between threads.
  */
 public interface Stemmer {
     String stem(String word);
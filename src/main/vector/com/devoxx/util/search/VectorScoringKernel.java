@@ -0,0 +1,42 @@
+package com.devoxx.util.search;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Scores as many postings at once as the preferred vector shape of the platform holds doubles, with the
+ * operations of the scalar formula in the same order. Only compiled by the {@code vector} profile of the build,
+ * and only loaded when the {@code jdk.incubator.vector} module is available.
+ */
+final class VectorScoringKernel implements ScoringKernel {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Half as wide as the doubles, so that the frequencies and lengths of a vector of scores load in one vector
+    private static final VectorSpecies<Integer> INTS =
+        VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    @Override
+    public void score(double weight, double lengthNorm, double lengthSlope,
+                      int[] termFrequencies, int[] docLengths, int count, double[] scores) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(count); i < bound; i += DOUBLES.length()) {
+            DoubleVector termFrequency = (DoubleVector) IntVector.fromArray(INTS, termFrequencies, i)
+                .convertShape(VectorOperators.I2D, DOUBLES, 0);
+            DoubleVector docLength = (DoubleVector) IntVector.fromArray(INTS, docLengths, i)
+                .convertShape(VectorOperators.I2D, DOUBLES, 0);
+            DoubleVector denominator = termFrequency.add(lengthNorm).add(docLength.mul(lengthSlope));
+            termFrequency.mul(weight).div(denominator).intoArray(scores, i);
+        }
+        for (; i < count; i++) {
+            scores[i] = BM25TermScorer.score(weight, lengthNorm, lengthSlope, termFrequencies[i], docLengths[i]);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+}
@@ -24,14 +24,37 @@
 
 package com.devoxx.util;
 
+import com.devoxx.util.monitoring.IndexStatistics;
+import com.devoxx.util.monitoring.SearchStatistics;
+import com.devoxx.util.search.SearchCursor;
+import com.devoxx.util.search.SearchPage;
 import com.devoxx.util.stemmer.snowball.EnglishStemmer;
 import com.devoxx.util.stopwords.StopWords;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static com.devoxx.util.RandomCorpus.sentence;
+import static com.devoxx.util.RandomCorpus.vocabulary;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.within;
 
 class BM25Test {
 
@@ -150,4 +173,402 @@ class BM25Test {
         assertThat(results.getFirst().getValue()).isGreaterThan(2.0);
         assertThat(results.getLast().getValue()).isLessThan(0.4);
     }
+
+    @Test
+    void testBM25_TopK() {
+        List<String> corpus = List.of(
+            "I love programming",
+            "Java is my favorite programming language",
+            "I enjoy writing code in Java",
+            "Java is another popular programming language",
+            "I find programming fascinating",
+            "I love Java",
+            "I prefer Java over Python"
+        );
+
+        BM25 bm25 = new BM25(corpus);
+
+        List<Map.Entry<Integer, Double>> allResults = bm25.search("I love java");
+        List<Map.Entry<Integer, Double>> results = bm25.search("I love java", 3);
+
+        assertThat(results.size()).isEqualTo(3);
+        assertThat(results).isEqualTo(allResults.subList(0, 3));
+
+        List<Map.Entry<Integer, Double>> matchingResults = bm25.search("Python programming", 10);
+        assertThat(matchingResults.size()).isEqualTo(5);
+        assertThat(matchingResults).isEqualTo(bm25.search("Python programming").subList(0, 5));
+    }
+
+    @Test
+    void testBM25_QuantizedImpacts() {
+        List<String> corpus = List.of(
+            "I love programming",
+            "Java is my favorite programming language",
+            "I enjoy writing code in Java",
+            "Java is another popular programming language",
+            "I find programming fascinating",
+            "I love Java",
+            "I prefer Java over Python"
+        );
+
+        BM25 bm25 = new BM25(corpus);
+        QuantizedBM25 quantized = bm25.quantize(16);
+
+        List<Map.Entry<Integer, Double>> expected = bm25.search("I love java programming", 5);
+        List<Map.Entry<Integer, Double>> results = quantized.search("I love java programming", 5);
+
+        assertThat(results.size()).isEqualTo(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(results.get(i).getKey()).isEqualTo(expected.get(i).getKey());
+            assertThat(results.get(i).getValue()).isCloseTo(expected.get(i).getValue(), within(1e-3));
+        }
+
+        assertThat(bm25.quantize(8).search("I love java programming", 5, 1).size()).isEqualTo(1);
+    }
+
+    @Test
+    void testBM25_AddUpdateDeleteDocuments() {
+        List<String> corpus = List.of(
+            "I love programming",
+            "Java is my favorite programming language",
+            "I enjoy writing code in Java",
+            "Java is another popular programming language",
+            "I find programming fascinating",
+            "I love Java",
+            "I prefer Java over Python"
+        );
+
+        BM25 bm25 = new BM25(corpus);
+        Map<Integer, String> documents = new TreeMap<>();
+        for (int i = 0; i < corpus.size(); i++) {
+            documents.put(i, corpus.get(i));
+        }
+
+        int added = bm25.addDocument("Python is a programming language");
+        documents.put(added, "Python is a programming language");
+        bm25.updateDocument(2, "I enjoy writing code in Python");
+        documents.put(2, "I enjoy writing code in Python");
+        assertThat(bm25.deleteDocument(4)).isTrue();
+        documents.remove(4);
+        assertThat(bm25.deleteDocument(4)).isFalse();
+        for (int i = 0; i < 40; i++) {
+            String document = "Java release " + i + " is out";
+            documents.put(bm25.addDocument(document), document);
+        }
+
+        assertThat(added).isEqualTo(7);
+        assertSameScores(bm25, documents, "I love Python programming");
+
+        bm25.forceMerge();
+        assertSameScores(bm25, documents, "I love Python programming");
+        assertSameScores(bm25, documents, "Java release");
+    }
+
+    /**
+     * Compare the scores of an updated index with the ones of an index built from scratch
+     */
+    private static void assertSameScores(BM25 bm25, Map<Integer, String> documents, String query) {
+        List<Integer> ids = List.copyOf(documents.keySet());
+        BM25 rebuilt = new BM25(List.copyOf(documents.values()));
+
+        List<Map.Entry<Integer, Double>> results = bm25.search(query);
+        List<Map.Entry<Integer, Double>> expected = rebuilt.search(query);
+
+        assertThat(results.size()).isEqualTo(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(results.get(i).getKey()).isEqualTo(ids.get(expected.get(i).getKey()));
+            assertThat(results.get(i).getValue()).isEqualTo(expected.get(i).getValue());
+        }
+
+        List<Map.Entry<Integer, Double>> topResults = bm25.search(query, 5);
+        List<Map.Entry<Integer, Double>> expectedTop = rebuilt.search(query, 5);
+        assertThat(topResults.size()).isEqualTo(expectedTop.size());
+        for (int i = 0; i < expectedTop.size(); i++) {
+            assertThat(topResults.get(i).getKey()).isEqualTo(ids.get(expectedTop.get(i).getKey()));
+            assertThat(topResults.get(i).getValue()).isEqualTo(expectedTop.get(i).getValue());
+        }
+    }
+
+    @Test
+    void testBM25_ParallelBuild() {
+        Random random = new Random(7);
+        List<String> vocabulary = vocabulary(random, 200);
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 1_000; doc++) {
+            corpus.add(sentence(random, vocabulary, 3 + random.nextInt(15)));
+        }
+        String query = sentence(random, vocabulary, 4);
+        String shortQuery = sentence(random, vocabulary, 2);
+
+        BM25 sequential = new BM25(corpus);
+        BM25 parallel = BM25.builder()
+            .stemmer(EnglishStemmer::new)
+            .parallelism(4)
+            .build(corpus);
+        BM25 cached = BM25.builder()
+            .stemmer(EnglishStemmer::new)
+            .stemmerCacheSize(8)
+            .parallelism(4)
+            .build(corpus);
+
+        assertThat(parallel.search(query)).isEqualTo(sequential.search(query));
+        assertThat(parallel.search(shortQuery, 10)).isEqualTo(sequential.search(shortQuery, 10));
+        assertThat(cached.search(query)).isEqualTo(sequential.search(query));
+    }
+
+    @Test
+    void testBM25_ParallelSearch() {
+        Random random = new Random(13);
+        List<String> vocabulary = vocabulary(random, 300);
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 5_000; doc++) {
+            corpus.add(sentence(random, vocabulary, 3 + random.nextInt(15)));
+        }
+        BM25 sequential = new BM25(corpus);
+        BM25 parallel;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            parallel = BM25.builder().executor(executor).searchParallelism(7, 0).build(corpus);
+            for (int doc = 0; doc < 20; doc++) {
+                String document = sentence(random, vocabulary, 2);
+                sequential.addDocument(document);
+                parallel.addDocument(document);
+                int deleted = random.nextInt(corpus.size());
+                sequential.deleteDocument(deleted);
+                parallel.deleteDocument(deleted);
+            }
+            BitSet filter = new BitSet();
+            for (int doc = 0; doc < corpus.size(); doc += 3) {
+                filter.set(doc);
+            }
+            for (int query = 0; query < 50; query++) {
+                String text = sentence(random, vocabulary, 3);
+                for (int k : new int[]{1, 10, 1_000}) {
+                    assertThat(parallel.search(text, k)).isEqualTo(sequential.search(text, k));
+                    assertThat(parallel.search(text, k, filter)).isEqualTo(sequential.search(text, k, filter));
+                }
+            }
+        }
+        assertThatThrownBy(() -> BM25.builder().searchParallelism(0, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testBM25_SearchAfter() {
+        Random random = new Random(17);
+        // Short documents of a small vocabulary, so that many documents have the same score
+        List<String> vocabulary = vocabulary(random, 20);
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 2_000; doc++) {
+            corpus.add(sentence(random, vocabulary, 1 + random.nextInt(3)));
+        }
+        BM25 bm25 = BM25.builder().searchParallelism(3, 0).build(corpus);
+
+        for (String query : List.of(sentence(random, vocabulary, 3), sentence(random, vocabulary, 2),
+            sentence(random, vocabulary, 2))) {
+            List<Map.Entry<Integer, Double>> pages = new ArrayList<>();
+            SearchPage page = bm25.searchAfter(query, 7, null);
+            assertThat(page.results()).isEqualTo(bm25.search(query, 7));
+            while (page.next() != null) {
+                pages.addAll(page.results());
+                // The cursor survives a round trip through its opaque string
+                page = bm25.searchAfter(query, 7, SearchCursor.decode(page.next().encode()));
+            }
+            pages.addAll(page.results());
+            assertThat(pages).isEqualTo(bm25.search(query, corpus.size()));
+        }
+        assertThatThrownBy(() -> SearchCursor.decode("not a cursor")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testBM25_ConcurrentSearch() throws Exception {
+        Random random = new Random(11);
+        List<String> vocabulary = vocabulary(random, 100);
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 500; doc++) {
+            corpus.add(sentence(random, vocabulary, 3 + random.nextInt(15)));
+        }
+        BM25 bm25 = new BM25(corpus);
+        List<String> queries = List.of(sentence(random, vocabulary, 4), sentence(random, vocabulary, 2),
+            sentence(random, vocabulary, 2), sentence(random, vocabulary, 2));
+        List<List<Map.Entry<Integer, Double>>> expected = queries.stream().map(bm25::search).toList();
+        List<List<Map.Entry<Integer, Double>>> expectedTopK = queries.stream().map(query -> bm25.search(query, 10)).toList();
+
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int task = 0; task < 200; task++) {
+                int first = task;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 20; i++) {
+                        int query = (first + i) % queries.size();
+                        assertThat(bm25.search(queries.get(query))).isEqualTo(expected.get(query));
+                        assertThat(bm25.search(queries.get(query), 10)).isEqualTo(expectedTopK.get(query));
+                    }
+                }));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    @Test
+    void testBM25_SaveAndOpen(@TempDir Path directory) throws IOException {
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 300; doc++) {
+            corpus.add("document " + doc + " about " + (doc % 3 == 0 ? "java records" : "python generators")
+                + (doc % 7 == 0 ? " and virtual threads running" : ""));
+        }
+        BM25 bm25 = new BM25(corpus);
+        bm25.deleteDocument(3);
+        bm25.updateDocument(7, "java virtual threads and structured concurrency");
+        bm25.addDocument("python and java interoperability");
+        Path file = directory.resolve("index.bm25");
+        bm25.save(file);
+
+        BM25 reopened = BM25.builder().open(file);
+        for (String query : List.of("java virtual threads", "python generators", "structured concurrency running")) {
+            assertThat(reopened.search(query)).isEqualTo(bm25.search(query));
+            assertThat(reopened.search(query, 10)).isEqualTo(bm25.search(query, 10));
+        }
+        assertThat(reopened.addDocument("kotlin coroutines")).isEqualTo(bm25.addDocument("kotlin coroutines"));
+    }
+
+    @Test
+    void testBM25_OpenCorruptedIndex(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("index.bm25");
+        new BM25(List.of("I love programming", "Java is my favorite programming language")).save(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> BM25.builder().verifyChecksums(true).open(file))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Checksum mismatch");
+    }
+
+    @Test
+    void testBM25_OpenCorruptedHeader(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("index.bm25");
+        new BM25(List.of("I love programming", "Java is my favorite programming language")).save(file);
+        byte[] bytes = Files.readAllBytes(file);
+        // Next document id
+        bytes[8] ^= 1;
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> BM25.builder().open(file))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Checksum mismatch");
+    }
+
+    @Test
+    void testBM25_StreamingBuild(@TempDir Path directory) throws IOException {
+        Random random = new Random(5);
+        List<String> vocabulary = vocabulary(random, 300);
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 2_000; doc++) {
+            corpus.add(sentence(random, vocabulary, 3 + random.nextInt(15)));
+        }
+        Path file = directory.resolve("corpus.txt");
+        Files.write(file, corpus);
+
+        BM25 inMemory = new BM25(corpus);
+        // A small budget flushes many partial indexes to disk
+        BM25 fromStream = BM25.builder()
+            .memoryBudget(16 * 1024)
+            .temporaryDirectory(directory)
+            .build(corpus.stream());
+        BM25 fromFile = BM25.builder()
+            .memoryBudget(16 * 1024)
+            .temporaryDirectory(directory)
+            .build(file);
+
+        for (String query : List.of(sentence(random, vocabulary, 4), sentence(random, vocabulary, 2),
+            sentence(random, vocabulary, 3))) {
+            assertThat(fromStream.search(query)).isEqualTo(inMemory.search(query));
+            assertThat(fromFile.search(query, 10)).isEqualTo(inMemory.search(query, 10));
+        }
+        assertThat(fromStream.addDocument("java")).isEqualTo(corpus.size());
+    }
+
+    @Test
+    void testBM25_SearchInstrumentation(@TempDir Path directory) throws IOException {
+        List<String> corpus = List.of(
+            "I love programming",
+            "Java is my favorite programming language",
+            "I enjoy writing code in Java",
+            "Java is another popular programming language",
+            "I find programming fascinating",
+            "I love Java",
+            "I prefer Java over Python"
+        );
+        List<SearchStatistics> statistics = new ArrayList<>();
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.devoxx.bm25.Search");
+            recording.enable("com.devoxx.bm25.Index");
+            recording.start();
+            BM25 bm25 = new BM25(corpus);
+            bm25.setSearchListener(statistics::add);
+            bm25.search("I love java", 2);
+            bm25.search("python programming");
+            recording.stop();
+            Path file = directory.resolve("recording.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+
+            IndexStatistics index = bm25.indexStatistics();
+            assertThat(index.documentCount()).isEqualTo(7L);
+            assertThat(index.segmentCount()).isEqualTo(1);
+            assertThat(index.termCount()).isEqualTo(12L);
+            assertThat(index.postingCount()).isEqualTo(21L);
+            assertThat(index.sizeInBytes()).isGreaterThan(0L);
+        }
+
+        assertThat(statistics.size()).isEqualTo(2);
+        SearchStatistics topK = statistics.getFirst();
+        assertThat(topK.k()).isEqualTo(2);
+        assertThat(topK.termCount()).isEqualTo(2);
+        assertThat(topK.resultCount()).isEqualTo(2);
+        assertThat(topK.documentsScored()).isGreaterThan(0L);
+        SearchStatistics rankAll = statistics.getLast();
+        assertThat(rankAll.k()).isEqualTo(0);
+        assertThat(rankAll.postingsVisited()).isEqualTo(5L);
+        assertThat(rankAll.documentsScored()).isEqualTo(5L);
+        assertThat(rankAll.resultCount()).isEqualTo(7);
+
+        assertThat(events.stream().filter(event -> event.getEventType().getName().equals("com.devoxx.bm25.Search")).count())
+            .isEqualTo(2L);
+        RecordedEvent build = events.stream()
+            .filter(event -> event.getEventType().getName().equals("com.devoxx.bm25.Index"))
+            .findFirst()
+            .orElseThrow();
+        assertThat(build.getString("operation")).isEqualTo("build");
+        assertThat(build.getLong("documentCount")).isEqualTo(7L);
+    }
+
+    @Test
+    void testBM25_ResultCache() {
+        List<String> corpus = List.of(
+            "I love programming",
+            "Java is my favorite programming language",
+            "I enjoy writing code in Java",
+            "I love Java"
+        );
+        BM25 bm25 = BM25.builder().resultCache(100, Duration.ofMinutes(10)).build(corpus);
+        BM25 uncached = new BM25(corpus);
+
+        List<Map.Entry<Integer, Double>> results = bm25.search("I love Java", 3);
+        assertThat(results).isEqualTo(uncached.search("I love Java", 3));
+        assertThat(bm25.search("love java", 2)).isEqualTo(results.subList(0, 2));
+        assertThat(bm25.search("LOVING JAVA", 3)).isEqualTo(results);
+        assertThat(bm25.resultCache().hitCount()).isEqualTo(2L);
+        assertThat(bm25.resultCache().missCount()).isEqualTo(1L);
+
+        // A change to the index invalidates the cached results
+        int docId = bm25.addDocument("Java Java love");
+        uncached.addDocument("Java Java love");
+        assertThat(bm25.search("love java", 3).stream().anyMatch(entry -> entry.getKey() == docId)).isTrue();
+        assertThat(bm25.search("love java", 3)).isEqualTo(uncached.search("love java", 3));
+        assertThat(bm25.resultCache().missCount()).isEqualTo(2L);
+        assertThat(new BM25(corpus).resultCache()).isNull();
+    }
 }
@@ -0,0 +1,74 @@
+package com.devoxx.util;
+
+import com.devoxx.util.search.SearchBudget;
+import com.devoxx.util.search.SearchResults;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.devoxx.util.RandomCorpus.sentence;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class BudgetedSearchTest {
+
+    @Test
+    void testSearchWithBudget_sameResultsAsSearchWithinBudget() {
+        Random random = new Random(11);
+        List<String> vocabulary = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            vocabulary.add("term" + Integer.toString(i, 36) + "x");
+        }
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 3_000; doc++) {
+            corpus.add(sentence(random, vocabulary, 1 + random.nextInt(100)));
+        }
+        BM25 bm25 = BM25.builder().build(corpus);
+        for (int doc = 0; doc < 50; doc++) {
+            bm25.addDocument(sentence(random, vocabulary, 1 + random.nextInt(100)));
+            bm25.deleteDocument(random.nextInt(corpus.size()));
+        }
+
+        for (int query = 0; query < 200; query++) {
+            String text = sentence(random, vocabulary, 1 + random.nextInt(8));
+            for (int k : new int[]{1, 10, 1_000}) {
+                SearchResults results = bm25.searchWithBudget(text, k, SearchBudget.ofTimeout(Duration.ofDays(1)));
+                assertThat(results.isPartial()).isFalse();
+                assertThat(results.results()).isEqualTo(bm25.search(text, k));
+            }
+        }
+    }
+
+    @Test
+    void testSearchWithBudget_rarestTermsFirstWhenBudgetRunsOut() {
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 1_000; doc++) {
+            corpus.add(doc % 100 == 0 ? "kotlin java coroutines" : "java virtual machine");
+        }
+        BM25 bm25 = BM25.builder().build(corpus);
+
+        // The ten postings of "coroutines" fit in one block, the budget runs out before the postings of "java"
+        SearchResults partial = bm25.searchWithBudget("java coroutines", 5, SearchBudget.ofPostings(1));
+        assertThat(partial.isPartial()).isTrue();
+        assertThat(partial.postingsVisited()).isEqualTo(10L);
+        assertThat(ids(partial.results())).isEqualTo(ids(bm25.search("coroutines", 5)));
+
+        // Enough for the postings of both terms, read again to score the best documents exactly
+        long postings = 10 + 1_000;
+        SearchResults complete = bm25.searchWithBudget("java coroutines", 5, SearchBudget.ofPostings(2 * postings));
+        assertThat(complete.isPartial()).isFalse();
+        assertThat(complete.postingsVisited()).isLessThanOrEqualTo(2 * postings);
+        assertThat(complete.results()).isEqualTo(bm25.search("java coroutines", 5));
+
+        SearchResults expired = bm25.searchWithBudget("java coroutines", 5, SearchBudget.ofTimeout(Duration.ZERO));
+        assertThat(expired.isPartial()).isTrue();
+        assertThat(expired.results()).isEqualTo(List.of());
+    }
+
+    private static List<Integer> ids(List<Map.Entry<Integer, Double>> results) {
+        return results.stream().map(Map.Entry::getKey).toList();
+    }
+}
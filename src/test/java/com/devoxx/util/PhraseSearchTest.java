@@ -0,0 +1,147 @@
+package com.devoxx.util;
+
+import com.devoxx.util.analysis.Analyzer;
+import com.devoxx.util.search.TopKCollector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static com.devoxx.util.RandomCorpus.sentence;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+class PhraseSearchTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSearchPhrase_sameResultsAsScanningDocuments() throws IOException {
+        Random random = new Random(5);
+        List<String> vocabulary = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            vocabulary.add("word" + Integer.toString(i, 36) + "x");
+        }
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 2_000; doc++) {
+            corpus.add(sentence(random, vocabulary, 1 + random.nextInt(300)));
+        }
+        BM25 bm25 = BM25.builder().positions(true).build(corpus);
+        BM25 parallel = BM25.builder().positions(true).parallelism(4).build(corpus);
+        List<String> documents = new ArrayList<>(corpus);
+        for (int doc = 0; doc < 30; doc++) {
+            String document = sentence(random, vocabulary, 1 + random.nextInt(300));
+            documents.add(document);
+            bm25.addDocument(document);
+            int deleted = random.nextInt(documents.size());
+            documents.set(deleted, null);
+            bm25.deleteDocument(deleted);
+        }
+        assertPhrases(bm25, documents, vocabulary, new Random(7));
+        assertPhrases(parallel, corpus, vocabulary, new Random(7));
+
+        bm25.forceMerge();
+        assertPhrases(bm25, documents, vocabulary, new Random(7));
+
+        Path file = directory.resolve("index.bm25");
+        bm25.save(file);
+        BM25 opened = BM25.builder().open(file);
+        assertPhrases(opened, documents, vocabulary, new Random(7));
+        opened.addDocument("word1x word2x word3x");
+        documents.add("word1x word2x word3x");
+        assertPhrases(opened, documents, vocabulary, new Random(7));
+    }
+
+    @Test
+    void testSearchPhrase_stopWordsAndRepeatedTerms() {
+        BM25 bm25 = BM25.builder().positions(true).build(List.of(
+            "Spring Boot makes Java easy",
+            "Boot the spring service",
+            "I love spring and I love boot",
+            "Red fox red fox",
+            "Red red fox"));
+
+        assertThat(ids(bm25.searchPhrase("spring boot", 10))).isEqualTo(List.of(0));
+        assertThat(ids(bm25.searchPhrase("boot spring", 10))).isEqualTo(List.of(1));
+        assertThat(ids(bm25.searchPhrase("love the spring", 10))).isEqualTo(List.of(2));
+        assertThat(ids(bm25.searchPhrase("red fox red", 10))).isEqualTo(List.of(3));
+        assertThat(ids(bm25.searchPhrase("red red fox", 10))).isEqualTo(List.of(4));
+        assertThat(bm25.searchPhrase("spring python", 10)).isEqualTo(List.of());
+        assertThat(bm25.searchPhrase("the", 10)).isEqualTo(List.of());
+    }
+
+    @Test
+    void testSearchWithProximity_adjacentTermsFirst() {
+        BM25 bm25 = BM25.builder().positions(true).build(List.of(
+            "spring is the season where the boot gets muddy",
+            "spring boot starter guide for beginners today",
+            "the boot stayed in the garden shed until spring"));
+
+        List<Map.Entry<Integer, Double>> results = bm25.searchWithProximity("spring boot", 10, 5.0);
+        assertThat(results.getFirst().getKey()).isEqualTo(1);
+        assertThat(results.size()).isEqualTo(3);
+        assertThat(bm25.searchWithProximity("spring boot", 10, 0.0)).isEqualTo(bm25.search("spring boot", 10));
+        assertThat(results.getFirst().getValue())
+            .isEqualTo(bm25.search("spring boot", 10).stream()
+                .filter(result -> result.getKey() == 1)
+                .findFirst().orElseThrow().getValue() + 5.0);
+    }
+
+    @Test
+    void testSearchPhrase_withoutPositions() {
+        BM25 bm25 = BM25.builder().build(List.of("Spring Boot makes Java easy"));
+        assertThatThrownBy(() -> bm25.searchPhrase("spring boot", 10)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> bm25.searchWithProximity("spring boot", 10, 1.0)).isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Check random phrases against the phrases found by analyzing the documents again
+     */
+    private static void assertPhrases(BM25 bm25, List<String> documents, List<String> vocabulary, Random random) {
+        Analyzer analyzer = BM25.builder().analyzer();
+        List<List<String>> tokens = documents.stream()
+            .map(document -> document == null ? List.<String>of() : analyzer.analyze(document))
+            .toList();
+        for (int query = 0; query < 100; query++) {
+            int length = 1 + random.nextInt(3);
+            List<String> phrase = new ArrayList<>();
+            if (query % 2 == 0) {
+                // Take the phrase from a document so that it matches at least once
+                List<String> document = tokens.get(random.nextInt(tokens.size()));
+                if (document.size() < length) {
+                    continue;
+                }
+                int start = random.nextInt(document.size() - length + 1);
+                phrase.addAll(document.subList(start, start + length));
+            } else {
+                for (int i = 0; i < length; i++) {
+                    phrase.add(vocabulary.get((int) (Math.pow(random.nextDouble(), 3) * vocabulary.size())));
+                }
+            }
+            String text = String.join(" ", phrase);
+            Map<Integer, Double> scores = bm25.search(text).stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            for (int k : new int[]{1, 10, 5_000}) {
+                TopKCollector expected = new TopKCollector(k);
+                for (int docId = 0; docId < tokens.size(); docId++) {
+                    if (Collections.indexOfSubList(tokens.get(docId), phrase) >= 0) {
+                        expected.collect(docId, scores.get(docId));
+                    }
+                }
+                assertThat(bm25.searchPhrase(text, k)).isEqualTo(expected.toEntries());
+            }
+        }
+    }
+
+    private static List<Integer> ids(List<Map.Entry<Integer, Double>> results) {
+        return results.stream().map(Map.Entry::getKey).toList();
+    }
+}
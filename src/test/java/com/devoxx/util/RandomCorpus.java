@@ -0,0 +1,47 @@
+package com.devoxx.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random documents and queries for the tests comparing search strategies on a corpus larger than a few sentences.
+ */
+public final class RandomCorpus {
+
+    private RandomCorpus() {
+    }
+
+    /**
+     * @param random source of randomness
+     * @param size number of words
+     * @return words of random letters
+     */
+    public static List<String> vocabulary(Random random, int size) {
+        List<String> words = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 3 + random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * @param random source of randomness
+     * @param vocabulary words to draw from
+     * @param length number of words
+     * @return sentence drawing words with a skewed distribution, so that some terms have long posting lists
+     */
+    public static String sentence(Random random, List<String> vocabulary, int length) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            double skewed = Math.pow(random.nextDouble(), 3);
+            sentence.append(vocabulary.get((int) (skewed * vocabulary.size()))).append(' ');
+        }
+        return sentence.toString().trim();
+    }
+}
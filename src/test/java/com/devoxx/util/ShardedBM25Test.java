@@ -0,0 +1,138 @@
+package com.devoxx.util;
+
+import com.devoxx.util.search.CollectionStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static com.devoxx.util.RandomCorpus.sentence;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+class ShardedBM25Test {
+
+    @Test
+    void testShardedBM25_sameResultsAsSingleIndex() {
+        Random random = new Random(11);
+        List<String> vocabulary = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            vocabulary.add("word" + Integer.toString(i, 36) + "x");
+        }
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 1_000; doc++) {
+            corpus.add(sentence(random, vocabulary, 3 + random.nextInt(40)));
+        }
+        BM25 bm25 = BM25.builder().build(corpus);
+        try (ShardedBM25 sharded = ShardedBM25.build(corpus, 3, BM25.builder())) {
+            for (int doc = 0; doc < 50; doc++) {
+                String document = sentence(random, vocabulary, 3 + random.nextInt(40));
+                assertThat(sharded.addDocument(document)).isEqualTo(bm25.addDocument(document));
+                int deleted = random.nextInt(1_000);
+                assertThat(sharded.deleteDocument(deleted)).isEqualTo(bm25.deleteDocument(deleted));
+            }
+            assertThat(sharded.deleteDocument(5_000)).isFalse();
+
+            for (int query = 0; query < 200; query++) {
+                String text = sentence(random, vocabulary, 1 + random.nextInt(5));
+                for (int k : new int[]{1, 10, 2_000}) {
+                    assertThat(sharded.search(text, k)).isEqualTo(bm25.search(text, k));
+                }
+            }
+            assertThat(sharded.search("unknown", 10)).isEqualTo(List.of());
+            assertThatThrownBy(() -> sharded.search("", 10)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void testShardedBM25_shardsInOtherJvms() {
+        Random random = new Random(12);
+        List<String> vocabulary = RandomCorpus.vocabulary(random, 300);
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 500; doc++) {
+            corpus.add(sentence(random, vocabulary, 3 + random.nextInt(40)));
+        }
+        BM25 bm25 = BM25.builder().build(corpus);
+        // Shards only reached through serialized statistics, like stubs of shards living in other JVMs
+        List<Shard> shards = new ArrayList<>();
+        for (int shard = 0; shard < 2; shard++) {
+            List<String> documents = new ArrayList<>();
+            for (int docId = shard; docId < corpus.size(); docId += 2) {
+                documents.add(corpus.get(docId));
+            }
+            shards.add(new SerializingShard(BM25.builder().build(documents)));
+        }
+        try (ShardedBM25 sharded = new ShardedBM25(shards, BM25.builder().analyzer())) {
+            for (int query = 0; query < 100; query++) {
+                String text = sentence(random, vocabulary, 1 + random.nextInt(5));
+                assertThat(sharded.search(text, 10)).isEqualTo(bm25.search(text, 10));
+            }
+        }
+    }
+
+    @Test
+    void testShardedBM25_tooFewDocuments() {
+        assertThatThrownBy(() -> ShardedBM25.build(List.of("I love Java"), 2, BM25.builder()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Shard exchanging its statistics in serialized form.
+     */
+    private static final class SerializingShard implements Shard {
+
+        private final BM25 bm25;
+
+        SerializingShard(BM25 bm25) {
+            this.bm25 = bm25;
+        }
+
+        @Override
+        public CompletableFuture<CollectionStatistics> statistics(List<String> queryTerms) {
+            return CompletableFuture.completedFuture(roundTrip(bm25.collectionStatistics(queryTerms)));
+        }
+
+        @Override
+        public CompletableFuture<List<Map.Entry<Integer, Double>>> search(List<String> queryTerms,
+                                                                           CollectionStatistics statistics,
+                                                                           int k) {
+            return CompletableFuture.completedFuture(bm25.search(queryTerms, roundTrip(statistics), k));
+        }
+
+        @Override
+        public CompletableFuture<Integer> addDocument(String document) {
+            return CompletableFuture.completedFuture(bm25.addDocument(document));
+        }
+
+        @Override
+        public CompletableFuture<Boolean> deleteDocument(int docId) {
+            return CompletableFuture.completedFuture(bm25.deleteDocument(docId));
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private static CollectionStatistics roundTrip(CollectionStatistics statistics) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(statistics);
+                }
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                    return (CollectionStatistics) in.readObject();
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
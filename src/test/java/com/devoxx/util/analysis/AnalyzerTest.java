@@ -0,0 +1,37 @@
+package com.devoxx.util.analysis;
+
+import com.devoxx.util.stemmer.snowball.EnglishStemmer;
+import com.devoxx.util.stemmer.snowball.FrenchStemmer;
+import com.devoxx.util.stopwords.StopWords;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class AnalyzerTest {
+
+    @Test
+    void testAnalyzer_Pipeline() {
+        Analyzer analyzer = new Analyzer(StopWords.ENGLISH, new EnglishStemmer());
+
+        List<String> terms = analyzer.analyze("  Java IS the fastest\tLanguage\r\nfor running  ");
+        assertThat(terms).isEqualTo(List.of("java", "fastest", "languag", "run"));
+        assertThat(analyzer.analyze("java is fastest", term -> { })).isEqualTo(2);
+        assertThat(analyzer.analyze(" \t ")).isEqualTo(List.of());
+
+        // A cached token is returned without creating a new string
+        assertThat(analyzer.analyze("JAVA").getFirst()).isSameAs(terms.getFirst());
+    }
+
+    @Test
+    void testAnalyzer_CacheCollisions() {
+        Analyzer analyzer = new Analyzer(StopWords.FRENCH, new FrenchStemmer(), 1);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(analyzer.analyze("Les MAISONS chaudes et les maisons froides"))
+                .isEqualTo(List.of("maison", "chaud", "maison", "froid"));
+        }
+        assertThat(analyzer.analyze("\u00c9COLES")).isEqualTo(analyzer.analyze("\u00e9coles"));
+    }
+}
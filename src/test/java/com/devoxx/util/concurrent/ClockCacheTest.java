@@ -0,0 +1,32 @@
+package com.devoxx.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class ClockCacheTest {
+
+    @Test
+    void testClockCache_replacedEntryKeepsItsSlot() {
+        ClockCache<String, Integer> cache = new ClockCache<>(2);
+        cache.putIfAbsent("java", 1);
+        cache.putIfAbsent("python", 2);
+        cache.putIfAbsent("java", 3);
+        assertThat(cache.get("java")).isEqualTo(1);
+
+        // Replacing "java" must not evict "python"
+        cache.put("java", 4, previous -> previous < 4);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("python")).isEqualTo(2);
+
+        // The hand is back on the slot of "java", whose new entry has not been read
+        cache.putIfAbsent("kotlin", 5);
+        assertThat(cache.get("java")).isNull();
+        assertThat(cache.get("python")).isEqualTo(2);
+        assertThat(cache.get("kotlin")).isEqualTo(5);
+        assertThat(cache.get("kotlin", value -> value > 5)).isNull();
+        assertThat(cache.hitCount()).isEqualTo(4);
+        assertThat(cache.missCount()).isEqualTo(2);
+        assertThat(cache.hitRate()).isEqualTo(4.0 / 6);
+    }
+}
@@ -0,0 +1,90 @@
+package com.devoxx.util.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class PostingListTest {
+
+    @Test
+    void testPostingList_decodesWhatWasEncoded() {
+        Random random = new Random(3);
+        int[] docLengths = new int[100_000];
+        PostingList.Builder builder = new PostingList.Builder();
+        int[] docIds = new int[1_000];
+        int[] frequencies = new int[docIds.length];
+        for (int i = 0, docId = -1; i < docIds.length; i++) {
+            // Mix runs of consecutive documents with large gaps, and frequencies of 1 with high frequencies
+            docId += i % 300 < 150 ? 1 : 1 + random.nextInt(150);
+            docIds[i] = docId;
+            frequencies[i] = i % 200 < 100 ? 1 : 1 + random.nextInt(1_000);
+            docLengths[docId] = 10 + random.nextInt(100);
+            builder.add(docId, frequencies[i]);
+        }
+        // Encode another posting list first, so that the tested one does not start at the beginning of the storage
+        PostingList.Encoder encoder = new PostingList.Encoder();
+        encoder.encode(new int[]{3, 5, 8}, new int[]{1, 2, 1}, null, 3, docLengths);
+        int firstBlock = builder.encode(encoder, docLengths);
+        PostingList postings = new PostingList(encoder.skipData(), encoder.packed(), null, null, firstBlock, builder.size());
+        assertThat(postings.hasPositions()).isFalse();
+
+        PostingsCursor cursor = postings.cursor();
+        for (int i = 0; i < docIds.length; i++) {
+            assertThat(cursor.docId()).isEqualTo(docIds[i]);
+            assertThat(cursor.frequency()).isEqualTo(frequencies[i]);
+            assertThat(postings.frequencyOf(docIds[i])).isEqualTo(frequencies[i]);
+            cursor.next();
+        }
+        assertThat(cursor.docId()).isEqualTo(PostingsCursor.NO_MORE_DOCS);
+
+        cursor = postings.cursor();
+        for (int i = 10; i < docIds.length; i += 97) {
+            assertThat(cursor.advance(docIds[i - 1] + 1)).isEqualTo(docIds[i]);
+            assertThat(cursor.frequency()).isEqualTo(frequencies[i]);
+        }
+        assertThat(postings.frequencyOf(docIds[docIds.length - 1] + 1)).isEqualTo(0);
+        assertThat(cursor.advance(docIds[docIds.length - 1] + 1)).isEqualTo(PostingsCursor.NO_MORE_DOCS);
+    }
+
+    @Test
+    void testPostingList_decodesPositions() {
+        Random random = new Random(4);
+        int[] docLengths = new int[1_000];
+        PostingList.Builder builder = new PostingList.Builder();
+        int[][] positions = new int[docLengths.length][];
+        for (int docId = 0; docId < docLengths.length; docId += 1 + random.nextInt(3)) {
+            // Mostly short documents, a few long ones with positions far apart
+            docLengths[docId] = docId % 50 == 0 ? 100_000 : 1 + random.nextInt(50);
+            int frequency = 1 + random.nextInt(Math.min(docLengths[docId], 20));
+            positions[docId] = random.ints(0, docLengths[docId]).distinct().limit(frequency).sorted().toArray();
+            builder.add(docId, frequency, positions[docId], 0);
+        }
+        PostingList.Encoder encoder = new PostingList.Encoder();
+        encoder.encode(new int[]{3, 5, 8}, new int[]{1, 2, 1}, new int[]{0, 4, 7, 2}, 3, docLengths);
+        int firstBlock = builder.encode(encoder, docLengths);
+        PostingList postings = new PostingList(encoder.skipData(), encoder.packed(),
+            encoder.positionSkipData(), encoder.packedPositions(), firstBlock, builder.size());
+        assertThat(postings.hasPositions()).isTrue();
+
+        PostingsCursor cursor = postings.cursor();
+        for (int docId = 0; docId < docLengths.length; docId++) {
+            if (positions[docId] != null) {
+                // Read the positions of some documents only, the others are skipped without decoding
+                if (docId % 3 == 0) {
+                    assertThat(cursor.advance(docId)).isEqualTo(docId);
+                    int[] decoded = new int[cursor.frequency()];
+                    for (int i = 0; i < decoded.length; i++) {
+                        decoded[i] = cursor.position(i);
+                    }
+                    assertThat(Arrays.equals(decoded, positions[docId])).isTrue();
+                }
+                assertThat(Arrays.equals(postings.positionsOf(docId), positions[docId])).isTrue();
+            } else {
+                assertThat(postings.positionsOf(docId).length).isEqualTo(0);
+            }
+        }
+    }
+}
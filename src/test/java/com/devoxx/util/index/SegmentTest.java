@@ -0,0 +1,53 @@
+package com.devoxx.util.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class SegmentTest {
+
+    @Test
+    void testSegment_deletesShareUntouchedChunks() {
+        InvertedIndex.Builder builder = new InvertedIndex.Builder();
+        for (int doc = 0; doc < 20_000; doc++) {
+            builder.startDocument(doc);
+            builder.addTerm("term" + doc % 500);
+            builder.addTerm("common");
+            builder.endDocument();
+        }
+        InvertedIndex index = builder.build();
+
+        // Deletions only in the first chunk of bits, then in chunks after it
+        BitSet initial = new BitSet();
+        initial.set(3);
+        Segment segment = new Segment(index, initial);
+        BitSet expected = (BitSet) initial.clone();
+        Random random = new Random(4);
+        Segment first = null;
+        for (int i = 0; i < 1_000; i++) {
+            int localDoc = random.nextInt(index.docCount());
+            if (expected.get(localDoc)) {
+                continue;
+            }
+            segment = segment.delete(localDoc);
+            expected.set(localDoc);
+            if (first == null) {
+                first = segment;
+            }
+        }
+
+        assertThat(segment.deletedDocs()).isEqualTo(expected);
+        assertThat(segment.deletedCount()).isEqualTo(expected.cardinality());
+        assertThat(segment.docFrequency("common")).isEqualTo(index.docCount() - expected.cardinality());
+        for (int localDoc = 0; localDoc < index.docCount(); localDoc++) {
+            assertThat(segment.isDeleted(localDoc)).isEqualTo(expected.get(localDoc));
+        }
+        // Earlier segments are not affected by later deletions
+        assertThat(first.deletedCount()).isEqualTo(2);
+        assertThat(first.deletedDocs().cardinality()).isEqualTo(2);
+        assertThat(new Segment(index).isDeleted(3)).isFalse();
+    }
+}
@@ -0,0 +1,71 @@
+package com.devoxx.util.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class TermDictionaryTest {
+
+    @Test
+    void test_TermDictionary() {
+        TermDictionary.Builder builder = new TermDictionary.Builder();
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(builder.add("term" + i)).isEqualTo(i);
+        }
+        assertThat(builder.add("term42")).isEqualTo(42);
+        assertThat(builder.add("caf\u00e9")).isEqualTo(10_000);
+        TermDictionary dictionary = builder.build();
+
+        assertThat(dictionary.size()).isEqualTo(10_001);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(dictionary.id("term" + i)).isEqualTo(i);
+            assertThat(dictionary.term(i)).isEqualTo("term" + i);
+        }
+        assertThat(dictionary.id("caf\u00e9")).isEqualTo(10_000);
+        assertThat(dictionary.term(10_000)).isEqualTo("caf\u00e9");
+        assertThat(dictionary.id("java")).isEqualTo(-1);
+        assertThat(dictionary.id("cafe")).isEqualTo(-1);
+    }
+
+    @Test
+    void testTermDictionary_termsWithPrefix() {
+        Random random = new Random(8);
+        TermDictionary.Builder builder = new TermDictionary.Builder();
+        List<String> terms = new ArrayList<>();
+        String alphabet = "abc\u00e9\u4e2d\ud83d\ude00";
+        for (int i = 0; i < 5_000; i++) {
+            StringBuilder term = new StringBuilder();
+            for (int length = 1 + random.nextInt(6); term.length() < length; ) {
+                int index = random.nextInt(alphabet.length() - 1);
+                // Keep surrogate pairs together
+                term.append(alphabet, index, Character.isHighSurrogate(alphabet.charAt(index)) ? index + 2 : index + 1);
+            }
+            if (builder.add(term.toString()) == terms.size()) {
+                terms.add(term.toString());
+            }
+        }
+        TermDictionary dictionary = builder.build();
+
+        for (String prefix : List.of("", "a", "ab", "\u00e9", "c\u4e2d", "\ud83d\ude00", "abcabc", "z")) {
+            List<String> expected = terms.stream()
+                .filter(term -> term.startsWith(prefix))
+                .toList();
+            List<String> found = new ArrayList<>();
+            dictionary.forEachTermWithPrefix(prefix, termId -> found.add(dictionary.term(termId)));
+            assertThat(found.size()).isEqualTo(expected.size());
+            assertThat(found.containsAll(expected)).isTrue();
+            for (int i = 1; i < found.size(); i++) {
+                assertThat(compareCodePoints(found.get(i - 1), found.get(i))).isLessThan(0);
+            }
+        }
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        return Arrays.compare(a.codePoints().toArray(), b.codePoints().toArray());
+    }
+}
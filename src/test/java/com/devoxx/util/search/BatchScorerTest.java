@@ -0,0 +1,48 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.BM25;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.devoxx.util.RandomCorpus.sentence;
+import static com.devoxx.util.RandomCorpus.vocabulary;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class BatchScorerTest {
+
+    private static final int VOCABULARY_SIZE = 2_000;
+
+    @Test
+    void testBatchScorer_sameTopKAsSingleSearches() {
+        Random random = new Random(7);
+        List<String> vocabulary = vocabulary(random, VOCABULARY_SIZE);
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 3_000; doc++) {
+            corpus.add(sentence(random, vocabulary, 5 + random.nextInt(60)));
+        }
+        BM25 bm25 = new BM25(corpus);
+        // Several segments with deleted documents
+        for (int doc = 0; doc < 200; doc++) {
+            bm25.addDocument(sentence(random, vocabulary, 5 + random.nextInt(60)));
+            bm25.deleteDocument(random.nextInt(3_000));
+        }
+
+        List<String> queries = new ArrayList<>();
+        for (int query = 0; query < 2_000; query++) {
+            queries.add(sentence(random, vocabulary, 1 + random.nextInt(8)));
+        }
+        queries.add("the");
+
+        for (int k : new int[]{1, 10, 5_000}) {
+            List<List<Map.Entry<Integer, Double>>> results = bm25.searchBatch(queries, k);
+            assertThat(results.size()).isEqualTo(queries.size());
+            for (int query = 0; query < queries.size(); query++) {
+                assertThat(results.get(query)).isEqualTo(bm25.search(queries.get(query), k));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.BM25;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.devoxx.util.RandomCorpus.sentence;
+import static com.devoxx.util.RandomCorpus.vocabulary;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class BlockMaxWandTest {
+
+    private static final int VOCABULARY_SIZE = 2_000;
+
+    @Test
+    void testBlockMaxWand_sameTopKAsExhaustiveScoring() {
+        Random random = new Random(42);
+        List<String> vocabulary = vocabulary(random, VOCABULARY_SIZE);
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 5_000; doc++) {
+            corpus.add(sentence(random, vocabulary, 5 + random.nextInt(60)));
+        }
+
+        BM25 bm25 = new BM25(corpus);
+
+        for (int queryIndex = 0; queryIndex < 100; queryIndex++) {
+            String query = sentence(random, vocabulary, 1 + random.nextInt(20));
+            int k = 1 + random.nextInt(50);
+
+            List<Map.Entry<Integer, Double>> expected = bm25.search(query).stream()
+                .filter(entry -> entry.getValue() > 0)
+                .limit(k)
+                .toList();
+
+            assertThat(bm25.search(query, k)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void testBlockMaxWand_filterSameTopKAsFilteringExhaustiveScoring() {
+        Random random = new Random(43);
+        List<String> vocabulary = vocabulary(random, VOCABULARY_SIZE);
+        List<String> corpus = new ArrayList<>();
+        for (int doc = 0; doc < 5_000; doc++) {
+            corpus.add(sentence(random, vocabulary, 5 + random.nextInt(60)));
+        }
+        BM25 bm25 = new BM25(corpus);
+        // Spread the documents over several segments, with deleted documents in and out of the filters
+        for (int doc = 0; doc < 100; doc++) {
+            bm25.addDocument(sentence(random, vocabulary, 5 + random.nextInt(60)));
+            bm25.deleteDocument(random.nextInt(5_000 + doc));
+        }
+
+        for (double density : new double[]{0, 0.001, 0.05, 0.5, 1}) {
+            BitSet filter = new BitSet();
+            for (int docId = 0; docId < 5_100; docId++) {
+                if (random.nextDouble() < density) {
+                    filter.set(docId);
+                }
+            }
+            for (int queryIndex = 0; queryIndex < 50; queryIndex++) {
+                String query = sentence(random, vocabulary, 1 + random.nextInt(20));
+                int k = 1 + random.nextInt(50);
+
+                List<Map.Entry<Integer, Double>> expected = bm25.search(query).stream()
+                    .filter(entry -> entry.getValue() > 0 && filter.get(entry.getKey()))
+                    .limit(k)
+                    .toList();
+
+                assertThat(bm25.search(query, k, filter)).isEqualTo(expected);
+            }
+        }
+    }
+}
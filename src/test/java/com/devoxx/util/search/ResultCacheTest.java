@@ -0,0 +1,60 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.index.IndexSnapshot;
+import com.devoxx.util.index.InvertedIndex;
+import com.devoxx.util.index.Segment;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class ResultCacheTest {
+
+    @Test
+    void testResultCache_hitsEvictionAndExpiry() {
+        AtomicLong now = new AtomicLong();
+        ResultCache cache = new ResultCache(2, Duration.ofSeconds(10), now::get);
+        IndexSnapshot snapshot = new IndexSnapshot(List.of());
+        List<Map.Entry<Integer, Double>> results = List.of(Map.entry(3, 2.5), Map.entry(1, 1.5), Map.entry(2, 0.5));
+
+        assertThat(cache.get(snapshot, List.of("java"), 3)).isNull();
+        cache.put(snapshot, List.of("java"), 3, results);
+        assertThat(cache.get(snapshot, List.of("java"), 3)).isEqualTo(results);
+        assertThat(cache.get(snapshot, List.of("java"), 2)).isEqualTo(results.subList(0, 2));
+        // Three results computed for k = 3 may miss better documents of k = 4
+        assertThat(cache.get(snapshot, List.of("java"), 4)).isNull();
+        cache.put(snapshot, List.of("python"), 5, results.subList(0, 1));
+        // Fewer results than k means every matching document
+        assertThat(cache.get(snapshot, List.of("python"), 100)).isEqualTo(results.subList(0, 1));
+        assertThat(cache.hitCount()).isEqualTo(3L);
+        assertThat(cache.missCount()).isEqualTo(2L);
+        assertThat(cache.hitRate()).isEqualTo(0.6);
+
+        // Both entries were referenced, the clock evicts the oldest one after clearing their reference bits
+        cache.put(snapshot, List.of("love", "java"), 3, results);
+        assertThat(cache.size()).isEqualTo(2);
+        // Terms in another order are the same query
+        assertThat(cache.get(snapshot, List.of("java", "love"), 3)).isEqualTo(results);
+        assertThat(cache.get(snapshot, List.of("java"), 3)).isNull();
+        assertThat(cache.get(snapshot, List.of("python"), 1)).isEqualTo(results.subList(0, 1));
+
+        now.set(Duration.ofSeconds(11).toNanos());
+        assertThat(cache.get(snapshot, List.of("python"), 1)).isNull();
+
+        // Results of a newer snapshot replace the cached ones, results of an older one are dropped
+        cache.put(snapshot, List.of("java"), 3, results);
+        IndexSnapshot updated = snapshot.withSegment(new Segment(new InvertedIndex.Builder().build()));
+        assertThat(cache.get(updated, List.of("java"), 3)).isNull();
+        cache.put(updated, List.of("python"), 3, results);
+        assertThat(cache.size()).isEqualTo(1);
+        cache.put(snapshot, List.of("java"), 3, results);
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get(updated, List.of("python"), 3)).isEqualTo(results);
+        cache.invalidate();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+}
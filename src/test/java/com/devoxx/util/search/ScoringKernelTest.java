@@ -0,0 +1,50 @@
+package com.devoxx.util.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.within;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ScoringKernelTest {
+
+    @Test
+    void testScoringKernel_vectorScoresEqualScalarScores() {
+        // The vector profile of the build compiles the kernel and adds the module to the tests
+        ScoringKernel vector = ScoringKernel.preferred();
+        assumeTrue(vector.name().equals("vector"));
+        Random random = new Random(3);
+        ScoringKernel scalar = new ScalarScoringKernel();
+        for (int count : new int[]{0, 1, 7, 128, 1_001}) {
+            int[] termFrequencies = new int[count];
+            int[] docLengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                termFrequencies[i] = 1 + random.nextInt(20);
+                docLengths[i] = termFrequencies[i] + random.nextInt(500);
+            }
+            double[] expected = new double[count];
+            double[] actual = new double[count];
+            scalar.score(5.75, 0.375, 0.0129, termFrequencies, docLengths, count, expected);
+            vector.score(5.75, 0.375, 0.0129, termFrequencies, docLengths, count, actual);
+            // Same operations in the same order, so the same scores to the last bit
+            for (int i = 0; i < count; i++) {
+                assertThat(actual[i]).isEqualTo(expected[i]);
+                assertThat(actual[i]).isEqualTo(BM25TermScorer.score(5.75, 0.375, 0.0129,
+                    termFrequencies[i], docLengths[i]));
+            }
+        }
+    }
+
+    @Test
+    void testScoringKernel_bm25Formula() {
+        BM25TermScorer scorer = new BM25TermScorer(2.3, 1.5, 0.75, 87.4);
+        for (int termFrequency = 1; termFrequency < 10; termFrequency++) {
+            for (int docLength = termFrequency; docLength < 300; docLength += 7) {
+                double expected = 2.3 * termFrequency * 2.5 / (termFrequency + 1.5 * (1 - 0.75 + 0.75 * docLength / 87.4));
+                assertThat(scorer.score(termFrequency, docLength)).isCloseTo(expected, within(1e-12));
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.devoxx.util.search;
+
+import com.devoxx.util.BM25;
+import com.devoxx.util.index.IndexSnapshot;
+import com.devoxx.util.index.InvertedIndex;
+import com.devoxx.util.index.Segment;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+class WildcardQueryTest {
+
+    private static final List<String> CORPUS = List.of(
+        "Java is my favorite programming language",
+        "JavaScript runs in the browser",
+        "I deploy Java services on Kubernetes",
+        "Kubernetes schedules containers",
+        "Javelin throwing is a sport",
+        "Python and Java are popular");
+
+    @Test
+    void testWildcardQuery_matches() {
+        WildcardQuery prefix = new WildcardQuery("jav*");
+        assertThat(prefix.isPrefix()).isTrue();
+        assertThat(prefix.prefix()).isEqualTo("jav");
+        assertThat(prefix.matches("javascript")).isTrue();
+        assertThat(prefix.matches("ja")).isFalse();
+
+        WildcardQuery wildcard = new WildcardQuery("j?v*t");
+        assertThat(wildcard.isPrefix()).isFalse();
+        assertThat(wildcard.prefix()).isEqualTo("j");
+        assertThat(wildcard.matches("javascript")).isTrue();
+        assertThat(wildcard.matches("javelin")).isFalse();
+        assertThat(new WildcardQuery("a.b*").matches("axb")).isFalse();
+        assertThatThrownBy(() -> new WildcardQuery("java")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testSearchWildcard_sameResultsAsSearchingExpandedTerms() {
+        BM25 bm25 = BM25.builder().build(CORPUS);
+        bm25.addDocument("Javanese coffee");
+
+        assertThat(bm25.searchWildcard("JAV*", 10)).isEqualTo(bm25.searchWildcard("jav*", 10));
+        assertThat(bm25.searchWildcard("jav*", 10)).isEqualTo(bm25.search("java javanese javascript javelin", 10));
+        assertThat(bm25.searchWildcard("deploy kub*", 10)).isEqualTo(bm25.search("deploy kubernetes", 10));
+        // The stem of a whole word typed with a wildcard still matches
+        assertThat(bm25.searchWildcard("kubernetes*", 10)).isEqualTo(bm25.search("kubernetes", 10));
+        assertThat(bm25.searchWildcard("j?v?script", 10)).isEqualTo(bm25.search("javascript", 10));
+        assertThat(bm25.searchWildcard("rust*", 10)).isEqualTo(List.of());
+    }
+
+    @Test
+    void testWildcardQuery_expandRanksByFrequencyInWholeSnapshot() {
+        // "jab" and "jazz" are the most frequent terms of their segments, "java" of the whole snapshot
+        IndexSnapshot snapshot = new IndexSnapshot(List.of(
+            segment(0, "jab jab jab java java"),
+            segment(10, "java java jazz jazz jazz jet")));
+        WildcardQuery query = new WildcardQuery("j*");
+
+        assertThat(query.expand(snapshot, 1)).isEqualTo(List.of("java"));
+        assertThat(query.expand(snapshot, 10)).isEqualTo(List.of("java", "jab", "jazz", "jet"));
+        assertThat(query.expand(snapshot, 10, 2)).isEqualTo(List.of("java", "jab", "jazz"));
+        // The first segment stops at "jab" and the second one at "java": "java" was not visited in every segment, so
+        // its frequency is unknown and it is left out
+        assertThat(query.expand(snapshot, 10, 1)).isEqualTo(List.of("jab"));
+    }
+
+    /**
+     * @param firstDocId id of the first document
+     * @param documents documents of space-separated terms, one document per term occurrence
+     * @return segment holding one document per term occurrence
+     */
+    private static Segment segment(int firstDocId, String documents) {
+        InvertedIndex.Builder builder = new InvertedIndex.Builder();
+        String[] terms = documents.split(" ");
+        for (int doc = 0; doc < terms.length; doc++) {
+            builder.startDocument(firstDocId + doc);
+            builder.addTerm(terms[doc]);
+            builder.endDocument();
+        }
+        return new Segment(builder.build());
+    }
+}
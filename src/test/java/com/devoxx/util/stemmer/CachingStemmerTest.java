@@ -0,0 +1,25 @@
+package com.devoxx.util.stemmer;
+
+import com.devoxx.util.stemmer.snowball.EnglishStemmer;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class CachingStemmerTest {
+
+    @Test
+    void test_CachingStemmer() {
+        CachingStemmer cachingStemmer = new CachingStemmer(new EnglishStemmer(), 2);
+        String[] words = {"running", "running", "runs", "running", "runner", "runs"};
+        String[] expectedWords = {"run", "run", "run", "run", "runner", "run"};
+        int index = 0;
+        for (String word : words) {
+            String stemmedWord = cachingStemmer.stem(word);
+            assertThat(stemmedWord).isEqualTo(expectedWords[index++]);
+        }
+        // "running" was read again before "runner" came in, so "runs" was evicted instead
+        assertThat(cachingStemmer.hitCount()).isEqualTo(2);
+        assertThat(cachingStemmer.missCount()).isEqualTo(4);
+        assertThat(cachingStemmer.size()).isEqualTo(2);
+    }
+}